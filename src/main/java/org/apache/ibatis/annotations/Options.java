@@ -63,4 +63,10 @@ public @interface Options {
   String keyColumn() default "";
   
   String resultSets() default "";
+
+  boolean parallelMapping() default false;
+
+  String cacheTags() default "";
+
+  boolean useLocalCache() default true;
 }
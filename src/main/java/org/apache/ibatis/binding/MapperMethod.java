@@ -28,6 +28,7 @@ import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.session.SqlSession;
+import org.reactivestreams.Publisher;
 
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
@@ -88,6 +89,9 @@ public class MapperMethod {
         } else if (method.returnsCursor()) {
           // 返回游标
           result = executeForCursor(sqlSession, args);
+        } else if (method.returnsPublisher()) {
+          // 返回Publisher，订阅后按需读取
+          result = executeForPublisher(sqlSession, args);
         } else {
           // 返回单个对象
           Object param = method.convertArgsToSqlCommandParam(args);
@@ -190,6 +194,15 @@ public class MapperMethod {
     return result;
   }
 
+  private <T> Publisher<T> executeForPublisher(SqlSession sqlSession, Object[] args) {
+    Object param = method.convertArgsToSqlCommandParam(args);
+    if (method.hasRowBounds()) {
+      RowBounds rowBounds = method.extractRowBounds(args);
+      return sqlSession.<T>selectPublisher(command.getName(), param, rowBounds);
+    }
+    return sqlSession.<T>selectPublisher(command.getName(), param);
+  }
+
   private <E> Object convertToDeclaredCollection(Configuration config, List<E> list) {
     Object collection = config.getObjectFactory().create(method.getReturnType());
     MetaObject metaObject = config.newMetaObject(collection);
@@ -306,6 +319,8 @@ public class MapperMethod {
     private final boolean returnsVoid;
     /** 返回游标 */
     private final boolean returnsCursor;
+    /** 返回Reactive Streams的Publisher */
+    private final boolean returnsPublisher;
     /** 返回类型 */
     private final Class<?> returnType;
     /** 返回Map的key */
@@ -332,6 +347,8 @@ public class MapperMethod {
       this.returnsMany = configuration.getObjectFactory().isCollection(this.returnType) || this.returnType.isArray();
       // 返回类型是游标
       this.returnsCursor = Cursor.class.equals(this.returnType);
+      // 返回类型是Publisher
+      this.returnsPublisher = Publisher.class.equals(this.returnType);
       // 方法上@MapKey注解的value
       this.mapKey = getMapKey(method);
       // 方法存在@MapKey注解则说明返回Map
@@ -388,6 +405,10 @@ public class MapperMethod {
       return returnsCursor;
     }
 
+    public boolean returnsPublisher() {
+      return returnsPublisher;
+    }
+
     private Integer getUniqueParamIndex(Method method, Class<?> paramType) {
       Integer index = null;
       final Class<?>[] argTypes = method.getParameterTypes();
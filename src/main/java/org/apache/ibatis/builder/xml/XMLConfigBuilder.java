@@ -22,6 +22,8 @@ import javax.sql.DataSource;
 
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.cache.invalidation.InvalidationBus;
 import org.apache.ibatis.datasource.DataSourceFactory;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.loader.ProxyFactory;
@@ -35,7 +37,9 @@ import org.apache.ibatis.parsing.XPathParser;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.reflection.DefaultReflectorFactory;
 import org.apache.ibatis.reflection.MetaClass;
+import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.SystemMetaObject;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.reflection.wrapper.ObjectWrapperFactory;
 import org.apache.ibatis.session.AutoMappingBehavior;
@@ -53,6 +57,8 @@ import org.apache.ibatis.type.TypeHandler;
  */
 public class XMLConfigBuilder extends BaseBuilder {
 
+  private static final String CACHE_INVALIDATION_BUS_PREFIX = "cacheInvalidationBus.";
+
   private boolean parsed;
   private final XPathParser parser;
   private String environment;
@@ -130,6 +136,10 @@ public class XMLConfigBuilder extends BaseBuilder {
     // Check that all settings are known to the configuration class
     MetaClass metaConfig = MetaClass.forClass(Configuration.class, localReflectorFactory);
     for (Object key : props.keySet()) {
+      // cacheInvalidationBus.*为总线自身的属性
+      if (String.valueOf(key).startsWith(CACHE_INVALIDATION_BUS_PREFIX)) {
+        continue;
+      }
       if (!metaConfig.hasSetter(String.valueOf(key))) {
         throw new BuilderException("The setting " + key + " is not known.  Make sure you spelled it correctly (case sensitive).");
       }
@@ -251,6 +261,8 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setMapUnderscoreToCamelCase(booleanValueOf(props.getProperty("mapUnderscoreToCamelCase"), false));
     configuration.setSafeRowBoundsEnabled(booleanValueOf(props.getProperty("safeRowBoundsEnabled"), false));
     configuration.setLocalCacheScope(LocalCacheScope.valueOf(props.getProperty("localCacheScope", "SESSION")));
+    configuration.setLocalCacheSize(integerValueOf(props.getProperty("localCacheSize"), 0));
+    configuration.setLocalCacheMaxRows(integerValueOf(props.getProperty("localCacheMaxRows"), 0));
     configuration.setJdbcTypeForNull(JdbcType.valueOf(props.getProperty("jdbcTypeForNull", "OTHER")));
     configuration.setLazyLoadTriggerMethods(stringSetValueOf(props.getProperty("lazyLoadTriggerMethods"), "equals,clone,hashCode,toString"));
     configuration.setSafeResultHandlerEnabled(booleanValueOf(props.getProperty("safeResultHandlerEnabled"), true));
@@ -261,6 +273,30 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setCallSettersOnNulls(booleanValueOf(props.getProperty("callSettersOnNulls"), false));
     configuration.setUseActualParamName(booleanValueOf(props.getProperty("useActualParamName"), true));
     configuration.setReturnInstanceForEmptyRow(booleanValueOf(props.getProperty("returnInstanceForEmptyRow"), false));
+    configuration.setCompiledRowMappersEnabled(booleanValueOf(props.getProperty("compiledRowMappersEnabled"), false));
+    configuration.setResultSetLayoutCacheEnabled(booleanValueOf(props.getProperty("resultSetLayoutCacheEnabled"), true));
+    configuration.setParallelMappingBatchSize(integerValueOf(props.getProperty("parallelMappingBatchSize"), 512));
+    configuration.setCursorPrefetchSize(integerValueOf(props.getProperty("cursorPrefetchSize"), 0));
+    configuration.setBatchGroupingEnabled(booleanValueOf(props.getProperty("batchGroupingEnabled"), false));
+    configuration.setBatchFlushRowThreshold(integerValueOf(props.getProperty("batchFlushRowThreshold"), 0));
+    configuration.setBatchFlushByteThreshold(integerValueOf(props.getProperty("batchFlushByteThreshold"), 0));
+    configuration.setBatchInsertRewriteEnabled(booleanValueOf(props.getProperty("batchInsertRewriteEnabled"), false));
+    configuration.setBatchInsertRewriteChunkSize(integerValueOf(props.getProperty("batchInsertRewriteChunkSize"), 100));
+    Class<?> cacheSerializer = resolveClass(props.getProperty("cacheSerializer"));
+    if (cacheSerializer != null) {
+      configuration.setCacheSerializer((CacheSerializer) cacheSerializer.newInstance());
+    }
+    configuration.setCacheLoadCoalescingEnabled(booleanValueOf(props.getProperty("cacheLoadCoalescingEnabled"), false));
+    configuration.setCacheLoadCoalescingTimeout(integerValueOf(props.getProperty("cacheLoadCoalescingTimeout"), 1000));
+    configuration.setCacheTagInvalidationEnabled(booleanValueOf(props.getProperty("cacheTagInvalidationEnabled"), false));
+    Class<?> cacheInvalidationBus = resolveClass(props.getProperty("cacheInvalidationBus"));
+    if (cacheInvalidationBus != null) {
+      InvalidationBus bus = (InvalidationBus) cacheInvalidationBus.newInstance();
+      setCacheInvalidationBusProperties(bus, props);
+      configuration.setCacheInvalidationBus(bus);
+    }
+    configuration.setCacheMetricsEnabled(booleanValueOf(props.getProperty("cacheMetricsEnabled"), false));
+    configuration.setCacheMetricsJmxEnabled(booleanValueOf(props.getProperty("cacheMetricsJmxEnabled"), false));
     configuration.setLogPrefix(props.getProperty("logPrefix"));
     @SuppressWarnings("unchecked")
     Class<? extends Log> logImpl = (Class<? extends Log>)resolveClass(props.getProperty("logImpl"));
@@ -268,6 +304,36 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setConfigurationFactory(resolveClass(props.getProperty("configurationFactory")));
   }
 
+  /**
+   * Sets the {@code cacheInvalidationBus.<property>} settings on the bus, for instance {@code cacheInvalidationBus.port}.
+   */
+  private void setCacheInvalidationBusProperties(InvalidationBus bus, Properties props) {
+    MetaObject metaBus = SystemMetaObject.forObject(bus);
+    for (String key : props.stringPropertyNames()) {
+      if (!key.startsWith(CACHE_INVALIDATION_BUS_PREFIX)) {
+        continue;
+      }
+      String name = key.substring(CACHE_INVALIDATION_BUS_PREFIX.length());
+      if (!metaBus.hasSetter(name)) {
+        throw new BuilderException("The setting " + key + " is not known by " + bus.getClass().getName()
+            + ".  Make sure you spelled it correctly (case sensitive).");
+      }
+      String value = props.getProperty(key);
+      Class<?> type = metaBus.getSetterType(name);
+      if (String.class == type) {
+        metaBus.setValue(name, value);
+      } else if (int.class == type || Integer.class == type) {
+        metaBus.setValue(name, Integer.valueOf(value));
+      } else if (long.class == type || Long.class == type) {
+        metaBus.setValue(name, Long.valueOf(value));
+      } else if (boolean.class == type || Boolean.class == type) {
+        metaBus.setValue(name, Boolean.valueOf(value));
+      } else {
+        throw new BuilderException("Unsupported type " + type.getName() + " of setting " + key);
+      }
+    }
+  }
+
   private void environmentsElement(XNode context) throws Exception {
     if (context != null) {
       if (environment == null) {
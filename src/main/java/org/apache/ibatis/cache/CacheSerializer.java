@@ -0,0 +1,39 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Copies the values of read/write caches to and from bytes, see
+ * {@link org.apache.ibatis.cache.decorators.SerializedCache}.
+ * <p>
+ * Implementations must be thread safe and have a public no-argument constructor to be set
+ * with the {@code cacheSerializer} setting.
+ */
+public interface CacheSerializer {
+
+  /**
+   * @param value a value stored in the cache, may be null
+   * @throws CacheException if the value cannot be serialized
+   */
+  byte[] serialize(Object value);
+
+  /**
+   * @param bytes the bytes returned by {@link #serialize(Object)}
+   * @throws CacheException if the bytes cannot be read
+   */
+  Object deserialize(byte[] bytes);
+
+}
@@ -0,0 +1,146 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.cache.invalidation.CacheInvalidation;
+import org.apache.ibatis.cache.invalidation.InvalidationBus;
+import org.apache.ibatis.cache.invalidation.InvalidationListener;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.StatementType;
+
+/**
+ * Versions of the tags (table names) of second level cache entries, used to invalidate only the entries
+ * reading the tables a statement writes instead of clearing the whole cache.
+ * <p>
+ * The key of a cached entry includes the current versions of its tags. Invalidating a tag increments its
+ * version, so the entries read before are not found anymore and are left to the eviction policy of the cache.
+ * An entry whose tags are unknown depends on the version of all tags, incremented by every invalidation.
+ * <p>
+ * Tags are the {@code cacheTags} of the statement, or else the tables found in its SQL. Statements reading views
+ * or calling functions that read other tables must declare their tags.
+ *
+ * @see org.apache.ibatis.session.Configuration#setCacheTagInvalidationEnabled(boolean)
+ */
+public class CacheTagVersions {
+
+  private static final String ALL_TAGS = "*";
+  private static final int MAX_PARSED_SQL = 4096;
+
+  private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentMap<String, String[]> parsedSql = new ConcurrentHashMap<String, String[]>();
+  private volatile InvalidationBus invalidationBus;
+  private final InvalidationListener listener = new InvalidationListener() {
+    @Override
+    public void onInvalidation(CacheInvalidation invalidation) {
+      final String[] tags = invalidation.getTags();
+      if (tags != null) {
+        increment(Arrays.asList(tags));
+      }
+    }
+  };
+
+  /**
+   * Returns the tags of a statement, null when they are unknown.
+   */
+  public String[] getTags(MappedStatement ms, BoundSql boundSql) {
+    if (ms.getCacheTags() != null) {
+      return ms.getCacheTags();
+    }
+    if (ms.getStatementType() == StatementType.CALLABLE) {
+      return null;
+    }
+    final String sql = boundSql.getSql();
+    String[] tags = parsedSql.get(sql);
+    if (tags == null) {
+      tags = SqlTables.parse(sql);
+      // 动态SQL可能产生大量不同的语句，超过上限后不再缓存解析结果
+      if (parsedSql.size() < MAX_PARSED_SQL) {
+        parsedSql.put(sql, tags);
+      }
+    }
+    return tags.length == 0 ? null : tags;
+  }
+
+  /**
+   * Returns a copy of the key including the current versions of the tags.
+   *
+   * @param tags null when unknown
+   */
+  public CacheKey versionedKey(CacheKey key, String[] tags) {
+    final CacheKey versionedKey;
+    try {
+      versionedKey = key.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new CacheException("Error cloning cache key " + key + ".  Cause: " + e, e);
+    }
+    if (tags == null) {
+      versionedKey.update(versionOf(ALL_TAGS).get());
+    } else {
+      for (String tag : tags) {
+        versionedKey.update(versionOf(tag).get());
+      }
+    }
+    return versionedKey;
+  }
+
+  public void invalidate(Collection<String> tags) {
+    increment(tags);
+    final InvalidationBus bus = invalidationBus;
+    if (bus != null) {
+      bus.publish(CacheInvalidation.tags(tags));
+    }
+  }
+
+  /**
+   * Publishes the invalidations on the bus and applies those of the other nodes.
+   */
+  public synchronized void setInvalidationBus(InvalidationBus invalidationBus) {
+    if (this.invalidationBus != null) {
+      this.invalidationBus.unsubscribe(listener);
+    }
+    this.invalidationBus = invalidationBus;
+    if (invalidationBus != null) {
+      invalidationBus.subscribe(listener);
+    }
+  }
+
+  private void increment(Collection<String> tags) {
+    for (String tag : tags) {
+      versionOf(tag).incrementAndGet();
+    }
+    versionOf(ALL_TAGS).incrementAndGet();
+  }
+
+  private AtomicLong versionOf(String tag) {
+    AtomicLong version = versions.get(tag);
+    if (version == null) {
+      version = new AtomicLong();
+      final AtomicLong previous = versions.putIfAbsent(tag, version);
+      if (previous != null) {
+        version = previous;
+      }
+    }
+    return version;
+  }
+
+}
@@ -0,0 +1,153 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the names of the tables a SQL statement reads or writes: the names following {@code FROM},
+ * {@code JOIN}, {@code INTO} and {@code UPDATE}, lower cased and without their schema.
+ * <p>
+ * Finding a name that is not a table is harmless, it only invalidates more than needed.
+ */
+final class SqlTables {
+
+  private static final Pattern KEYWORD = Pattern.compile("(?<![\\w$#])(from|join|into|update)(?![\\w$#])");
+
+  // 表名后出现这些词时它们不是别名
+  private static final Set<String> NOT_ALIASES = new HashSet<String>(Arrays.asList(
+      "where", "join", "inner", "left", "right", "full", "cross", "outer", "natural", "straight_join", "on", "using",
+      "group", "order", "having", "limit", "offset", "fetch", "for", "union", "except", "intersect", "minus",
+      "window", "set", "values", "select", "partition", "returning", "with", "lateral", "connect", "start"));
+
+  private SqlTables() {
+    // Prevent Instantiation of Static Class
+  }
+
+  /**
+   * Returns an empty array when no table is found.
+   */
+  static String[] parse(String sql) {
+    final String text = stripLiteralsAndComments(sql).toLowerCase(Locale.ENGLISH);
+    final Set<String> tables = new LinkedHashSet<String>();
+    final Matcher keyword = KEYWORD.matcher(text);
+    while (keyword.find()) {
+      final boolean list = "from".equals(keyword.group(1));
+      int i = keyword.end();
+      while (true) {
+        i = skipWhitespace(text, i);
+        final int end = identifierEnd(text, i);
+        if (end == i) {
+          // a sub query, whose own tables are found by the next matches
+          break;
+        }
+        final String table = tableName(text.substring(i, end));
+        if (!table.isEmpty() && !NOT_ALIASES.contains(table)) {
+          tables.add(table);
+        }
+        if (!list) {
+          break;
+        }
+        i = skipAlias(text, end);
+        if (i < text.length() && text.charAt(i) == ',') {
+          i++;
+        } else {
+          break;
+        }
+      }
+    }
+    return tables.toArray(new String[tables.size()]);
+  }
+
+  private static int skipAlias(String text, int start) {
+    int i = skipWhitespace(text, start);
+    int end = identifierEnd(text, i);
+    if (end > i && "as".equals(text.substring(i, end))) {
+      i = skipWhitespace(text, end);
+      end = identifierEnd(text, i);
+    }
+    if (end > i && !NOT_ALIASES.contains(text.substring(i, end))) {
+      return skipWhitespace(text, end);
+    }
+    return i;
+  }
+
+  private static int skipWhitespace(String text, int i) {
+    while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static int identifierEnd(String text, int start) {
+    int i = start;
+    while (i < text.length()) {
+      final char c = text.charAt(i);
+      if (c == '"' || c == '`' || c == '[') {
+        final int close = text.indexOf(c == '[' ? ']' : c, i + 1);
+        if (close < 0) {
+          return text.length();
+        }
+        i = close + 1;
+      } else if (Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#' || c == '.') {
+        i++;
+      } else {
+        break;
+      }
+    }
+    return i;
+  }
+
+  private static String tableName(String identifier) {
+    final String name = identifier.substring(identifier.lastIndexOf('.') + 1);
+    if (name.length() > 1 && (name.charAt(0) == '"' || name.charAt(0) == '`' || name.charAt(0) == '[')) {
+      return name.substring(1, name.length() - 1);
+    }
+    return name;
+  }
+
+  private static String stripLiteralsAndComments(String sql) {
+    final StringBuilder text = new StringBuilder(sql.length());
+    int i = 0;
+    while (i < sql.length()) {
+      final char c = sql.charAt(i);
+      if (c == '\'') {
+        final int close = sql.indexOf('\'', i + 1);
+        i = close < 0 ? sql.length() : close + 1;
+        text.append("''");
+      } else if (c == '-' && sql.startsWith("--", i)) {
+        final int close = sql.indexOf('\n', i);
+        i = close < 0 ? sql.length() : close;
+        text.append(' ');
+      } else if (c == '/' && sql.startsWith("/*", i)) {
+        final int close = sql.indexOf("*/", i + 2);
+        i = close < 0 ? sql.length() : close + 2;
+        text.append(' ');
+      } else {
+        text.append(c);
+        i++;
+      }
+    }
+    return text.toString();
+  }
+
+}
@@ -31,6 +31,15 @@ public class TransactionalCacheManager {
     getTransactionalCache(cache).clear();
   }
 
+  public void invalidate(Cache cache, CacheTagVersions tagVersions, String[] tags) {
+    getTransactionalCache(cache).invalidate(tagVersions, tags);
+  }
+
+  public boolean isInvalidated(Cache cache, String[] tags) {
+    TransactionalCache txCache = transactionalCaches.get(cache);
+    return txCache != null && txCache.isInvalidated(tags);
+  }
+
   public Object getObject(Cache cache, CacheKey key) {
     return getTransactionalCache(cache).getObject(key);
   }
@@ -39,6 +48,11 @@ public class TransactionalCacheManager {
     getTransactionalCache(cache).putObject(key, value);
   }
 
+  public boolean isClearOnCommit(Cache cache) {
+    TransactionalCache txCache = transactionalCaches.get(cache);
+    return txCache != null && txCache.isClearOnCommit();
+  }
+
   public void commit() {
     for (TransactionalCache txCache : transactionalCaches.values()) {
       txCache.commit();
@@ -0,0 +1,34 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Estimates the memory held by a cache entry, used by
+ * {@link org.apache.ibatis.cache.decorators.WeightedCache} to bound a cache by weight instead of entry count.
+ * <p>
+ * Implementations must have a public no-argument constructor to be set by class name with
+ * {@code <property name="weigherClass" value="..."/>}.
+ */
+public interface Weigher {
+
+  /**
+   * @param key the cache key
+   * @param value the cached value, usually the List returned by a select, may be null
+   * @return the estimated weight of the entry in bytes, not negative
+   */
+  long weigh(Object key, Object value);
+
+}
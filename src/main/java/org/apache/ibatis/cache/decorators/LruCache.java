@@ -20,6 +20,7 @@ import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
 
 /**
  * Lru (least recently used) cache decorator
@@ -31,6 +32,7 @@ public class LruCache implements Cache {
   private final Cache delegate;
   private Map<Object, Object> keyMap;
   private Object eldestKey;
+  private CacheMetrics metrics;
 
   public LruCache(Cache delegate) {
     this.delegate = delegate;
@@ -62,6 +64,10 @@ public class LruCache implements Cache {
     };
   }
 
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
   @Override
   public void putObject(Object key, Object value) {
     delegate.putObject(key, value);
@@ -94,6 +100,9 @@ public class LruCache implements Cache {
     keyMap.put(key, key);
     if (eldestKey != null) {
       delegate.removeObject(eldestKey);
+      if (metrics != null) {
+        metrics.recordEviction();
+      }
       eldestKey = null;
     }
   }
@@ -0,0 +1,95 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+
+/**
+ * Records the hits, misses, puts and get and put times of a cache in its {@link CacheMetrics}.
+ * Replaces {@link LoggingCache} in the standard decorators when cache metrics are enabled. Evictions are
+ * recorded by the eviction decorators and caches themselves, which the cache builder gives the same metrics.
+ */
+public class MetricsCache implements Cache {
+
+  private final Cache delegate;
+  private final CacheMetrics metrics;
+
+  public MetricsCache(Cache delegate, CacheMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+    metrics.setCache(delegate);
+  }
+
+  public CacheMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object object) {
+    final long start = System.nanoTime();
+    delegate.putObject(key, object);
+    metrics.recordPut(System.nanoTime() - start);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    final long start = System.nanoTime();
+    final Object value = delegate.getObject(key);
+    metrics.recordGet(value != null, System.nanoTime() - start);
+    return value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    metrics.recordRemoval();
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    metrics.recordClear();
+    delegate.clear();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+}
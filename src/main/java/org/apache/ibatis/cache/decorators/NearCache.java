@@ -0,0 +1,114 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.invalidation.CacheInvalidation;
+import org.apache.ibatis.cache.invalidation.InvalidationBus;
+import org.apache.ibatis.cache.invalidation.InvalidationListener;
+
+/**
+ * Keeps a local cache coherent with the caches of the same namespace on the other nodes of a cluster:
+ * clearing it, which {@link TransactionalCache} does on commit once a statement flushed the cache,
+ * publishes the invalidation on an {@link InvalidationBus}, and the invalidations published by the other
+ * nodes clear it.
+ * <p>
+ * Added to all caches built with the standard decorators once the {@code cacheInvalidationBus} setting is set.
+ * The bus, shared by all caches and possibly outliving the configuration, only holds a near cache weakly:
+ * its listener unsubscribes once the cache is garbage collected.
+ */
+public class NearCache implements Cache {
+
+  private final Cache delegate;
+  private final InvalidationBus bus;
+
+  public NearCache(Cache delegate, InvalidationBus bus) {
+    this.delegate = delegate;
+    this.bus = bus;
+    bus.subscribe(new WeakListener(this, bus));
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object object) {
+    delegate.putObject(key, object);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+    bus.publish(CacheInvalidation.clear(getId()));
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  private static class WeakListener implements InvalidationListener {
+
+    private final WeakReference<NearCache> cache;
+    private final InvalidationBus bus;
+
+    WeakListener(NearCache cache, InvalidationBus bus) {
+      this.cache = new WeakReference<NearCache>(cache);
+      this.bus = bus;
+    }
+
+    @Override
+    public void onInvalidation(CacheInvalidation invalidation) {
+      final NearCache nearCache = cache.get();
+      if (nearCache == null) {
+        bus.unsubscribe(this);
+      } else if (nearCache.getId().equals(invalidation.getCacheId())) {
+        nearCache.delegate.clear();
+      }
+    }
+  }
+
+}
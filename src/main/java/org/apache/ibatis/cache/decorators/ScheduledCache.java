@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
@@ -24,9 +25,11 @@ import org.apache.ibatis.cache.Cache;
  */
 public class ScheduledCache implements Cache {
 
+  private static final AtomicLongFieldUpdater<ScheduledCache> LAST_CLEAR = AtomicLongFieldUpdater.newUpdater(ScheduledCache.class, "lastClear");
+
   private final Cache delegate;
-  protected long clearInterval;
-  protected long lastClear;
+  protected volatile long clearInterval;
+  protected volatile long lastClear;
 
   public ScheduledCache(Cache delegate) {
     this.delegate = delegate;
@@ -88,8 +91,13 @@ public class ScheduledCache implements Cache {
   }
 
   private boolean clearWhenStale() {
-    if (System.currentTimeMillis() - lastClear > clearInterval) {
-      clear();
+    final long now = System.currentTimeMillis();
+    final long last = lastClear;
+    if (now - last > clearInterval) {
+      // 不加SynchronizedCache时可能并发调用，只由一个线程清空
+      if (LAST_CLEAR.compareAndSet(this, last, now)) {
+        delegate.clear();
+      }
       return true;
     }
     return false;
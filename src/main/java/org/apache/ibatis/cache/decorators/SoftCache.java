@@ -22,6 +22,7 @@ import java.util.LinkedList;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
 
 /**
  * Soft Reference cache decorator
@@ -34,6 +35,7 @@ public class SoftCache implements Cache {
   private final ReferenceQueue<Object> queueOfGarbageCollectedEntries;
   private final Cache delegate;
   private int numberOfHardLinks;
+  private CacheMetrics metrics;
 
   public SoftCache(Cache delegate) {
     this.delegate = delegate;
@@ -58,6 +60,10 @@ public class SoftCache implements Cache {
     this.numberOfHardLinks = size;
   }
 
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
   @Override
   public void putObject(Object key, Object value) {
     removeGarbageCollectedItems();
@@ -110,6 +116,10 @@ public class SoftCache implements Cache {
     SoftEntry sv;
     while ((sv = (SoftEntry) queueOfGarbageCollectedEntries.poll()) != null) {
       delegate.removeObject(sv.key);
+      // 被垃圾回收的条目计为淘汰
+      if (metrics != null) {
+        metrics.recordEviction();
+      }
     }
   }
 
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -22,6 +23,7 @@ import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheTagVersions;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
@@ -44,12 +46,15 @@ public class TransactionalCache implements Cache {
   private boolean clearOnCommit;
   private final Map<Object, Object> entriesToAddOnCommit;
   private final Set<Object> entriesMissedInCache;
+  private final Set<String> tagsToInvalidateOnCommit;
+  private CacheTagVersions tagVersions;
 
   public TransactionalCache(Cache delegate) {
     this.delegate = delegate;
     this.clearOnCommit = false;
     this.entriesToAddOnCommit = new HashMap<Object, Object>();
     this.entriesMissedInCache = new HashSet<Object>();
+    this.tagsToInvalidateOnCommit = new HashSet<String>();
   }
 
   @Override
@@ -77,6 +82,13 @@ public class TransactionalCache implements Cache {
     }
   }
 
+  /**
+   * Whether the cache is cleared on commit, meaning that the session changed its data.
+   */
+  public boolean isClearOnCommit() {
+    return clearOnCommit;
+  }
+
   @Override
   public ReadWriteLock getReadWriteLock() {
     return null;
@@ -98,10 +110,41 @@ public class TransactionalCache implements Cache {
     entriesToAddOnCommit.clear();
   }
 
+  /**
+   * Invalidates on commit the entries tagged with any of the tags, instead of clearing the cache.
+   */
+  public void invalidate(CacheTagVersions tagVersions, String[] tags) {
+    this.tagVersions = tagVersions;
+    tagsToInvalidateOnCommit.addAll(Arrays.asList(tags));
+  }
+
+  /**
+   * Whether entries tagged with any of the tags are invalidated on commit.
+   *
+   * @param tags null when unknown
+   */
+  public boolean isInvalidated(String[] tags) {
+    if (tagsToInvalidateOnCommit.isEmpty()) {
+      return false;
+    }
+    if (tags == null) {
+      return true;
+    }
+    for (String tag : tags) {
+      if (tagsToInvalidateOnCommit.contains(tag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public void commit() {
     if (clearOnCommit) {
       delegate.clear();
     }
+    if (!tagsToInvalidateOnCommit.isEmpty()) {
+      tagVersions.invalidate(tagsToInvalidateOnCommit);
+    }
     flushPendingEntries();
     reset();
   }
@@ -115,6 +158,7 @@ public class TransactionalCache implements Cache {
     clearOnCommit = false;
     entriesToAddOnCommit.clear();
     entriesMissedInCache.clear();
+    tagsToInvalidateOnCommit.clear();
   }
 
   private void flushPendingEntries() {
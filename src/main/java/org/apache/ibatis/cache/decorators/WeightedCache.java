@@ -0,0 +1,194 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.Weigher;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.io.Resources;
+
+/**
+ * Weighted LRU cache decorator: evicts the least recently used entries to keep the total
+ * weight of the entries under {@link #setMaximumWeight(long) maximumWeight} bytes.
+ * <p>
+ * Unless a {@link Weigher} is set, a serialized value (read/write caches store byte arrays) weighs its length,
+ * a collection weighs {@link #setRowWeight(long) rowWeight} bytes per element and any other value weighs one row.
+ * An entry heavier than the maximum weight is not kept.
+ */
+public class WeightedCache implements Cache {
+
+  private static final long ENTRY_OVERHEAD = 64;
+
+  private final Cache delegate;
+  // 按访问顺序排列的键及其权重
+  private final LinkedHashMap<Object, Long> keyWeights = new LinkedHashMap<Object, Long>(16, .75F, true);
+  private long maximumWeight = 64L * 1024 * 1024;
+  private long rowWeight = 256;
+  private Weigher weigher;
+  private long weight;
+  private CacheMetrics metrics;
+
+  public WeightedCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  /**
+   * @return the current total weight of the entries, in bytes
+   */
+  public long getWeight() {
+    return weight;
+  }
+
+  public long getMaximumWeight() {
+    return maximumWeight;
+  }
+
+  /**
+   * Weight budget of this cache in bytes, 64MB by default.
+   */
+  public void setMaximumWeight(long maximumWeight) {
+    if (maximumWeight < 1) {
+      throw new CacheException("The maximum weight of cache " + getId() + " must be greater than zero but was " + maximumWeight);
+    }
+    this.maximumWeight = maximumWeight;
+    evict();
+  }
+
+  /**
+   * Estimated weight of one result row in bytes when no weigher is set, 256 by default.
+   */
+  public void setRowWeight(long rowWeight) {
+    this.rowWeight = rowWeight;
+  }
+
+  public void setWeigher(Weigher weigher) {
+    this.weigher = weigher;
+  }
+
+  /**
+   * Receives the current weight and the entries evicted to stay under the maximum weight, set when cache
+   * metrics are enabled.
+   */
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+    recordWeight();
+  }
+
+  /**
+   * Sets the weigher by class name.
+   */
+  public void setWeigherClass(String weigherClass) {
+    try {
+      this.weigher = (Weigher) Resources.classForName(weigherClass).newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Could not create weigher " + weigherClass + " for cache " + getId() + ". Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    final long entryWeight = weigh(key, value);
+    if (entryWeight > maximumWeight) {
+      // 不能为放入它而清空整个缓存；同时移除该键原来的值
+      removeObject(key);
+      return;
+    }
+    delegate.putObject(key, value);
+    final Long previous = keyWeights.put(key, entryWeight);
+    weight += entryWeight - (previous == null ? 0 : previous);
+    evict();
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    keyWeights.get(key); //touch
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    final Long previous = keyWeights.remove(key);
+    if (previous != null) {
+      weight -= previous;
+      recordWeight();
+    }
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+    keyWeights.clear();
+    weight = 0;
+    recordWeight();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  private long weigh(Object key, Object value) {
+    if (weigher != null) {
+      return weigher.weigh(key, value);
+    }
+    if (value instanceof byte[]) {
+      return ENTRY_OVERHEAD + ((byte[]) value).length;
+    }
+    if (value instanceof Collection) {
+      return ENTRY_OVERHEAD + ((Collection<?>) value).size() * rowWeight;
+    }
+    return ENTRY_OVERHEAD + rowWeight;
+  }
+
+  private void evict() {
+    final Iterator<Map.Entry<Object, Long>> eldest = keyWeights.entrySet().iterator();
+    while (weight > maximumWeight && eldest.hasNext()) {
+      final Map.Entry<Object, Long> entry = eldest.next();
+      weight -= entry.getValue();
+      eldest.remove();
+      delegate.removeObject(entry.getKey());
+      if (metrics != null) {
+        metrics.recordEviction();
+      }
+    }
+    recordWeight();
+  }
+
+  private void recordWeight() {
+    if (metrics != null) {
+      metrics.recordWeight(weight);
+    }
+  }
+
+}
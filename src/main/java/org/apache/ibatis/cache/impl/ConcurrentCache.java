@@ -0,0 +1,200 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+
+/**
+ * A thread safe, size bounded cache that needs no {@link org.apache.ibatis.cache.decorators.SynchronizedCache}.
+ * Select it with {@code <cache type="CONCURRENT" size="..."/>}.
+ * <p>
+ * Entries are held in a {@link ConcurrentHashMap}, so reads take no lock. Each entry records the time it was
+ * last read. When a put makes the cache exceed its size, the least recently read entry among a sample of
+ * {@link #setSampleSize(int) sampleSize} entries is removed, until the cache fits again. Samples are taken by a
+ * hand sweeping the entries, one thread evicting at a time. A put that finds another thread evicting returns
+ * without waiting and leaves its entry to that thread, so the cache may exceed its size for a short time.
+ */
+public class ConcurrentCache implements Cache {
+
+  // 读取时间精度，同一条目在此间隔内被多次读取时只记录一次，避免热点条目的缓存行在CPU之间来回传递
+  private static final long ACCESS_TIME_GRANULARITY_NANOS = 1000000L;
+
+  private final String id;
+  private final ConcurrentHashMap<Object, Entry> cache = new ConcurrentHashMap<Object, Entry>();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private volatile int size = 1024;
+  private volatile int sampleSize = 8;
+  private volatile CacheMetrics metrics;
+
+  // guarded by evictionLock
+  private Iterator<Map.Entry<Object, Entry>> hand;
+
+  public ConcurrentCache(String id) {
+    this.id = id;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public int getSize() {
+    return cache.size();
+  }
+
+  /**
+   * Maximum number of entries, 1024 by default.
+   */
+  public void setSize(int size) {
+    if (size < 1) {
+      throw new CacheException("The size of cache " + id + " must be greater than zero but was " + size);
+    }
+    this.size = size;
+  }
+
+  /**
+   * Number of entries compared to choose each evicted entry, 8 by default.
+   * Larger samples evict closer to strict LRU order at a higher cost per eviction.
+   */
+  public void setSampleSize(int sampleSize) {
+    if (sampleSize < 1) {
+      throw new CacheException("The sample size of cache " + id + " must be greater than zero but was " + sampleSize);
+    }
+    this.sampleSize = sampleSize;
+  }
+
+  /**
+   * Counts the evicted entries, set when cache metrics are enabled.
+   */
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    // 值可能为null（TransactionalCache会缓存未命中的结果），因此包装为Entry
+    cache.put(key, new Entry(value, System.nanoTime()));
+    if (cache.size() > size) {
+      evict();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    final Entry entry = cache.get(key);
+    if (entry == null) {
+      return null;
+    }
+    final long now = System.nanoTime();
+    if (now - entry.accessTime > ACCESS_TIME_GRANULARITY_NANOS) {
+      entry.accessTime = now;
+    }
+    return entry.value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    final Entry entry = cache.remove(key);
+    return entry == null ? null : entry.value;
+  }
+
+  @Override
+  public void clear() {
+    cache.clear();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  private void evict() {
+    // 释放锁后再次检查：持有锁期间其他线程放入的条目由本线程负责淘汰
+    while (cache.size() > size && evictionLock.tryLock()) {
+      try {
+        evictEntries();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  private void evictEntries() {
+    while (cache.size() > size) {
+      Map.Entry<Object, Entry> victim = null;
+      for (int i = 0; i < sampleSize; i++) {
+        if (hand == null || !hand.hasNext()) {
+          hand = cache.entrySet().iterator();
+          if (!hand.hasNext()) {
+            return;
+          }
+        }
+        final Map.Entry<Object, Entry> candidate = hand.next();
+        if (victim == null || candidate.getValue().accessTime - victim.getValue().accessTime < 0) {
+          victim = candidate;
+        }
+      }
+      // 条目可能已被其他线程替换，此时不删除新值
+      if (cache.remove(victim.getKey(), victim.getValue()) && metrics != null) {
+        metrics.recordEviction();
+      }
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+  private static final class Entry {
+    private final Object value;
+    private volatile long accessTime;
+
+    Entry(Object value, long accessTime) {
+      this.value = value;
+      this.accessTime = accessTime;
+    }
+  }
+
+}
@@ -0,0 +1,485 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.ibatis.builder.InitializingObject;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.cache.serializer.BinaryCacheSerializer;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * A cache keeping its keys and values serialized outside of the Java heap, meant for large namespaces of
+ * reference data that would otherwise lengthen garbage collection pauses.
+ * Select it with {@code <cache type="OFFHEAP"><property name="capacity" value="..."/></cache>}.
+ * <p>
+ * The memory is split in segments of {@link #setSegmentSize(int) segmentSize} bytes, direct buffers allocated
+ * when first written, or regions of a memory mapped {@link #setFile(String) file}. Entries are appended to the
+ * current segment. When it is full the next segment is emptied, dropping all of its entries, and becomes the
+ * current one, so the oldest entries are evicted first. Only a map from the hash of each serialized key to the
+ * place of its entry is kept on the heap; the keys are compared byte by byte when read.
+ * <p>
+ * With a file, the entries left by a previous run are loaded when the cache is initialized, so the cache is warm
+ * as soon as the application restarts. They are trusted as they are: the file must be deleted when the database
+ * changed meanwhile or the cached classes are no longer compatible (entries failing to deserialize are dropped).
+ * <p>
+ * Each read returns a new copy of the value, so no {@link org.apache.ibatis.cache.decorators.SerializedCache}
+ * is needed. The cache is thread safe, reads run concurrently.
+ * Direct buffers count against {@code -XX:MaxDirectMemorySize}.
+ */
+public class OffHeapCache implements Cache, InitializingObject {
+
+  private static final Log log = LogFactory.getLog(OffHeapCache.class);
+
+  private static final int MAGIC = 0x4d424f48;
+  // 段头：魔数、已写入的末尾位置、段的代数（用于重启时按写入顺序加载）
+  private static final int END_OFFSET = 4;
+  private static final int GENERATION_OFFSET = 8;
+  private static final int SEGMENT_HEADER = 16;
+  // 条目头：键长度、值长度（-1表示删除标记）
+  private static final int ENTRY_HEADER = 8;
+  private static final int REMOVED = -1;
+
+  private final String id;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  // 序列化后的键的哈希 -> 段序号（高32位）与段内偏移（低32位）
+  private final Map<Long, Long> index = new HashMap<Long, Long>();
+  private long capacity = 256L * 1024 * 1024;
+  private int segmentSize = 16 * 1024 * 1024;
+  private String file;
+  private CacheSerializer serializer = new BinaryCacheSerializer();
+  private CacheMetrics metrics;
+
+  // guarded by lock
+  private ByteBuffer[] segments;
+  private int current;
+  private int position;
+  private long generation;
+
+  public OffHeapCache(String id) {
+    this.id = id;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public int getSize() {
+    lock.readLock().lock();
+    try {
+      return index.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Number of bytes of all segments, 256MB by default.
+   */
+  public void setCapacity(long capacity) {
+    if (capacity < 1) {
+      throw new CacheException("The capacity of cache " + id + " must be greater than zero but was " + capacity);
+    }
+    this.capacity = capacity;
+  }
+
+  /**
+   * Number of bytes of each segment, 16MB by default. An entry larger than a segment is not cached.
+   * The capacity holds at least two segments.
+   */
+  public void setSegmentSize(int segmentSize) {
+    if (segmentSize <= SEGMENT_HEADER + ENTRY_HEADER) {
+      throw new CacheException("The segment size of cache " + id + " must be greater than "
+          + (SEGMENT_HEADER + ENTRY_HEADER) + " but was " + segmentSize);
+    }
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * Path of the file to map the segments to, so that entries survive restarts. None by default.
+   */
+  public void setFile(String file) {
+    this.file = file;
+  }
+
+  public void setSerializer(CacheSerializer serializer) {
+    this.serializer = serializer;
+  }
+
+  /**
+   * Counts the entries dropped with the segments they were written to, set when cache metrics are enabled.
+   */
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  public int getSegmentSize() {
+    return segmentSize;
+  }
+
+  public String getFile() {
+    return file;
+  }
+
+  @Override
+  public void initialize() throws Exception {
+    lock.writeLock().lock();
+    try {
+      open();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    final byte[] keyBytes = serializer.serialize(key);
+    final byte[] valueBytes = serializer.serialize(value);
+    lock.writeLock().lock();
+    try {
+      if (segments == null) {
+        open();
+      }
+      append(keyBytes, hash(keyBytes), valueBytes);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    final byte[] keyBytes = serializer.serialize(key);
+    final long hash = hash(keyBytes);
+    final byte[] valueBytes;
+    lock.readLock().lock();
+    try {
+      final Long location = segments == null ? null : index.get(hash);
+      if (location == null) {
+        return null;
+      }
+      valueBytes = read(location, keyBytes);
+    } finally {
+      lock.readLock().unlock();
+    }
+    if (valueBytes == null) {
+      return null;
+    }
+    try {
+      return serializer.deserialize(valueBytes);
+    } catch (CacheException e) {
+      log.warn("Dropping an entry of cache " + id + " that cannot be deserialized. Cause: " + e);
+      removeObject(key);
+      return null;
+    }
+  }
+
+  /**
+   * Always returns null, values are not deserialized to be removed.
+   */
+  @Override
+  public Object removeObject(Object key) {
+    final byte[] keyBytes = serializer.serialize(key);
+    final long hash = hash(keyBytes);
+    lock.writeLock().lock();
+    try {
+      if (segments != null && index.containsKey(hash)) {
+        if (file == null) {
+          index.remove(hash);
+        } else {
+          // 写入删除标记，重启后该条目不会重新出现
+          append(keyBytes, hash, null);
+        }
+      }
+      return null;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      index.clear();
+      if (segments == null) {
+        return;
+      }
+      for (ByteBuffer segment : segments) {
+        if (segment != null) {
+          segment.putInt(END_OFFSET, SEGMENT_HEADER);
+        }
+      }
+      current = segments.length - 1;
+      nextSegment();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  private void open() {
+    if (segments != null) {
+      return;
+    }
+    final int size = (int) Math.min(segmentSize, capacity / 2);
+    if (size <= SEGMENT_HEADER + ENTRY_HEADER) {
+      throw new CacheException("The capacity of cache " + id + " is too small: " + capacity);
+    }
+    segmentSize = size;
+    final int count = (int) Math.min(capacity / size, Integer.MAX_VALUE);
+    segments = new ByteBuffer[count];
+    if (file == null) {
+      current = count - 1;
+      nextSegment();
+    } else {
+      try {
+        map(count);
+      } catch (IOException e) {
+        segments = null;
+        throw new CacheException("Error mapping file " + file + " of cache " + id + ". Cause: " + e, e);
+      }
+    }
+  }
+
+  private void map(int count) throws IOException {
+    final long length = (long) count * segmentSize;
+    final RandomAccessFile raf = new RandomAccessFile(new File(file), "rw");
+    try {
+      final boolean reuse = raf.length() == length;
+      if (!reuse) {
+        raf.setLength(0);
+        raf.setLength(length);
+      }
+      final FileChannel channel = raf.getChannel();
+      for (int i = 0; i < count; i++) {
+        segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * segmentSize, segmentSize);
+      }
+    } finally {
+      // 映射在文件关闭后仍然有效
+      raf.close();
+    }
+    load();
+  }
+
+  private void load() {
+    final List<Integer> written = new ArrayList<Integer>();
+    for (int i = 0; i < segments.length; i++) {
+      final ByteBuffer segment = segments[i];
+      final int end = segment.getInt(END_OFFSET);
+      if (segment.getInt(0) == MAGIC && end >= SEGMENT_HEADER && end <= segmentSize) {
+        written.add(i);
+      } else {
+        segment.putInt(0, MAGIC);
+        segment.putInt(END_OFFSET, SEGMENT_HEADER);
+        segment.putLong(GENERATION_OFFSET, 0);
+      }
+    }
+    Collections.sort(written, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        final long ga = segments[a].getLong(GENERATION_OFFSET);
+        final long gb = segments[b].getLong(GENERATION_OFFSET);
+        return ga < gb ? -1 : (ga == gb ? 0 : 1);
+      }
+    });
+    for (int i : written) {
+      final ByteBuffer segment = segments[i];
+      final int end = segment.getInt(END_OFFSET);
+      int offset = SEGMENT_HEADER;
+      while (offset + ENTRY_HEADER <= end) {
+        final int keyLength = segment.getInt(offset);
+        final int valueLength = segment.getInt(offset + 4);
+        final int next = offset + ENTRY_HEADER + keyLength + Math.max(valueLength, 0);
+        if (keyLength < 0 || valueLength < REMOVED || next > end || next < offset) {
+          // 上次运行中断时未写完的条目
+          segment.putInt(END_OFFSET, offset);
+          break;
+        }
+        final long hash = hash(segment, offset + ENTRY_HEADER, keyLength);
+        if (valueLength == REMOVED) {
+          index.remove(hash);
+        } else {
+          index.put(hash, location(i, offset));
+        }
+        offset = next;
+      }
+    }
+    if (written.isEmpty()) {
+      current = segments.length - 1;
+      nextSegment();
+    } else {
+      current = written.get(written.size() - 1);
+      position = segments[current].getInt(END_OFFSET);
+      generation = segments[current].getLong(GENERATION_OFFSET);
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Loaded " + index.size() + " entries of cache " + id + " from " + file);
+    }
+  }
+
+  private void append(byte[] keyBytes, long hash, byte[] valueBytes) {
+    final int length = ENTRY_HEADER + keyBytes.length + (valueBytes == null ? 0 : valueBytes.length);
+    if (length < 0 || length > segmentSize - SEGMENT_HEADER) {
+      index.remove(hash);
+      return;
+    }
+    if (position + length > segmentSize) {
+      nextSegment();
+    }
+    final ByteBuffer out = segments[current].duplicate();
+    out.position(position);
+    out.putInt(keyBytes.length);
+    out.putInt(valueBytes == null ? REMOVED : valueBytes.length);
+    out.put(keyBytes);
+    if (valueBytes == null) {
+      index.remove(hash);
+    } else {
+      out.put(valueBytes);
+      index.put(hash, location(current, position));
+    }
+    position += length;
+    segments[current].putInt(END_OFFSET, position);
+  }
+
+  private void nextSegment() {
+    current = (current + 1) % segments.length;
+    if (segments[current] == null) {
+      segments[current] = ByteBuffer.allocateDirect(segmentSize);
+    } else {
+      evict(current);
+    }
+    final ByteBuffer segment = segments[current];
+    segment.putInt(0, MAGIC);
+    segment.putInt(END_OFFSET, SEGMENT_HEADER);
+    segment.putLong(GENERATION_OFFSET, ++generation);
+    position = SEGMENT_HEADER;
+  }
+
+  private void evict(int i) {
+    final ByteBuffer segment = segments[i];
+    final int end = segment.getInt(END_OFFSET);
+    int offset = SEGMENT_HEADER;
+    while (offset < end) {
+      final int keyLength = segment.getInt(offset);
+      final int valueLength = segment.getInt(offset + 4);
+      if (valueLength != REMOVED) {
+        final long hash = hash(segment, offset + ENTRY_HEADER, keyLength);
+        final Long location = index.get(hash);
+        if (location != null && location == location(i, offset)) {
+          index.remove(hash);
+          if (metrics != null) {
+            metrics.recordEviction();
+          }
+        }
+      }
+      offset += ENTRY_HEADER + keyLength + Math.max(valueLength, 0);
+    }
+  }
+
+  private byte[] read(long location, byte[] keyBytes) {
+    final ByteBuffer segment = segments[(int) (location >>> 32)];
+    final int offset = (int) location;
+    final int keyLength = segment.getInt(offset);
+    if (keyLength != keyBytes.length) {
+      return null;
+    }
+    final int keyOffset = offset + ENTRY_HEADER;
+    for (int i = 0; i < keyLength; i++) {
+      if (segment.get(keyOffset + i) != keyBytes[i]) {
+        // 哈希冲突
+        return null;
+      }
+    }
+    final byte[] valueBytes = new byte[segment.getInt(offset + 4)];
+    final ByteBuffer in = segment.duplicate();
+    in.position(keyOffset + keyLength);
+    in.get(valueBytes);
+    return valueBytes;
+  }
+
+  private static long location(int segment, int offset) {
+    return ((long) segment << 32) | offset;
+  }
+
+  // FNV-1a, independent of the hash codes of the key objects so that it is stable across restarts
+  private static long hash(byte[] bytes) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : bytes) {
+      hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  private static long hash(ByteBuffer buffer, int offset, int length) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = offset; i < offset + length; i++) {
+      hash = (hash ^ (buffer.get(i) & 0xff)) * 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+}
@@ -0,0 +1,65 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Either the clearing of a cache or the invalidation of the entries of all caches tagged with some tables
+ * (see {@link org.apache.ibatis.cache.CacheTagVersions}).
+ */
+public final class CacheInvalidation implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String cacheId;
+  private final String[] tags;
+
+  private CacheInvalidation(String cacheId, String[] tags) {
+    this.cacheId = cacheId;
+    this.tags = tags;
+  }
+
+  public static CacheInvalidation clear(String cacheId) {
+    return new CacheInvalidation(cacheId, null);
+  }
+
+  public static CacheInvalidation tags(Collection<String> tags) {
+    return new CacheInvalidation(null, tags.toArray(new String[tags.size()]));
+  }
+
+  /**
+   * The id of the cache to clear, null when tags are invalidated.
+   */
+  public String getCacheId() {
+    return cacheId;
+  }
+
+  /**
+   * The invalidated tags, null when a cache is cleared.
+   */
+  public String[] getTags() {
+    return tags == null ? null : tags.clone();
+  }
+
+  @Override
+  public String toString() {
+    return cacheId != null ? "clear " + cacheId : "tags " + Arrays.toString(tags);
+  }
+
+}
@@ -0,0 +1,39 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+/**
+ * Carries cache invalidations between the nodes of a cluster, see
+ * {@link org.apache.ibatis.cache.decorators.NearCache}.
+ * <p>
+ * Invalidations published by a node are delivered to the listeners of the other nodes only.
+ * Implementations must be thread safe and have a public no-argument constructor to be set
+ * with the {@code cacheInvalidationBus} setting.
+ */
+public interface InvalidationBus {
+
+  void publish(CacheInvalidation invalidation);
+
+  void subscribe(InvalidationListener listener);
+
+  void unsubscribe(InvalidationListener listener);
+
+  /**
+   * Stops delivering invalidations and releases the resources of the bus.
+   */
+  void close();
+
+}
@@ -0,0 +1,104 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A bus connecting the nodes running in the same JVM, for instance several {@code SqlSessionFactory}
+ * instances of a test standing for the nodes of a cluster. Each node uses its own instance; the instances
+ * of the same {@link #setGroup(String) group} deliver their invalidations to each other, on the publishing thread.
+ */
+public class LoopbackInvalidationBus implements InvalidationBus {
+
+  private static final ConcurrentMap<String, List<LoopbackInvalidationBus>> GROUPS = new ConcurrentHashMap<String, List<LoopbackInvalidationBus>>();
+
+  private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<InvalidationListener>();
+  private String group = "default";
+  private boolean joined;
+
+  public String getGroup() {
+    return group;
+  }
+
+  /**
+   * Name of the group of buses to deliver invalidations to, "default" by default.
+   */
+  public synchronized void setGroup(String group) {
+    if (joined) {
+      getMembers(this.group).remove(this);
+      getMembers(group).add(this);
+    }
+    this.group = group;
+  }
+
+  @Override
+  public void publish(CacheInvalidation invalidation) {
+    join();
+    for (LoopbackInvalidationBus member : getMembers(group)) {
+      if (member != this) {
+        member.deliver(invalidation);
+      }
+    }
+  }
+
+  @Override
+  public void subscribe(InvalidationListener listener) {
+    join();
+    listeners.add(listener);
+  }
+
+  @Override
+  public void unsubscribe(InvalidationListener listener) {
+    listeners.remove(listener);
+  }
+
+  @Override
+  public synchronized void close() {
+    getMembers(group).remove(this);
+    joined = false;
+    listeners.clear();
+  }
+
+  private void deliver(CacheInvalidation invalidation) {
+    for (InvalidationListener listener : listeners) {
+      listener.onInvalidation(invalidation);
+    }
+  }
+
+  private synchronized void join() {
+    if (!joined) {
+      getMembers(group).add(this);
+      joined = true;
+    }
+  }
+
+  private static List<LoopbackInvalidationBus> getMembers(String group) {
+    List<LoopbackInvalidationBus> members = GROUPS.get(group);
+    if (members == null) {
+      members = new CopyOnWriteArrayList<LoopbackInvalidationBus>();
+      final List<LoopbackInvalidationBus> previous = GROUPS.putIfAbsent(group, members);
+      if (previous != null) {
+        members = previous;
+      }
+    }
+    return members;
+  }
+
+}
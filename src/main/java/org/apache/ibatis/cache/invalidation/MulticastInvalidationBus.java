@@ -0,0 +1,221 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * A bus sending invalidations as UDP multicast datagrams, for the nodes of a local network.
+ * <p>
+ * The socket is opened and a daemon thread starts receiving when the first listener subscribes.
+ * UDP does not guarantee delivery: a lost datagram leaves stale entries on the nodes missing it, so caches
+ * of mutable data should also have a {@code flushInterval} bounding how long this may last.
+ */
+public class MulticastInvalidationBus implements InvalidationBus {
+
+  private static final Log log = LogFactory.getLog(MulticastInvalidationBus.class);
+
+  private static final int MAGIC = 0x4d424953;
+  private static final byte CLEAR = 1;
+  private static final byte TAGS = 2;
+  private static final int MAX_DATAGRAM_SIZE = 65507;
+
+  private final long nodeId = new SecureRandom().nextLong();
+  private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<InvalidationListener>();
+  private String group = "239.255.27.1";
+  private int port = 4446;
+  private int timeToLive = 1;
+
+  // guarded by this
+  private MulticastSocket socket;
+  private InetAddress groupAddress;
+  private Thread receiver;
+
+  public String getGroup() {
+    return group;
+  }
+
+  /**
+   * Multicast group address, 239.255.27.1 by default.
+   */
+  public void setGroup(String group) {
+    this.group = group;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  /**
+   * Port of the group, 4446 by default.
+   */
+  public void setPort(int port) {
+    this.port = port;
+  }
+
+  public int getTimeToLive() {
+    return timeToLive;
+  }
+
+  /**
+   * Number of routers datagrams may cross, 1 (the local network) by default.
+   */
+  public void setTimeToLive(int timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+  @Override
+  public void publish(CacheInvalidation invalidation) {
+    final byte[] bytes = encode(invalidation);
+    if (bytes.length > MAX_DATAGRAM_SIZE) {
+      throw new CacheException("Invalidation too large for a datagram: " + invalidation);
+    }
+    try {
+      final MulticastSocket socket = open();
+      socket.send(new DatagramPacket(bytes, bytes.length, groupAddress, port));
+    } catch (IOException e) {
+      // 数据库事务已提交，只能记录下来，由flushInterval兜底
+      log.warn("Could not publish cache invalidation " + invalidation + ". Cause: " + e);
+    }
+  }
+
+  @Override
+  public void subscribe(InvalidationListener listener) {
+    listeners.add(listener);
+    try {
+      open();
+    } catch (IOException e) {
+      throw new CacheException("Could not join multicast group " + group + ":" + port + ". Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public void unsubscribe(InvalidationListener listener) {
+    listeners.remove(listener);
+  }
+
+  @Override
+  public synchronized void close() {
+    if (socket != null) {
+      socket.close();
+      socket = null;
+    }
+    receiver = null;
+  }
+
+  private synchronized MulticastSocket open() throws IOException {
+    if (socket == null) {
+      groupAddress = InetAddress.getByName(group);
+      socket = new MulticastSocket(port);
+      socket.setTimeToLive(timeToLive);
+      socket.joinGroup(groupAddress);
+      receiver = new Thread(new Receiver(socket), "mybatis-cache-invalidation-" + group + ":" + port);
+      receiver.setDaemon(true);
+      receiver.start();
+    }
+    return socket;
+  }
+
+  private byte[] encode(CacheInvalidation invalidation) {
+    try {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+      final DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(MAGIC);
+      out.writeLong(nodeId);
+      if (invalidation.getCacheId() != null) {
+        out.writeByte(CLEAR);
+        out.writeUTF(invalidation.getCacheId());
+      } else {
+        final String[] tags = invalidation.getTags();
+        out.writeByte(TAGS);
+        out.writeInt(tags.length);
+        for (String tag : tags) {
+          out.writeUTF(tag);
+        }
+      }
+      out.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new CacheException("Error encoding invalidation " + invalidation + ". Cause: " + e, e);
+    }
+  }
+
+  private CacheInvalidation decode(byte[] data, int length) throws IOException {
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, length));
+    if (in.readInt() != MAGIC || in.readLong() == nodeId) {
+      // 其他程序的数据报，或本节点自己发出的
+      return null;
+    }
+    final byte type = in.readByte();
+    if (type == CLEAR) {
+      return CacheInvalidation.clear(in.readUTF());
+    } else if (type == TAGS) {
+      final String[] tags = new String[in.readInt()];
+      for (int i = 0; i < tags.length; i++) {
+        tags[i] = in.readUTF();
+      }
+      return CacheInvalidation.tags(Arrays.asList(tags));
+    }
+    return null;
+  }
+
+  private class Receiver implements Runnable {
+
+    private final MulticastSocket socket;
+
+    Receiver(MulticastSocket socket) {
+      this.socket = socket;
+    }
+
+    @Override
+    public void run() {
+      final DatagramPacket packet = new DatagramPacket(new byte[MAX_DATAGRAM_SIZE], MAX_DATAGRAM_SIZE);
+      while (!socket.isClosed()) {
+        try {
+          socket.receive(packet);
+          final CacheInvalidation invalidation = decode(packet.getData(), packet.getLength());
+          if (invalidation != null) {
+            for (InvalidationListener listener : listeners) {
+              listener.onInvalidation(invalidation);
+            }
+          }
+        } catch (IOException e) {
+          if (!socket.isClosed()) {
+            log.warn("Error receiving cache invalidation. Cause: " + e);
+          }
+        } catch (RuntimeException e) {
+          log.warn("Error applying cache invalidation. Cause: " + e);
+        }
+      }
+    }
+  }
+
+}
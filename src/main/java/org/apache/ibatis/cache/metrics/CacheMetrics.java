@@ -0,0 +1,231 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * Metrics of a second level cache, recorded by {@link org.apache.ibatis.cache.decorators.MetricsCache} and by
+ * the executor loading the missed entries.
+ * <p>
+ * Get and put times include the copy of the values of read/write caches, so they measure the serialization cost.
+ * Load time is the time taken by the queries run on a miss; compared to the get time and the hit ratio, it tells
+ * whether a cache pays for itself.
+ */
+public class CacheMetrics implements CacheMetricsMXBean {
+
+  private final String cacheId;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder puts = new LongAdder();
+  private final LongAdder removals = new LongAdder();
+  private final LongAdder clears = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LatencyHistogram getTime = new LatencyHistogram();
+  private final LatencyHistogram putTime = new LatencyHistogram();
+  private final LatencyHistogram loadTime = new LatencyHistogram();
+  private volatile Cache cache;
+  private volatile long weight = -1;
+
+  public CacheMetrics(String cacheId) {
+    this.cacheId = cacheId;
+  }
+
+  /**
+   * Sets the cache whose size is reported.
+   */
+  public void setCache(Cache cache) {
+    this.cache = cache;
+  }
+
+  public void recordGet(boolean hit, long nanos) {
+    if (hit) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    getTime.record(nanos);
+  }
+
+  public void recordPut(long nanos) {
+    puts.increment();
+    putTime.record(nanos);
+  }
+
+  /**
+   * Called by the cache or eviction decorator dropping an entry, see {@link org.apache.ibatis.mapping.CacheBuilder}.
+   */
+  public void recordEviction() {
+    evictions.increment();
+  }
+
+  public void recordRemoval() {
+    removals.increment();
+  }
+
+  public void recordClear() {
+    clears.increment();
+  }
+
+  /**
+   * Called by {@link org.apache.ibatis.cache.decorators.WeightedCache} whenever the weight of its entries changes.
+   */
+  public void recordWeight(long weight) {
+    this.weight = weight;
+  }
+
+  public void recordLoad(long nanos) {
+    loadTime.record(nanos);
+  }
+
+  @Override
+  public String getCacheId() {
+    return cacheId;
+  }
+
+  /**
+   * Current number of entries, -1 when the cache is not built.
+   */
+  @Override
+  public int getSize() {
+    final Cache cache = this.cache;
+    return cache == null ? -1 : cache.getSize();
+  }
+
+  /**
+   * Current total weight of the entries in bytes, -1 when the cache is not weighted.
+   */
+  @Override
+  public long getWeight() {
+    return weight;
+  }
+
+  @Override
+  public long getHits() {
+    return hits.sum();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  @Override
+  public double getHitRatio() {
+    final long hits = getHits();
+    final long requests = hits + getMisses();
+    return requests == 0 ? 0 : (double) hits / requests;
+  }
+
+  @Override
+  public long getPuts() {
+    return puts.sum();
+  }
+
+  @Override
+  public long getRemovals() {
+    return removals.sum();
+  }
+
+  @Override
+  public long getClears() {
+    return clears.sum();
+  }
+
+  /**
+   * Entries dropped by the eviction policy of the cache, or collected by the garbage collector for soft and weak caches.
+   * Custom caches and decorators report their evictions through a {@code setMetrics(CacheMetrics)} setter.
+   */
+  @Override
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  public LatencyHistogram getGetTime() {
+    return getTime;
+  }
+
+  public LatencyHistogram getPutTime() {
+    return putTime;
+  }
+
+  public LatencyHistogram getLoadTime() {
+    return loadTime;
+  }
+
+  @Override
+  public long getGetTimeMeanMicros() {
+    return toMicros(getTime.getMeanNanos());
+  }
+
+  @Override
+  public long getGetTime99thPercentileMicros() {
+    return toMicros(getTime.getPercentileNanos(99));
+  }
+
+  @Override
+  public long getPutTimeMeanMicros() {
+    return toMicros(putTime.getMeanNanos());
+  }
+
+  @Override
+  public long getPutTime99thPercentileMicros() {
+    return toMicros(putTime.getPercentileNanos(99));
+  }
+
+  @Override
+  public long getLoadTimeMeanMicros() {
+    return toMicros(loadTime.getMeanNanos());
+  }
+
+  @Override
+  public long getLoadTime99thPercentileMicros() {
+    return toMicros(loadTime.getPercentileNanos(99));
+  }
+
+  @Override
+  public long getLoadTimeTotalMicros() {
+    return toMicros(loadTime.getTotalNanos());
+  }
+
+  @Override
+  public void reset() {
+    hits.reset();
+    misses.reset();
+    puts.reset();
+    removals.reset();
+    clears.reset();
+    evictions.reset();
+    getTime.reset();
+    putTime.reset();
+    loadTime.reset();
+  }
+
+  private static long toMicros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+
+  @Override
+  public String toString() {
+    return "CacheMetrics[" + cacheId + ": hits=" + getHits() + ", misses=" + getMisses() + ", puts=" + getPuts()
+        + ", evictions=" + getEvictions() + ", get=" + getGetTimeMeanMicros() + "us, put=" + getPutTimeMeanMicros()
+        + "us, load=" + getLoadTimeMeanMicros() + "us]";
+  }
+
+}
@@ -0,0 +1,59 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+/**
+ * JMX view of {@link CacheMetrics}. Durations are in microseconds.
+ */
+public interface CacheMetricsMXBean {
+
+  String getCacheId();
+
+  int getSize();
+
+  long getWeight();
+
+  long getHits();
+
+  long getMisses();
+
+  double getHitRatio();
+
+  long getPuts();
+
+  long getRemovals();
+
+  long getClears();
+
+  long getEvictions();
+
+  long getGetTimeMeanMicros();
+
+  long getGetTime99thPercentileMicros();
+
+  long getPutTimeMeanMicros();
+
+  long getPutTime99thPercentileMicros();
+
+  long getLoadTimeMeanMicros();
+
+  long getLoadTime99thPercentileMicros();
+
+  long getLoadTimeTotalMicros();
+
+  void reset();
+
+}
@@ -0,0 +1,151 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * The metrics of the second level caches of a configuration, by cache id.
+ * <p>
+ * When exported, each of them is registered in the platform MBean server as
+ * {@code org.apache.ibatis:type=CacheMetrics,registry=<registry>,name=<cache id>}, where the registry name tells
+ * apart the configurations of the same JVM.
+ *
+ * @see org.apache.ibatis.session.Configuration#setCacheMetricsEnabled(boolean)
+ */
+public class CacheMetricsRegistry {
+
+  private static final Log log = LogFactory.getLog(CacheMetricsRegistry.class);
+
+  private final ConcurrentMap<String, CacheMetrics> metrics = new ConcurrentHashMap<String, CacheMetrics>();
+  private String name = Integer.toHexString(System.identityHashCode(this));
+  private boolean jmxEnabled;
+
+  /**
+   * Returns the metrics of a cache, created if needed.
+   */
+  public CacheMetrics register(String cacheId) {
+    CacheMetrics cacheMetrics = metrics.get(cacheId);
+    if (cacheMetrics == null) {
+      cacheMetrics = new CacheMetrics(cacheId);
+      final CacheMetrics previous = metrics.putIfAbsent(cacheId, cacheMetrics);
+      if (previous != null) {
+        return previous;
+      }
+      synchronized (this) {
+        if (jmxEnabled) {
+          registerMBean(cacheMetrics);
+        }
+      }
+    }
+    return cacheMetrics;
+  }
+
+  /**
+   * Returns the metrics of a cache, null if it has none.
+   */
+  public CacheMetrics getMetrics(String cacheId) {
+    return metrics.get(cacheId);
+  }
+
+  public Collection<CacheMetrics> getAllMetrics() {
+    return Collections.unmodifiableCollection(new ArrayList<CacheMetrics>(metrics.values()));
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Name of the registry in the JMX object names, the identity hash code of the registry by default.
+   * Must be set before the metrics are exported.
+   */
+  public synchronized void setName(String name) {
+    if (jmxEnabled) {
+      throw new CacheException("Cannot rename cache metrics registry " + this.name + " once exported over JMX.");
+    }
+    this.name = name;
+  }
+
+  public synchronized boolean isJmxEnabled() {
+    return jmxEnabled;
+  }
+
+  /**
+   * Exports the metrics of the current and future caches over JMX, or unregisters them.
+   */
+  public synchronized void setJmxEnabled(boolean jmxEnabled) {
+    if (this.jmxEnabled == jmxEnabled) {
+      return;
+    }
+    this.jmxEnabled = jmxEnabled;
+    for (CacheMetrics cacheMetrics : metrics.values()) {
+      if (jmxEnabled) {
+        registerMBean(cacheMetrics);
+      } else {
+        unregisterMBean(cacheMetrics);
+      }
+    }
+  }
+
+  public ObjectName getObjectName(String cacheId) {
+    try {
+      return new ObjectName("org.apache.ibatis:type=CacheMetrics,registry=" + ObjectName.quote(name)
+          + ",name=" + ObjectName.quote(cacheId));
+    } catch (JMException e) {
+      throw new CacheException("Error building the JMX name of cache " + cacheId + ".  Cause: " + e, e);
+    }
+  }
+
+  private void registerMBean(CacheMetrics cacheMetrics) {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName objectName = getObjectName(cacheMetrics.getCacheId());
+    try {
+      if (!server.isRegistered(objectName)) {
+        server.registerMBean(cacheMetrics, objectName);
+      }
+    } catch (JMException e) {
+      // 监控不可用不应影响缓存本身
+      log.warn("Could not register " + objectName + " over JMX.  Cause: " + e);
+    }
+  }
+
+  private void unregisterMBean(CacheMetrics cacheMetrics) {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName objectName = getObjectName(cacheMetrics.getCacheId());
+    try {
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+    } catch (JMException e) {
+      log.warn("Could not unregister " + objectName + " from JMX.  Cause: " + e);
+    }
+  }
+
+}
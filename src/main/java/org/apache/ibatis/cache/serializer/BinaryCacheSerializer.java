@@ -0,0 +1,907 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+
+/**
+ * A compact binary serializer for the values usually held by caches: lists and maps of result objects,
+ * their boxed, string, date and big number properties.
+ * <p>
+ * A serializable class is written field by field, like Java serialization does but without its class
+ * descriptors, when it and all its superclasses are serializable, it has a no-argument constructor and
+ * none of its classes customize serialization ({@code writeObject}, {@code readObject}, {@code writeReplace},
+ * {@code readResolve}, {@link Externalizable}). The fields and the constructor (found by {@link Reflector})
+ * of each class are looked up once. Shared references and cycles are preserved. As the constructor runs,
+ * transient fields keep the value it gives them instead of being left null.
+ * <p>
+ * The fields of each class are written in name order, and the first occurrence of a class in a value is
+ * followed by a fingerprint of the names and types of all its fields. A value whose classes changed since it
+ * was written fails to deserialize with a {@link CacheException}, which caches keeping serialized values across
+ * restarts treat as a miss.
+ * <p>
+ * Any other value, for instance a lazy loading proxy, is written with Java serialization. All such values
+ * of one serialized value go through the same {@link ObjectOutputStream}, so references between them are preserved too.
+ * <p>
+ * The format is meant to be read by the same version of the application only.
+ */
+public class BinaryCacheSerializer implements CacheSerializer {
+
+  private static final byte FORMAT_VERSION = 2;
+
+  private static final byte NULL = 0;
+  private static final byte REFERENCE = 1;
+  private static final byte STRING = 2;
+  private static final byte INTEGER = 3;
+  private static final byte LONG = 4;
+  private static final byte DOUBLE = 5;
+  private static final byte TRUE = 6;
+  private static final byte FALSE = 7;
+  private static final byte FLOAT = 8;
+  private static final byte SHORT = 9;
+  private static final byte BYTE = 10;
+  private static final byte CHARACTER = 11;
+  private static final byte BIG_DECIMAL = 12;
+  private static final byte BIG_INTEGER = 13;
+  private static final byte DATE = 14;
+  private static final byte SQL_DATE = 15;
+  private static final byte SQL_TIME = 16;
+  private static final byte TIMESTAMP = 17;
+  private static final byte BYTES = 18;
+  private static final byte ENUM = 19;
+  private static final byte ARRAY_LIST = 20;
+  private static final byte LINKED_LIST = 21;
+  private static final byte HASH_SET = 22;
+  private static final byte LINKED_HASH_SET = 23;
+  private static final byte HASH_MAP = 24;
+  private static final byte LINKED_HASH_MAP = 25;
+  private static final byte OBJECT_ARRAY = 26;
+  private static final byte INT_ARRAY = 27;
+  private static final byte LONG_ARRAY = 28;
+  private static final byte DOUBLE_ARRAY = 29;
+  private static final byte BEAN = 30;
+  private static final byte JAVA = 31;
+
+  // 线程内复用的缓冲区，超过此大小的缓冲区用完后丢弃
+  private static final int MAX_POOLED_BUFFER = 1024 * 1024;
+
+  private static final Comparator<Field> FIELD_NAME_ORDER = new Comparator<Field>() {
+    @Override
+    public int compare(Field o1, Field o2) {
+      return o1.getName().compareTo(o2.getName());
+    }
+  };
+
+  private final ReflectorFactory reflectorFactory;
+  private final ConcurrentMap<Class<?>, BeanSchema> schemas = new ConcurrentHashMap<Class<?>, BeanSchema>();
+  private final ThreadLocal<Output> outputs = new ThreadLocal<Output>();
+
+  public BinaryCacheSerializer() {
+    this(new DefaultReflectorFactory());
+  }
+
+  public BinaryCacheSerializer(ReflectorFactory reflectorFactory) {
+    this.reflectorFactory = reflectorFactory;
+  }
+
+  @Override
+  public byte[] serialize(Object value) {
+    Output output = outputs.get();
+    if (output == null || output.inUse) {
+      // a value written with Java serialization may serialize another value on the same thread
+      output = new Output();
+      if (outputs.get() == null) {
+        outputs.set(output);
+      }
+    }
+    output.inUse = true;
+    try {
+      output.writeByte(FORMAT_VERSION);
+      // length of the binary part, the values written with Java serialization follow it
+      output.writeLong(0);
+      writeObject(output, value);
+      return output.toByteArray();
+    } catch (Exception e) {
+      throw new CacheException("Error serializing object.  Cause: " + e, e);
+    } finally {
+      output.reset();
+    }
+  }
+
+  @Override
+  public Object deserialize(byte[] bytes) {
+    try {
+      final Input input = new Input(bytes);
+      final byte version = input.readByte();
+      if (version != FORMAT_VERSION) {
+        throw new CacheException("Unknown serialization format version " + version);
+      }
+      input.limit((int) input.readLong());
+      return readObject(input);
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+    }
+  }
+
+  private void writeObject(Output out, Object value) throws Exception {
+    if (value == null) {
+      out.writeByte(NULL);
+      return;
+    }
+    final Class<?> type = value.getClass();
+    if (type == String.class) {
+      out.writeByte(STRING);
+      out.writeString((String) value);
+    } else if (type == Integer.class) {
+      out.writeByte(INTEGER);
+      out.writeVarLong((Integer) value);
+    } else if (type == Long.class) {
+      out.writeByte(LONG);
+      out.writeVarLong((Long) value);
+    } else if (type == Double.class) {
+      out.writeByte(DOUBLE);
+      out.writeLong(Double.doubleToRawLongBits((Double) value));
+    } else if (type == Boolean.class) {
+      out.writeByte((Boolean) value ? TRUE : FALSE);
+    } else if (type == Float.class) {
+      out.writeByte(FLOAT);
+      out.writeVarInt(Float.floatToRawIntBits((Float) value));
+    } else if (type == Short.class) {
+      out.writeByte(SHORT);
+      out.writeVarLong((Short) value);
+    } else if (type == Byte.class) {
+      out.writeByte(BYTE);
+      out.writeByte((Byte) value);
+    } else if (type == Character.class) {
+      out.writeByte(CHARACTER);
+      out.writeVarInt((Character) value);
+    } else if (type == BigDecimal.class) {
+      out.writeByte(BIG_DECIMAL);
+      out.writeBytes(((BigDecimal) value).unscaledValue().toByteArray());
+      out.writeVarLong(((BigDecimal) value).scale());
+    } else if (type == BigInteger.class) {
+      out.writeByte(BIG_INTEGER);
+      out.writeBytes(((BigInteger) value).toByteArray());
+    } else if (type == Date.class) {
+      out.writeByte(DATE);
+      out.writeVarLong(((Date) value).getTime());
+    } else if (type == java.sql.Date.class) {
+      out.writeByte(SQL_DATE);
+      out.writeVarLong(((Date) value).getTime());
+    } else if (type == Time.class) {
+      out.writeByte(SQL_TIME);
+      out.writeVarLong(((Date) value).getTime());
+    } else if (type == Timestamp.class) {
+      out.writeByte(TIMESTAMP);
+      out.writeVarLong(((Timestamp) value).getTime());
+      out.writeVarInt(((Timestamp) value).getNanos());
+    } else if (type == byte[].class) {
+      out.writeByte(BYTES);
+      out.writeBytes((byte[]) value);
+    } else if (value instanceof Enum) {
+      out.writeByte(ENUM);
+      out.writeClass(((Enum<?>) value).getDeclaringClass());
+      out.writeString(((Enum<?>) value).name());
+    } else {
+      writeReferencedObject(out, value, type);
+    }
+  }
+
+  private void writeReferencedObject(Output out, Object value, Class<?> type) throws Exception {
+    final Integer handle = out.handles.get(value);
+    if (handle != null) {
+      out.writeByte(REFERENCE);
+      out.writeVarInt(handle);
+      return;
+    }
+    final byte collectionTag = collectionTag(type);
+    if (collectionTag != NULL) {
+      out.register(value);
+      out.writeByte(collectionTag);
+      if (value instanceof Map) {
+        final Map<?, ?> map = (Map<?, ?>) value;
+        out.writeVarInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          writeObject(out, entry.getKey());
+          writeObject(out, entry.getValue());
+        }
+      } else {
+        final Collection<?> collection = (Collection<?>) value;
+        out.writeVarInt(collection.size());
+        for (Object element : collection) {
+          writeObject(out, element);
+        }
+      }
+    } else if (type.isArray()) {
+      writeArray(out, value, type);
+    } else {
+      final BeanSchema schema = getSchema(type);
+      if (schema != null) {
+        out.register(value);
+        out.writeByte(BEAN);
+        writeBeanClass(out, type, schema);
+        writeFields(out, value, schema);
+      } else {
+        // 自定义了序列化方式或不满足条件的类型，交给Java序列化
+        out.register(value);
+        out.writeByte(JAVA);
+        out.javaStream().writeObject(value);
+      }
+    }
+  }
+
+  private void writeArray(Output out, Object value, Class<?> type) throws Exception {
+    final Class<?> componentType = type.getComponentType();
+    out.register(value);
+    if (!componentType.isPrimitive()) {
+      final Object[] array = (Object[]) value;
+      out.writeByte(OBJECT_ARRAY);
+      out.writeClass(componentType);
+      out.writeVarInt(array.length);
+      for (Object element : array) {
+        writeObject(out, element);
+      }
+    } else if (componentType == int.class) {
+      final int[] array = (int[]) value;
+      out.writeByte(INT_ARRAY);
+      out.writeVarInt(array.length);
+      for (int element : array) {
+        out.writeVarLong(element);
+      }
+    } else if (componentType == long.class) {
+      final long[] array = (long[]) value;
+      out.writeByte(LONG_ARRAY);
+      out.writeVarInt(array.length);
+      for (long element : array) {
+        out.writeVarLong(element);
+      }
+    } else if (componentType == double.class) {
+      final double[] array = (double[]) value;
+      out.writeByte(DOUBLE_ARRAY);
+      out.writeVarInt(array.length);
+      for (double element : array) {
+        out.writeLong(Double.doubleToRawLongBits(element));
+      }
+    } else {
+      out.writeByte(JAVA);
+      out.javaStream().writeObject(value);
+    }
+  }
+
+  private void writeFields(Output out, Object bean, BeanSchema schema) throws Exception {
+    for (Field field : schema.fields) {
+      final Class<?> fieldType = field.getType();
+      if (!fieldType.isPrimitive()) {
+        writeObject(out, field.get(bean));
+      } else if (fieldType == int.class) {
+        out.writeVarLong(field.getInt(bean));
+      } else if (fieldType == long.class) {
+        out.writeVarLong(field.getLong(bean));
+      } else if (fieldType == double.class) {
+        out.writeLong(Double.doubleToRawLongBits(field.getDouble(bean)));
+      } else if (fieldType == boolean.class) {
+        out.writeByte(field.getBoolean(bean) ? 1 : 0);
+      } else if (fieldType == float.class) {
+        out.writeVarInt(Float.floatToRawIntBits(field.getFloat(bean)));
+      } else if (fieldType == short.class) {
+        out.writeVarLong(field.getShort(bean));
+      } else if (fieldType == byte.class) {
+        out.writeByte(field.getByte(bean));
+      } else {
+        out.writeVarInt(field.getChar(bean));
+      }
+    }
+  }
+
+  private Object readObject(Input in) throws Exception {
+    final byte tag = in.readByte();
+    switch (tag) {
+      case NULL:
+        return null;
+      case REFERENCE:
+        return in.handles.get(in.readVarInt());
+      case STRING:
+        return in.readString();
+      case INTEGER:
+        return (int) in.readVarLong();
+      case LONG:
+        return in.readVarLong();
+      case DOUBLE:
+        return Double.longBitsToDouble(in.readLong());
+      case TRUE:
+        return Boolean.TRUE;
+      case FALSE:
+        return Boolean.FALSE;
+      case FLOAT:
+        return Float.intBitsToFloat(in.readVarInt());
+      case SHORT:
+        return (short) in.readVarLong();
+      case BYTE:
+        return in.readByte();
+      case CHARACTER:
+        return (char) in.readVarInt();
+      case BIG_DECIMAL:
+        return new BigDecimal(new BigInteger(in.readBytes()), (int) in.readVarLong());
+      case BIG_INTEGER:
+        return new BigInteger(in.readBytes());
+      case DATE:
+        return new Date(in.readVarLong());
+      case SQL_DATE:
+        return new java.sql.Date(in.readVarLong());
+      case SQL_TIME:
+        return new Time(in.readVarLong());
+      case TIMESTAMP:
+        final Timestamp timestamp = new Timestamp(in.readVarLong());
+        timestamp.setNanos(in.readVarInt());
+        return timestamp;
+      case BYTES:
+        return in.readBytes();
+      case ENUM:
+        return readEnum(in);
+      case ARRAY_LIST:
+      case LINKED_LIST:
+      case HASH_SET:
+      case LINKED_HASH_SET:
+        return readCollection(in, tag);
+      case HASH_MAP:
+      case LINKED_HASH_MAP:
+        return readMap(in, tag);
+      case OBJECT_ARRAY:
+      case INT_ARRAY:
+      case LONG_ARRAY:
+      case DOUBLE_ARRAY:
+        return readArray(in, tag);
+      case BEAN:
+        return readBean(in);
+      case JAVA:
+        final int handle = in.reserve();
+        final Object value = in.javaStream().readObject();
+        in.handles.set(handle, value);
+        return value;
+      default:
+        throw new CacheException("Unknown serialization tag " + tag);
+    }
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private Object readEnum(Input in) throws Exception {
+    final Class enumType = in.readClass();
+    return Enum.valueOf(enumType, in.readString());
+  }
+
+  private Object readCollection(Input in, byte tag) throws Exception {
+    final int size = in.readVarInt();
+    final Collection<Object> collection;
+    if (tag == ARRAY_LIST) {
+      collection = new ArrayList<Object>(size);
+    } else if (tag == LINKED_LIST) {
+      collection = new LinkedList<Object>();
+    } else if (tag == HASH_SET) {
+      collection = new HashSet<Object>(capacity(size));
+    } else {
+      collection = new LinkedHashSet<Object>(capacity(size));
+    }
+    in.register(collection);
+    for (int i = 0; i < size; i++) {
+      collection.add(readObject(in));
+    }
+    return collection;
+  }
+
+  private Object readMap(Input in, byte tag) throws Exception {
+    final int size = in.readVarInt();
+    final Map<Object, Object> map = tag == HASH_MAP ? new HashMap<Object, Object>(capacity(size)) : new LinkedHashMap<Object, Object>(capacity(size));
+    in.register(map);
+    for (int i = 0; i < size; i++) {
+      final Object key = readObject(in);
+      map.put(key, readObject(in));
+    }
+    return map;
+  }
+
+  private Object readArray(Input in, byte tag) throws Exception {
+    if (tag == OBJECT_ARRAY) {
+      final Class<?> componentType = in.readClass();
+      final Object[] array = (Object[]) Array.newInstance(componentType, in.readVarInt());
+      in.register(array);
+      for (int i = 0; i < array.length; i++) {
+        array[i] = readObject(in);
+      }
+      return array;
+    }
+    final int length = in.readVarInt();
+    if (tag == INT_ARRAY) {
+      final int[] array = new int[length];
+      in.register(array);
+      for (int i = 0; i < length; i++) {
+        array[i] = (int) in.readVarLong();
+      }
+      return array;
+    } else if (tag == LONG_ARRAY) {
+      final long[] array = new long[length];
+      in.register(array);
+      for (int i = 0; i < length; i++) {
+        array[i] = in.readVarLong();
+      }
+      return array;
+    }
+    final double[] array = new double[length];
+    in.register(array);
+    for (int i = 0; i < length; i++) {
+      array[i] = Double.longBitsToDouble(in.readLong());
+    }
+    return array;
+  }
+
+  private static void writeBeanClass(Output out, Class<?> type, BeanSchema schema) {
+    final Integer index = out.beanClasses.get(type);
+    if (index != null) {
+      out.writeVarInt(index + 1);
+    } else {
+      out.writeVarInt(0);
+      out.writeString(type.getName());
+      out.writeLong(schema.fingerprint);
+      out.beanClasses.put(type, out.beanClasses.size());
+    }
+  }
+
+  private BeanSchema readBeanSchema(Input in) throws ClassNotFoundException {
+    final int index = in.readVarInt();
+    if (index > 0) {
+      return in.beanSchemas.get(index - 1);
+    }
+    final Class<?> type = Resources.classForName(in.readString());
+    final long fingerprint = in.readLong();
+    final BeanSchema schema = getSchema(type);
+    if (schema == null) {
+      throw new CacheException("Class " + type.getName() + " can no longer be read by " + getClass().getSimpleName());
+    }
+    if (schema.fingerprint != fingerprint) {
+      throw new CacheException("Fields of class " + type.getName() + " changed since the value was serialized");
+    }
+    in.beanSchemas.add(schema);
+    return schema;
+  }
+
+  private Object readBean(Input in) throws Exception {
+    final BeanSchema schema = readBeanSchema(in);
+    final Object bean = schema.constructor.newInstance();
+    in.register(bean);
+    for (Field field : schema.fields) {
+      final Class<?> fieldType = field.getType();
+      if (!fieldType.isPrimitive()) {
+        field.set(bean, readObject(in));
+      } else if (fieldType == int.class) {
+        field.setInt(bean, (int) in.readVarLong());
+      } else if (fieldType == long.class) {
+        field.setLong(bean, in.readVarLong());
+      } else if (fieldType == double.class) {
+        field.setDouble(bean, Double.longBitsToDouble(in.readLong()));
+      } else if (fieldType == boolean.class) {
+        field.setBoolean(bean, in.readByte() != 0);
+      } else if (fieldType == float.class) {
+        field.setFloat(bean, Float.intBitsToFloat(in.readVarInt()));
+      } else if (fieldType == short.class) {
+        field.setShort(bean, (short) in.readVarLong());
+      } else if (fieldType == byte.class) {
+        field.setByte(bean, in.readByte());
+      } else {
+        field.setChar(bean, (char) in.readVarInt());
+      }
+    }
+    return bean;
+  }
+
+  private static byte collectionTag(Class<?> type) {
+    if (type == ArrayList.class) {
+      return ARRAY_LIST;
+    } else if (type == HashMap.class) {
+      return HASH_MAP;
+    } else if (type == LinkedHashMap.class) {
+      return LINKED_HASH_MAP;
+    } else if (type == HashSet.class) {
+      return HASH_SET;
+    } else if (type == LinkedHashSet.class) {
+      return LINKED_HASH_SET;
+    } else if (type == LinkedList.class) {
+      return LINKED_LIST;
+    }
+    return NULL;
+  }
+
+  private static int capacity(int size) {
+    return Math.max((int) (size / .75f) + 1, 16);
+  }
+
+  /**
+   * Returns null when instances of the type must be written with Java serialization.
+   */
+  private BeanSchema getSchema(Class<?> type) {
+    BeanSchema schema = schemas.get(type);
+    if (schema == null) {
+      schema = createSchema(type);
+      final BeanSchema previous = schemas.putIfAbsent(type, schema);
+      if (previous != null) {
+        schema = previous;
+      }
+    }
+    return schema == BeanSchema.UNSUPPORTED ? null : schema;
+  }
+
+  private BeanSchema createSchema(Class<?> type) {
+    if (!Serializable.class.isAssignableFrom(type) || Externalizable.class.isAssignableFrom(type)) {
+      return BeanSchema.UNSUPPORTED;
+    }
+    final Reflector reflector = reflectorFactory.findForClass(type);
+    if (!reflector.hasDefaultConstructor()) {
+      return BeanSchema.UNSUPPORTED;
+    }
+    final List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+    for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+      if (!Serializable.class.isAssignableFrom(current) || customizesSerialization(current)) {
+        return BeanSchema.UNSUPPORTED;
+      }
+      hierarchy.add(0, current);
+    }
+    final List<Field> fields = new ArrayList<Field>();
+    try {
+      for (Class<?> current : hierarchy) {
+        final List<Field> declaredFields = new ArrayList<Field>();
+        for (Field field : current.getDeclaredFields()) {
+          final int modifiers = field.getModifiers();
+          if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+            field.setAccessible(true);
+            declaredFields.add(field);
+          }
+        }
+        // getDeclaredFields的顺序没有保证，按名称排序使各JVM写出的顺序一致
+        Collections.sort(declaredFields, FIELD_NAME_ORDER);
+        fields.addAll(declaredFields);
+      }
+    } catch (SecurityException e) {
+      return BeanSchema.UNSUPPORTED;
+    }
+    return new BeanSchema(reflector.getDefaultConstructor(), fields.toArray(new Field[fields.size()]), fingerprint(fields));
+  }
+
+  /**
+   * 64-bit FNV-1a hash of the declaring class, name and type of each field.
+   */
+  private static long fingerprint(List<Field> fields) {
+    long hash = 0xcbf29ce484222325L;
+    for (Field field : fields) {
+      final String signature = field.getDeclaringClass().getName() + '.' + field.getName() + ':' + field.getType().getName() + ';';
+      for (int i = 0; i < signature.length(); i++) {
+        hash ^= signature.charAt(i);
+        hash *= 0x100000001b3L;
+      }
+    }
+    return hash;
+  }
+
+  private static boolean customizesSerialization(Class<?> type) {
+    for (Method method : type.getDeclaredMethods()) {
+      final String name = method.getName();
+      if ("writeObject".equals(name) || "readObject".equals(name) || "readObjectNoData".equals(name)
+          || "writeReplace".equals(name) || "readResolve".equals(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static final class BeanSchema {
+    static final BeanSchema UNSUPPORTED = new BeanSchema(null, null, 0);
+
+    private final Constructor<?> constructor;
+    private final Field[] fields;
+    private final long fingerprint;
+
+    BeanSchema(Constructor<?> constructor, Field[] fields, long fingerprint) {
+      this.constructor = constructor;
+      this.fields = fields;
+      this.fingerprint = fingerprint;
+    }
+  }
+
+  /**
+   * Growable buffer with the references and classes written so far. Values written with Java serialization
+   * go to a separate stream appended after the buffer.
+   */
+  private static final class Output {
+    private byte[] buffer = new byte[256];
+    private int position;
+    private boolean inUse;
+    private final IdentityHashMap<Object, Integer> handles = new IdentityHashMap<Object, Integer>();
+    private final Map<Class<?>, Integer> classes = new HashMap<Class<?>, Integer>();
+    private final Map<Class<?>, Integer> beanClasses = new HashMap<Class<?>, Integer>();
+    private ByteArrayOutputStream javaBytes;
+    private ObjectOutputStream javaStream;
+
+    void register(Object value) {
+      handles.put(value, handles.size());
+    }
+
+    ObjectOutputStream javaStream() throws IOException {
+      if (javaStream == null) {
+        javaBytes = new ByteArrayOutputStream();
+        javaStream = new ObjectOutputStream(javaBytes);
+      }
+      return javaStream;
+    }
+
+    void writeClass(Class<?> type) {
+      final Integer index = classes.get(type);
+      if (index != null) {
+        writeVarInt(index + 1);
+      } else {
+        writeVarInt(0);
+        writeString(type.getName());
+        classes.put(type, classes.size());
+      }
+    }
+
+    void writeByte(int value) {
+      ensureCapacity(1);
+      buffer[position++] = (byte) value;
+    }
+
+    void writeVarInt(int value) {
+      ensureCapacity(5);
+      while ((value & ~0x7F) != 0) {
+        buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+    }
+
+    // zigzag encoded, small negative numbers stay short
+    void writeVarLong(long value) {
+      ensureCapacity(10);
+      long zigzag = (value << 1) ^ (value >> 63);
+      while ((zigzag & ~0x7FL) != 0) {
+        buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+        zigzag >>>= 7;
+      }
+      buffer[position++] = (byte) zigzag;
+    }
+
+    void writeLong(long value) {
+      ensureCapacity(8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        buffer[position++] = (byte) (value >>> shift);
+      }
+    }
+
+    void writeBytes(byte[] bytes) {
+      writeVarInt(bytes.length);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, position, bytes.length);
+      position += bytes.length;
+    }
+
+    void writeString(String value) {
+      final int length = value.length();
+      writeVarInt(length);
+      ensureCapacity(length * 3);
+      for (int i = 0; i < length; i++) {
+        final char c = value.charAt(i);
+        if (c < 0x80) {
+          buffer[position++] = (byte) c;
+        } else if (c < 0x4000) {
+          buffer[position++] = (byte) ((c & 0x7F) | 0x80);
+          buffer[position++] = (byte) (c >>> 7);
+        } else {
+          buffer[position++] = (byte) ((c & 0x7F) | 0x80);
+          buffer[position++] = (byte) (((c >>> 7) & 0x7F) | 0x80);
+          buffer[position++] = (byte) (c >>> 14);
+        }
+      }
+    }
+
+    byte[] toByteArray() throws IOException {
+      final int binaryLength = position;
+      position = 1;
+      writeLong(binaryLength);
+      position = binaryLength;
+      if (javaStream == null) {
+        final byte[] bytes = new byte[binaryLength];
+        System.arraycopy(buffer, 0, bytes, 0, binaryLength);
+        return bytes;
+      }
+      javaStream.flush();
+      final byte[] java = javaBytes.toByteArray();
+      final byte[] bytes = new byte[binaryLength + java.length];
+      System.arraycopy(buffer, 0, bytes, 0, binaryLength);
+      System.arraycopy(java, 0, bytes, binaryLength, java.length);
+      return bytes;
+    }
+
+    void reset() {
+      position = 0;
+      inUse = false;
+      handles.clear();
+      classes.clear();
+      beanClasses.clear();
+      javaBytes = null;
+      javaStream = null;
+      if (buffer.length > MAX_POOLED_BUFFER) {
+        buffer = new byte[256];
+      }
+    }
+
+    private void ensureCapacity(int bytes) {
+      if (position + bytes > buffer.length) {
+        final byte[] grown = new byte[Math.max(buffer.length * 2, position + bytes)];
+        System.arraycopy(buffer, 0, grown, 0, position);
+        buffer = grown;
+      }
+    }
+  }
+
+  private static final class Input {
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private final List<Object> handles = new ArrayList<Object>();
+    private final List<Class<?>> classes = new ArrayList<Class<?>>();
+    private final List<BeanSchema> beanSchemas = new ArrayList<BeanSchema>();
+    private ObjectInputStream javaStream;
+
+    Input(byte[] bytes) {
+      this.buffer = bytes;
+      this.limit = bytes.length;
+    }
+
+    void limit(int binaryLength) {
+      if (binaryLength < position || binaryLength > buffer.length) {
+        throw new CacheException("Corrupted serialized data");
+      }
+      limit = binaryLength;
+    }
+
+    void register(Object value) {
+      handles.add(value);
+    }
+
+    int reserve() {
+      handles.add(null);
+      return handles.size() - 1;
+    }
+
+    ObjectInputStream javaStream() throws IOException {
+      if (javaStream == null) {
+        javaStream = new SerializedCache.CustomObjectInputStream(new ByteArrayInputStream(buffer, limit, buffer.length - limit));
+      }
+      return javaStream;
+    }
+
+    Class<?> readClass() throws ClassNotFoundException {
+      final int index = readVarInt();
+      if (index > 0) {
+        return classes.get(index - 1);
+      }
+      final Class<?> type = Resources.classForName(readString());
+      classes.add(type);
+      return type;
+    }
+
+    byte readByte() {
+      if (position >= limit) {
+        throw new CacheException("Unexpected end of serialized data");
+      }
+      return buffer[position++];
+    }
+
+    int readVarInt() {
+      int value = 0;
+      for (int shift = 0; ; shift += 7) {
+        final byte b = readByte();
+        value |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+    }
+
+    long readVarLong() {
+      long zigzag = 0;
+      for (int shift = 0; ; shift += 7) {
+        final byte b = readByte();
+        zigzag |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+      }
+    }
+
+    long readLong() {
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+        value = (value << 8) | (readByte() & 0xFF);
+      }
+      return value;
+    }
+
+    byte[] readBytes() {
+      final int length = readVarInt();
+      if (length > limit - position) {
+        throw new CacheException("Unexpected end of serialized data");
+      }
+      final byte[] bytes = new byte[length];
+      System.arraycopy(buffer, position, bytes, 0, length);
+      position += length;
+      return bytes;
+    }
+
+    String readString() {
+      final int length = readVarInt();
+      final char[] chars = new char[length];
+      for (int i = 0; i < length; i++) {
+        int c = readByte();
+        if (c < 0) {
+          c = (c & 0x7F) | (readByte() << 7);
+          if (c < 0) {
+            c = (c & 0x3FFF) | (readByte() << 14);
+          }
+        }
+        chars[i] = (char) c;
+      }
+      return new String(chars);
+    }
+  }
+
+}
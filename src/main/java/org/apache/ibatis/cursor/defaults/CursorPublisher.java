@@ -0,0 +1,245 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor.defaults;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Reactive Streams {@link Publisher} of the rows of a select, built on {@link SqlSession#selectCursor}.
+ * <p>
+ * The statement is executed on the first {@code request(n)} and rows are only read from the result set as
+ * they are requested, on the thread calling {@code request}. The fetch size of the result set follows the
+ * outstanding demand (up to {@link #MAX_FETCH_SIZE} rows). Cancelling the subscription cancels a fetch in
+ * progress and closes the cursor.
+ * <p>
+ * A publisher accepts a single subscriber, and the session must not run other statements until the
+ * subscription completes or is cancelled.
+ */
+public class CursorPublisher<T> implements Publisher<T> {
+
+    public static final int MAX_FETCH_SIZE = 10000;
+
+    private final SqlSession sqlSession;
+    private final String statement;
+    private final Object parameter;
+    private final RowBounds rowBounds;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    public CursorPublisher(SqlSession sqlSession, String statement, Object parameter, RowBounds rowBounds) {
+        this.sqlSession = sqlSession;
+        this.statement = statement;
+        this.parameter = parameter;
+        this.rowBounds = rowBounds;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber is null");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("A CursorPublisher only accepts one subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new CursorSubscription(subscriber));
+    }
+
+    /**
+     * Returns the session running the select, called on the first request.
+     */
+    protected SqlSession openSession() {
+        return sqlSession;
+    }
+
+    /**
+     * Releases the session returned by {@link #openSession()} once the cursor is closed.
+     */
+    protected void closeSession(SqlSession session) {
+        // the session belongs to the caller
+    }
+
+    /**
+     * Converts a failure of the select before it is signalled to the subscriber, called after the session is released.
+     */
+    protected Throwable translateException(Throwable t) {
+        return t;
+    }
+
+    private class CursorSubscription implements Subscription {
+
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        // 非法 request 的错误，由 drain 循环发出，保证与 onNext 串行
+        private volatile Throwable error;
+        private volatile Thread drainingThread;
+
+        // only accessed by the thread running drain()
+        private SqlSession session;
+        private volatile Cursor<T> cursor;
+        private Iterator<T> iterator;
+        private int fetchSize;
+
+        CursorSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                if (!cancelled && error == null) {
+                    error = new IllegalArgumentException("Rule 3.9: request must be positive but was " + n);
+                    drain();
+                }
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!requested.compareAndSet(current, next));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            final Cursor<T> current = cursor;
+            final Thread thread = drainingThread;
+            if (current instanceof DefaultCursor && thread != null && thread != Thread.currentThread()) {
+                // 其他线程可能正阻塞在数据库读取中；没有读取时不能取消，部分驱动会中止该连接上的下一条语句
+                ((DefaultCursor<T>) current).cancel();
+            }
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            drainingThread = Thread.currentThread();
+            try {
+                drainLoop();
+            } finally {
+                drainingThread = null;
+            }
+        }
+
+        private void drainLoop() {
+            int missed = 1;
+            do {
+                final long demand = requested.get();
+                long emitted = 0;
+                try {
+                    if (terminated()) {
+                        return;
+                    }
+                    if (cursor == null) {
+                        session = openSession();
+                        cursor = session.selectCursor(statement, parameter, rowBounds);
+                        iterator = cursor.iterator();
+                    }
+                    adjustFetchSize(demand);
+                    while (emitted != demand) {
+                        if (terminated()) {
+                            return;
+                        }
+                        if (!iterator.hasNext()) {
+                            release();
+                            subscriber.onComplete();
+                            return;
+                        }
+                        subscriber.onNext(iterator.next());
+                        emitted++;
+                    }
+                } catch (Throwable t) {
+                    final boolean wasCancelled = cancelled;
+                    release();
+                    if (!wasCancelled) {
+                        subscriber.onError(translateException(t));
+                    }
+                    return;
+                }
+                if (demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private boolean terminated() {
+            if (cancelled) {
+                release();
+                return true;
+            }
+            final Throwable t = error;
+            if (t != null) {
+                release();
+                subscriber.onError(t);
+                return true;
+            }
+            return false;
+        }
+
+        private void adjustFetchSize(long demand) {
+            if (demand == Long.MAX_VALUE || !(cursor instanceof DefaultCursor)) {
+                return;
+            }
+            final int rows = (int) Math.min(Math.max(demand, 1), MAX_FETCH_SIZE);
+            if (rows != fetchSize) {
+                ((DefaultCursor<T>) cursor).setFetchSize(rows);
+                fetchSize = rows;
+            }
+        }
+
+        // leaves wip above zero so no further drain runs
+        private void release() {
+            cancelled = true;
+            if (cursor != null) {
+                try {
+                    cursor.close();
+                } catch (Exception e) {
+                    // ignore
+                }
+            }
+            if (session != null) {
+                closeSession(session);
+                session = null;
+            }
+        }
+    }
+}
@@ -123,6 +123,37 @@ public class DefaultCursor<T> implements Cursor<T> {
         }
     }
 
+    /**
+     * Hints the driver to fetch the given number of rows in the next round trips.
+     */
+    void setFetchSize(int rows) {
+        if (isClosed()) {
+            return;
+        }
+        try {
+            rsw.getResultSet().setFetchSize(rows);
+        } catch (SQLException e) {
+            // ignore, fetch size is only a hint
+        }
+    }
+
+    /**
+     * Cancels the statement from another thread, interrupting a fetch in progress.
+     */
+    void cancel() {
+        if (isClosed()) {
+            return;
+        }
+        try {
+            Statement statement = rsw.getResultSet().getStatement();
+            if (statement != null) {
+                statement.cancel();
+            }
+        } catch (SQLException e) {
+            // ignore
+        }
+    }
+
     protected T fetchNextUsingRowBound() {
         T result = fetchNextObjectFromDatabase();
         while (result != null && indexWithRowBound < rowBounds.getOffset()) {
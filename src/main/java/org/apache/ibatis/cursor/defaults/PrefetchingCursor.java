@@ -0,0 +1,251 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor.defaults;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.session.RowBounds;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cursor that fetches and maps rows ahead of the consumer.
+ * <p>
+ * The rows of the wrapped cursor are read on a thread of the given {@link Executor} into a bounded queue,
+ * so the database round trips overlap with the processing of earlier rows. The reader blocks when the
+ * queue is full. A failure of the reader is thrown to the consumer once the rows read before it are consumed.
+ * <p>
+ * The connection is used by the reader until the cursor is consumed or closed, so the owning session
+ * must not run other statements meanwhile. The executor must run the reader on another thread.
+ * Like {@link DefaultCursor}, this implementation is not thread safe on the consumer side.
+ */
+public class PrefetchingCursor<T> implements Cursor<T> {
+
+    /**
+     * Runs each reader on a new daemon thread.
+     */
+    public static final Executor THREAD_PER_CURSOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            Thread thread = new Thread(command, "mybatis-cursor-prefetch");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    };
+
+    private static final Object END = new Object();
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final Cursor<T> delegate;
+    private final Executor executor;
+    private final RowBounds rowBounds;
+    private final BlockingQueue<Object> queue;
+    private final CountDownLatch readerDone = new CountDownLatch(1);
+    private final PrefetchingIterator iterator = new PrefetchingIterator();
+
+    private volatile boolean closed;
+    private boolean started;
+    private boolean consumed;
+    private boolean iteratorRetrieved;
+
+    public PrefetchingCursor(Cursor<T> delegate, Executor executor, int prefetchSize, RowBounds rowBounds) {
+        if (prefetchSize < 1) {
+            throw new IllegalArgumentException("prefetchSize must be greater than zero but was " + prefetchSize);
+        }
+        this.delegate = delegate;
+        this.executor = executor;
+        this.rowBounds = rowBounds;
+        this.queue = new ArrayBlockingQueue<Object>(prefetchSize);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return started && !closed && !consumed;
+    }
+
+    @Override
+    public boolean isConsumed() {
+        return consumed;
+    }
+
+    @Override
+    public int getCurrentIndex() {
+        return rowBounds.getOffset() + iterator.iteratorIndex;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        if (iteratorRetrieved) {
+            throw new IllegalStateException("Cannot open more than one iterator on a Cursor");
+        }
+        iteratorRetrieved = true;
+        return iterator;
+    }
+
+    /**
+     * Stops the reader, waiting for the row it is reading, and closes the wrapped cursor.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (started) {
+            // 清空队列，唤醒等待空位的读取线程
+            queue.clear();
+            try {
+                readerDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            delegate.close();
+        } catch (Exception e) {
+            // ignore
+        }
+    }
+
+    private void start() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                read();
+            }
+        });
+        started = true;
+    }
+
+    private void read() {
+        try {
+            final Iterator<T> rows = delegate.iterator();
+            while (!closed && rows.hasNext()) {
+                enqueue(rows.next());
+            }
+            enqueue(END);
+        } catch (Throwable t) {
+            // 异常必须送达消费者：与行一样等待空位，先读取的行不能丢弃
+            enqueueFailure(new Failure(t));
+        } finally {
+            readerDone.countDown();
+        }
+    }
+
+    private void enqueue(Object element) throws InterruptedException {
+        while (!closed && !queue.offer(element, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            // 队列已满，等待消费者取走数据或关闭游标
+        }
+    }
+
+    private void enqueueFailure(Failure failure) {
+        boolean interrupted = false;
+        while (!closed) {
+            try {
+                if (queue.offer(failure, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                // 中断可能正是失败的原因，仍需送达
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T take() {
+        if (closed || consumed) {
+            return null;
+        }
+        if (!started) {
+            start();
+        }
+        final Object element;
+        try {
+            element = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecutorException("Interrupted while waiting for the next cursor row.", e);
+        }
+        if (element == END) {
+            consumed = true;
+            return null;
+        }
+        if (element instanceof Failure) {
+            consumed = true;
+            final Throwable cause = ((Failure) element).cause;
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ExecutorException("Error fetching cursor rows. Cause: " + cause, cause);
+        }
+        return (T) element;
+    }
+
+    private static class Failure {
+        private final Throwable cause;
+
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    private class PrefetchingIterator implements Iterator<T> {
+
+        T object;
+
+        int iteratorIndex = -1;
+
+        @Override
+        public boolean hasNext() {
+            if (object == null) {
+                object = take();
+            }
+            return object != null;
+        }
+
+        @Override
+        public T next() {
+            T next = object;
+            if (next == null) {
+                next = take();
+            }
+            if (next != null) {
+                object = null;
+                iteratorIndex++;
+                return next;
+            }
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove element from Cursor");
+        }
+    }
+}
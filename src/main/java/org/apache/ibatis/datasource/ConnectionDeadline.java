@@ -0,0 +1,63 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time by which the current thread needs a connection, bounding how long a pooled data source may keep it
+ * waiting. Executors set it from the remaining transaction timeout and the default statement timeout before
+ * getting a connection; callers may set an earlier one, the earliest deadline applies.
+ */
+public final class ConnectionDeadline {
+
+  private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<Long>();
+
+  private ConnectionDeadline() {
+    // Prevent Instantiation of Static Class
+  }
+
+  /**
+   * Sets the deadline of the current thread, unless it has an earlier one.
+   *
+   * @return the previous deadline, to be {@link #restore(Long) restored} once the connection is obtained
+   */
+  public static Long set(long timeout, TimeUnit unit) {
+    final Long previous = DEADLINE.get();
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    if (previous == null || deadline - previous < 0) {
+      DEADLINE.set(deadline);
+    }
+    return previous;
+  }
+
+  public static void restore(Long previous) {
+    if (previous == null) {
+      DEADLINE.remove();
+    } else {
+      DEADLINE.set(previous);
+    }
+  }
+
+  /**
+   * Returns the nanoseconds left until the deadline of the current thread, {@link Long#MAX_VALUE} if it has none.
+   */
+  public static long remainingNanos() {
+    final Long deadline = DEADLINE.get();
+    return deadline == null ? Long.MAX_VALUE : deadline - System.nanoTime();
+  }
+
+}
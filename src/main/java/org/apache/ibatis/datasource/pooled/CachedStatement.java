@@ -0,0 +1,192 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * A statement of the {@link StatementCache}, returned to the cache instead of being closed.
+ * <p>
+ * Before it is returned, its result sets are closed, its parameters and batch cleared, and the properties set
+ * by its user restored. A statement whose cursor name, escape processing, poolable or close on completion was
+ * set is closed instead.
+ */
+final class CachedStatement implements InvocationHandler {
+
+  private static final String CLOSE = "close";
+  private static final String IS_CLOSED = "isClosed";
+  private static final String ADD_BATCH = "addBatch";
+  private static final String EXECUTE = "execute";
+  private static final Class<?>[] IFACES = new Class<?>[] { PreparedStatement.class };
+
+  // 可恢复的属性：setter名称对应getter
+  private static final Map<String, Method> RESETTABLE = new HashMap<String, Method>();
+  private static final Set<String> NOT_RESETTABLE = new HashSet<String>(Arrays.asList(
+      "setCursorName", "setEscapeProcessing", "setPoolable", "closeOnCompletion"));
+
+  static {
+    try {
+      RESETTABLE.put("setQueryTimeout", Statement.class.getMethod("getQueryTimeout"));
+      RESETTABLE.put("setFetchSize", Statement.class.getMethod("getFetchSize"));
+      RESETTABLE.put("setFetchDirection", Statement.class.getMethod("getFetchDirection"));
+      RESETTABLE.put("setMaxRows", Statement.class.getMethod("getMaxRows"));
+      RESETTABLE.put("setLargeMaxRows", Statement.class.getMethod("getLargeMaxRows"));
+      RESETTABLE.put("setMaxFieldSize", Statement.class.getMethod("getMaxFieldSize"));
+    } catch (NoSuchMethodException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final StatementCache cache;
+  private final StatementCache.StatementKey key;
+  private final PreparedStatement statement;
+  private final PreparedStatement proxyStatement;
+  private volatile boolean closed;
+  private boolean reusable = true;
+  private boolean batched;
+  private Map<Method, Object> originalValues;
+  private List<ResultSet> resultSets;
+
+  CachedStatement(StatementCache cache, StatementCache.StatementKey key, PreparedStatement statement) {
+    this.cache = cache;
+    this.key = key;
+    this.statement = statement;
+    this.proxyStatement = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), IFACES, this);
+  }
+
+  PreparedStatement getProxyStatement() {
+    return proxyStatement;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    String methodName = method.getName();
+    if (Object.class.equals(method.getDeclaringClass())) {
+      if ("equals".equals(methodName)) {
+        return proxy == args[0];
+      } else if ("hashCode".equals(methodName)) {
+        return System.identityHashCode(proxy);
+      }
+      return statement.toString();
+    }
+    if (CLOSE.equals(methodName)) {
+      close();
+      return null;
+    } else if (IS_CLOSED.equals(methodName)) {
+      return closed || statement.isClosed();
+    }
+    if (closed) {
+      throw new SQLException("Error accessing PreparedStatement. Statement is closed.");
+    }
+    try {
+      beforeInvoke(method, methodName);
+      Object result = method.invoke(statement, args);
+      if (result instanceof ResultSet) {
+        if (resultSets == null) {
+          resultSets = new ArrayList<ResultSet>();
+        }
+        resultSets.add((ResultSet) result);
+      }
+      return result;
+    } catch (Throwable t) {
+      throw ExceptionUtil.unwrapThrowable(t);
+    }
+  }
+
+  private void beforeInvoke(Method method, String methodName) throws Exception {
+    Method getter = RESETTABLE.get(methodName);
+    if (getter != null) {
+      if (originalValues == null) {
+        originalValues = new HashMap<Method, Object>();
+      }
+      if (!originalValues.containsKey(method)) {
+        originalValues.put(method, getter.invoke(statement));
+      }
+    } else if (ADD_BATCH.equals(methodName)) {
+      batched = true;
+    } else if (methodName.startsWith(EXECUTE)) {
+      // 重新执行时驱动会关闭上次的结果集，只保留本次执行的结果集
+      if (resultSets != null) {
+        resultSets.clear();
+      }
+    } else if (NOT_RESETTABLE.contains(methodName)) {
+      reusable = false;
+    }
+  }
+
+  private void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (reusable && reset()) {
+      cache.release(key, statement);
+    } else {
+      closeQuietly(statement);
+    }
+  }
+
+  private boolean reset() {
+    try {
+      if (statement.isClosed()) {
+        return false;
+      }
+      if (resultSets != null) {
+        for (ResultSet resultSet : resultSets) {
+          resultSet.close();
+        }
+      }
+      if (batched) {
+        statement.clearBatch();
+      }
+      statement.clearParameters();
+      if (originalValues != null) {
+        for (Map.Entry<Method, Object> originalValue : originalValues.entrySet()) {
+          originalValue.getKey().invoke(statement, originalValue.getValue());
+        }
+      }
+      statement.clearWarnings();
+      return true;
+    } catch (Exception e) {
+      // 无法恢复的语句直接关闭
+      return false;
+    }
+  }
+
+  static void closeQuietly(Statement statement) {
+    try {
+      statement.close();
+    } catch (SQLException e) {
+      // ignore
+    }
+  }
+
+}
@@ -0,0 +1,225 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The entries of a pool, checked out without lock.
+ * <p>
+ * A thread first looks for an idle entry among those it returned last, likely still idle when the threads
+ * outnumber the connections only slightly, then among all entries. An entry is checked out by the thread
+ * setting its state from idle to in use.
+ * <p>
+ * Waiting threads queue in arrival order. A returned entry is handed off directly to the longest waiting thread,
+ * which alone is woken up, and a thread keeps its place in the queue until it leaves it.
+ */
+final class ConnectionBag {
+
+  private static final int MAX_THREAD_ENTRIES = 16;
+
+  private final CopyOnWriteArrayList<PoolEntry> entries = new CopyOnWriteArrayList<PoolEntry>();
+  private final ThreadLocal<List<WeakReference<PoolEntry>>> threadEntries = new ThreadLocal<List<WeakReference<PoolEntry>>>() {
+    @Override
+    protected List<WeakReference<PoolEntry>> initialValue() {
+      return new ArrayList<WeakReference<PoolEntry>>(MAX_THREAD_ENTRIES);
+    }
+  };
+  private final ConcurrentLinkedQueue<Waiter> waiterQueue = new ConcurrentLinkedQueue<Waiter>();
+  private final AtomicInteger waiters = new AtomicInteger();
+
+  /**
+   * Checks out an idle entry, null if there is none.
+   */
+  PoolEntry borrow() {
+    final List<WeakReference<PoolEntry>> list = threadEntries.get();
+    for (int i = list.size() - 1; i >= 0; i--) {
+      final PoolEntry entry = list.remove(i).get();
+      if (entry != null && entry.compareAndSetState(PoolEntry.STATE_IDLE, PoolEntry.STATE_IN_USE)) {
+        return entry;
+      }
+    }
+    return borrowShared();
+  }
+
+  /**
+   * Queues the current thread to wait for an entry, see {@link #await(Waiter, long)}.
+   */
+  Waiter enqueue() {
+    final Waiter waiter = new Waiter();
+    waiters.incrementAndGet();
+    waiterQueue.add(waiter);
+    return waiter;
+  }
+
+  /**
+   * Waits for an entry handed off to a queued thread, or else idle. The thread leaves the queue when an entry
+   * is returned, and keeps its place otherwise.
+   *
+   * @return null if none was returned in time
+   */
+  PoolEntry await(Waiter waiter, long nanos) throws InterruptedException {
+    // 入队之后再检查一次，避免错过入队前归还的连接
+    final PoolEntry idle = borrowShared();
+    if (idle != null) {
+      cancel(waiter);
+      return idle;
+    }
+    final long deadline = System.nanoTime() + nanos;
+    while (true) {
+      final PoolEntry entry = waiter.getEntry();
+      if (entry != null) {
+        return entry;
+      }
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return null;
+      }
+      LockSupport.parkNanos(this, remaining);
+      if (Thread.interrupted()) {
+        cancel(waiter);
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  /**
+   * Removes a thread from the queue, returning the entry handed off to it meanwhile if any.
+   */
+  void cancel(Waiter waiter) {
+    if (waiter.cancel()) {
+      waiterQueue.remove(waiter);
+      waiters.decrementAndGet();
+    } else {
+      final PoolEntry entry = waiter.getEntry();
+      if (entry != null) {
+        requite(entry);
+      }
+    }
+  }
+
+  /**
+   * Returns an entry checked out, false if it was removed meanwhile.
+   */
+  boolean requite(PoolEntry entry) {
+    if (!entry.compareAndSetState(PoolEntry.STATE_IN_USE, PoolEntry.STATE_IDLE)) {
+      return false;
+    }
+    // 先置为空闲再检查队列：此后入队的线程会在入队后找到该连接
+    while (!waiterQueue.isEmpty()) {
+      if (!entry.compareAndSetState(PoolEntry.STATE_IDLE, PoolEntry.STATE_IN_USE)) {
+        // checked out or removed by another thread
+        return true;
+      }
+      final Waiter waiter = waiterQueue.poll();
+      if (waiter != null && waiter.fulfill(entry)) {
+        waiters.decrementAndGet();
+        return true;
+      }
+      if (!entry.compareAndSetState(PoolEntry.STATE_IN_USE, PoolEntry.STATE_IDLE)) {
+        return true;
+      }
+    }
+    final List<WeakReference<PoolEntry>> list = threadEntries.get();
+    if (list.size() < MAX_THREAD_ENTRIES) {
+      list.add(new WeakReference<PoolEntry>(entry));
+    }
+    return true;
+  }
+
+  /**
+   * Adds an entry checked out by the caller.
+   */
+  void add(PoolEntry entry) {
+    entries.add(entry);
+  }
+
+  /**
+   * Removes an entry whatever its state, false if it was removed already.
+   */
+  boolean remove(PoolEntry entry) {
+    entry.setState(PoolEntry.STATE_REMOVED);
+    return entries.remove(entry);
+  }
+
+  List<PoolEntry> values() {
+    return new ArrayList<PoolEntry>(entries);
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  int count(int state) {
+    int count = 0;
+    for (PoolEntry entry : entries) {
+      if (entry.getState() == state) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  int getWaiterCount() {
+    return waiters.get();
+  }
+
+  /**
+   * A thread waiting for an entry.
+   */
+  static final class Waiter {
+
+    private static final Object CANCELLED = new Object();
+
+    private final Thread thread = Thread.currentThread();
+    private final AtomicReference<Object> entry = new AtomicReference<Object>();
+
+    boolean fulfill(PoolEntry handoff) {
+      if (entry.compareAndSet(null, handoff)) {
+        LockSupport.unpark(thread);
+        return true;
+      }
+      return false;
+    }
+
+    boolean cancel() {
+      return entry.compareAndSet(null, CANCELLED);
+    }
+
+    PoolEntry getEntry() {
+      final Object value = entry.get();
+      return value instanceof PoolEntry ? (PoolEntry) value : null;
+    }
+
+  }
+
+  private PoolEntry borrowShared() {
+    for (PoolEntry entry : entries) {
+      if (entry.compareAndSetState(PoolEntry.STATE_IDLE, PoolEntry.STATE_IN_USE)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+}
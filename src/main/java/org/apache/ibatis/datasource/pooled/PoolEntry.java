@@ -0,0 +1,115 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A physical connection of the pool. Unlike {@link PooledConnection}, created for each checkout, it lives as long
+ * as the physical connection. Its state is changed by compare and set, so that it is checked out by one thread only.
+ */
+final class PoolEntry {
+
+  static final int STATE_REMOVED = -1;
+  static final int STATE_IDLE = 0;
+  static final int STATE_IN_USE = 1;
+
+  // 最大生命周期随机缩短至多1/40，避免同时创建的连接同时到期
+  private static final double MAX_LIFETIME_JITTER = 0.025;
+
+  private final Connection realConnection;
+  private final StatementCache statementCache;
+  private final AtomicInteger state = new AtomicInteger(STATE_IN_USE);
+  // 当前借出的连接，归还或被收回时置空，旧的PooledConnection因此不能重复归还
+  private final AtomicReference<PooledConnection> borrower = new AtomicReference<PooledConnection>();
+  private final long createdTimestamp;
+  private final double lifetimeJitter = Math.random() * MAX_LIFETIME_JITTER;
+  private volatile long lastUsedTimestamp;
+
+  /**
+   * @param statementCache null if prepared statements are not cached
+   */
+  PoolEntry(Connection realConnection, StatementCache statementCache) {
+    this.realConnection = realConnection;
+    this.statementCache = statementCache;
+    this.createdTimestamp = System.currentTimeMillis();
+    this.lastUsedTimestamp = createdTimestamp;
+  }
+
+  Connection getRealConnection() {
+    return realConnection;
+  }
+
+  StatementCache getStatementCache() {
+    return statementCache;
+  }
+
+  int getState() {
+    return state.get();
+  }
+
+  boolean compareAndSetState(int expect, int update) {
+    return state.compareAndSet(expect, update);
+  }
+
+  void setState(int update) {
+    state.set(update);
+  }
+
+  PooledConnection getBorrower() {
+    return borrower.get();
+  }
+
+  void setBorrower(PooledConnection conn) {
+    borrower.set(conn);
+  }
+
+  /**
+   * Releases the entry from a borrower, false if it was returned, claimed or closed already.
+   */
+  boolean release(PooledConnection conn) {
+    return borrower.compareAndSet(conn, null);
+  }
+
+  PooledConnection releaseAny() {
+    return borrower.getAndSet(null);
+  }
+
+  long getCreatedTimestamp() {
+    return createdTimestamp;
+  }
+
+  /**
+   * Tells whether the connection lived longer than the maximum lifetime, shortened by a random variation of
+   * the entry.
+   *
+   * @param maximumLifetime in milliseconds, unlimited if not positive
+   */
+  boolean isExpired(long maximumLifetime, long now) {
+    return maximumLifetime > 0 && now - createdTimestamp >= maximumLifetime - (long) (maximumLifetime * lifetimeJitter);
+  }
+
+  long getLastUsedTimestamp() {
+    return lastUsedTimestamp;
+  }
+
+  void setLastUsedTimestamp(long lastUsedTimestamp) {
+    this.lastUsedTimestamp = lastUsedTimestamp;
+  }
+
+}
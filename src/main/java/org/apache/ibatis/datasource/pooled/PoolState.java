@@ -15,8 +15,10 @@
  */
 package org.apache.ibatis.datasource.pooled;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ibatis.cache.metrics.LatencyHistogram;
 
 /**
  * @author Clinton Begin
@@ -25,65 +27,111 @@ public class PoolState {
 
   protected PooledDataSource dataSource;
 
-  protected final List<PooledConnection> idleConnections = new ArrayList<PooledConnection>();
-  protected final List<PooledConnection> activeConnections = new ArrayList<PooledConnection>();
-  protected long requestCount = 0;
-  protected long accumulatedRequestTime = 0;
-  protected long accumulatedCheckoutTime = 0;
-  protected long claimedOverdueConnectionCount = 0;
-  protected long accumulatedCheckoutTimeOfOverdueConnections = 0;
-  protected long accumulatedWaitTime = 0;
-  protected long hadToWaitCount = 0;
-  protected long badConnectionCount = 0;
+  protected final LongAdder requestCount = new LongAdder();
+  protected final LongAdder accumulatedRequestTime = new LongAdder();
+  protected final LongAdder accumulatedCheckoutTime = new LongAdder();
+  protected final LongAdder claimedOverdueConnectionCount = new LongAdder();
+  protected final LongAdder accumulatedCheckoutTimeOfOverdueConnections = new LongAdder();
+  protected final LongAdder accumulatedWaitTime = new LongAdder();
+  protected final LongAdder hadToWaitCount = new LongAdder();
+  protected final LongAdder badConnectionCount = new LongAdder();
+  protected final LongAdder expiredConnectionCount = new LongAdder();
+  protected final LongAdder evictedConnectionCount = new LongAdder();
+  protected final LongAdder statementCacheHitCount = new LongAdder();
+  protected final LongAdder statementCacheMissCount = new LongAdder();
+  protected final LongAdder statementCacheEvictionCount = new LongAdder();
+  protected final LatencyHistogram waitTime = new LatencyHistogram();
 
   public PoolState(PooledDataSource dataSource) {
     this.dataSource = dataSource;
   }
 
-  public synchronized long getRequestCount() {
-    return requestCount;
+  public long getRequestCount() {
+    return requestCount.sum();
+  }
+
+  public long getAverageRequestTime() {
+    final long requests = getRequestCount();
+    return requests == 0 ? 0 : accumulatedRequestTime.sum() / requests;
+  }
+
+  public long getAverageWaitTime() {
+    final long waits = getHadToWaitCount();
+    return waits == 0 ? 0 : accumulatedWaitTime.sum() / waits;
+  }
+
+  /**
+   * Time waited by the requests that had to wait, from their first wait until they got a connection.
+   */
+  public LatencyHistogram getWaitTimeHistogram() {
+    return waitTime;
+  }
+
+  public long getHadToWaitCount() {
+    return hadToWaitCount.sum();
   }
 
-  public synchronized long getAverageRequestTime() {
-    return requestCount == 0 ? 0 : accumulatedRequestTime / requestCount;
+  public long getBadConnectionCount() {
+    return badConnectionCount.sum();
   }
 
-  public synchronized long getAverageWaitTime() {
-    return hadToWaitCount == 0 ? 0 : accumulatedWaitTime / hadToWaitCount;
+  /**
+   * Number of connections closed because they exceeded the maximum lifetime.
+   */
+  public long getExpiredConnectionCount() {
+    return expiredConnectionCount.sum();
+  }
+
+  /**
+   * Number of idle connections closed by the housekeeping because they exceeded the maximum number of idle connections.
+   */
+  public long getEvictedConnectionCount() {
+    return evictedConnectionCount.sum();
+  }
 
+  /**
+   * Number of prepared statements reused from the cache of their connection.
+   */
+  public long getStatementCacheHitCount() {
+    return statementCacheHitCount.sum();
   }
 
-  public synchronized long getHadToWaitCount() {
-    return hadToWaitCount;
+  public long getStatementCacheMissCount() {
+    return statementCacheMissCount.sum();
   }
 
-  public synchronized long getBadConnectionCount() {
-    return badConnectionCount;
+  /**
+   * Number of cached prepared statements closed because the cache of their connection was full.
+   */
+  public long getStatementCacheEvictionCount() {
+    return statementCacheEvictionCount.sum();
   }
 
-  public synchronized long getClaimedOverdueConnectionCount() {
-    return claimedOverdueConnectionCount;
+  public long getClaimedOverdueConnectionCount() {
+    return claimedOverdueConnectionCount.sum();
   }
 
-  public synchronized long getAverageOverdueCheckoutTime() {
-    return claimedOverdueConnectionCount == 0 ? 0 : accumulatedCheckoutTimeOfOverdueConnections / claimedOverdueConnectionCount;
+  public long getAverageOverdueCheckoutTime() {
+    final long claimed = getClaimedOverdueConnectionCount();
+    return claimed == 0 ? 0 : accumulatedCheckoutTimeOfOverdueConnections.sum() / claimed;
   }
 
-  public synchronized long getAverageCheckoutTime() {
-    return requestCount == 0 ? 0 : accumulatedCheckoutTime / requestCount;
+  public long getAverageCheckoutTime() {
+    final long requests = getRequestCount();
+    return requests == 0 ? 0 : accumulatedCheckoutTime.sum() / requests;
   }
 
 
-  public synchronized int getIdleConnectionCount() {
-    return idleConnections.size();
+  public int getIdleConnectionCount() {
+    return dataSource.getConnectionBag().count(PoolEntry.STATE_IDLE);
   }
 
-  public synchronized int getActiveConnectionCount() {
-    return activeConnections.size();
+  public int getActiveConnectionCount() {
+    return dataSource.getConnectionBag().count(PoolEntry.STATE_IN_USE);
   }
 
   @Override
-  public synchronized String toString() {
+  public String toString() {
     StringBuilder builder = new StringBuilder();
     builder.append("\n===CONFINGURATION==============================================");
     builder.append("\n jdbcDriver                     ").append(dataSource.getDriver());
@@ -92,11 +140,15 @@ public class PoolState {
     builder.append("\n jdbcPassword                   ").append((dataSource.getPassword() == null ? "NULL" : "************"));
     builder.append("\n poolMaxActiveConnections       ").append(dataSource.poolMaximumActiveConnections);
     builder.append("\n poolMaxIdleConnections         ").append(dataSource.poolMaximumIdleConnections);
+    builder.append("\n poolMinIdleConnections         ").append(dataSource.poolMinimumIdleConnections);
     builder.append("\n poolMaxCheckoutTime            ").append(dataSource.poolMaximumCheckoutTime);
     builder.append("\n poolTimeToWait                 ").append(dataSource.poolTimeToWait);
     builder.append("\n poolPingEnabled                ").append(dataSource.poolPingEnabled);
     builder.append("\n poolPingQuery                  ").append(dataSource.poolPingQuery);
     builder.append("\n poolPingConnectionsNotUsedFor  ").append(dataSource.poolPingConnectionsNotUsedFor);
+    builder.append("\n poolHousekeepingInterval       ").append(dataSource.poolHousekeepingInterval);
+    builder.append("\n poolMaxLifetime                ").append(dataSource.poolMaximumLifetime);
+    builder.append("\n poolStatementCacheSize         ").append(dataSource.poolPreparedStatementCacheSize);
     builder.append("\n ---STATUS-----------------------------------------------------");
     builder.append("\n activeConnections              ").append(getActiveConnectionCount());
     builder.append("\n idleConnections                ").append(getIdleConnectionCount());
@@ -107,7 +159,14 @@ public class PoolState {
     builder.append("\n averageOverdueCheckoutTime     ").append(getAverageOverdueCheckoutTime());
     builder.append("\n hadToWait                      ").append(getHadToWaitCount());
     builder.append("\n averageWaitTime                ").append(getAverageWaitTime());
+    builder.append("\n waitTime99thPercentile         ").append(TimeUnit.NANOSECONDS.toMillis(waitTime.getPercentileNanos(99)));
+    builder.append("\n maxWaitTime                    ").append(TimeUnit.NANOSECONDS.toMillis(waitTime.getMaxNanos()));
     builder.append("\n badConnectionCount             ").append(getBadConnectionCount());
+    builder.append("\n expiredConnectionCount         ").append(getExpiredConnectionCount());
+    builder.append("\n evictedConnectionCount         ").append(getEvictedConnectionCount());
+    builder.append("\n statementCacheHits             ").append(getStatementCacheHitCount());
+    builder.append("\n statementCacheMisses           ").append(getStatementCacheMissCount());
+    builder.append("\n statementCacheEvictions        ").append(getStatementCacheEvictionCount());
     builder.append("\n===============================================================");
     return builder.toString();
   }
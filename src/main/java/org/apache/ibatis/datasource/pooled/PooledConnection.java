@@ -29,17 +29,19 @@ import org.apache.ibatis.reflection.ExceptionUtil;
 class PooledConnection implements InvocationHandler {
 
   private static final String CLOSE = "close";
+  private static final String PREPARE_STATEMENT = "prepareStatement";
   private static final Class<?>[] IFACES = new Class<?>[] { Connection.class };
 
   private final int hashCode;
   private final PooledDataSource dataSource;
   private final Connection realConnection;
   private final Connection proxyConnection;
+  private final PoolEntry entry;
   private long checkoutTimestamp;
   private long createdTimestamp;
   private long lastUsedTimestamp;
   private int connectionTypeCode;
-  private boolean valid;
+  private volatile boolean valid;
 
   /*
    * Constructor for SimplePooledConnection that uses the Connection and PooledDataSource passed in
@@ -48,9 +50,26 @@ class PooledConnection implements InvocationHandler {
    * @param dataSource - the dataSource that the connection is from
    */
   public PooledConnection(Connection connection, PooledDataSource dataSource) {
+    this(connection, dataSource, null);
+  }
+
+  /*
+   * Constructor for a checkout of a connection of the pool
+   *
+   * @param entry - the pool entry of the physical connection
+   * @param dataSource - the dataSource that the connection is from
+   */
+  PooledConnection(PoolEntry entry, PooledDataSource dataSource) {
+    this(entry.getRealConnection(), dataSource, entry);
+    this.createdTimestamp = entry.getCreatedTimestamp();
+    this.lastUsedTimestamp = entry.getLastUsedTimestamp();
+  }
+
+  private PooledConnection(Connection connection, PooledDataSource dataSource, PoolEntry entry) {
     this.hashCode = connection.hashCode();
     this.realConnection = connection;
     this.dataSource = dataSource;
+    this.entry = entry;
     this.createdTimestamp = System.currentTimeMillis();
     this.lastUsedTimestamp = System.currentTimeMillis();
     this.valid = true;
@@ -82,6 +101,15 @@ class PooledConnection implements InvocationHandler {
     return realConnection;
   }
 
+  /*
+   * Getter for the pool entry of the physical connection
+   *
+   * @return The entry, null if the connection does not belong to a pool
+   */
+  PoolEntry getEntry() {
+    return entry;
+  }
+
   /*
    * Getter for the proxy for the connection
    *
@@ -242,6 +270,9 @@ class PooledConnection implements InvocationHandler {
           // throw an SQLException instead of a Runtime
           checkConnection();
         }
+        if (entry != null && entry.getStatementCache() != null && PREPARE_STATEMENT.equals(methodName)) {
+          return entry.getStatementCache().prepare(realConnection, method, args);
+        }
         return method.invoke(realConnection, args);
       } catch (Throwable t) {
         throw ExceptionUtil.unwrapThrowable(t);
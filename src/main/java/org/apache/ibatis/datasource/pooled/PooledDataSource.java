@@ -16,24 +16,56 @@
 package org.apache.ibatis.datasource.pooled;
 
 import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.sql.DataSource;
 
+import org.apache.ibatis.datasource.ConnectionDeadline;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
 /**
- * This is a simple, synchronous, thread-safe database connection pool.
+ * This is a simple, thread-safe database connection pool.
+ * <p>
+ * Connections are checked out and returned without lock, see {@link ConnectionBag}. Physical connections are
+ * opened, pinged and rolled back by the requesting or returning thread only, so a slow database call never
+ * delays the other threads.
+ * <p>
+ * Threads waiting for a connection are served in arrival order, for at most the time left until their
+ * {@link ConnectionDeadline}.
+ * <p>
+ * When {@link #setPoolMinimumIdleConnections(int) poolMinimumIdleConnections} is set, background threads open
+ * connections ahead of demand to keep that many idle, starting when the {@code SqlSessionFactory} is built.
+ * <p>
+ * When {@link #setPoolHousekeepingInterval(int) poolHousekeepingInterval} is set, a background thread
+ * periodically validates the idle connections, closes those exceeding the
+ * {@link #setPoolMaximumLifetime(int) maximum lifetime} and the idle ones exceeding the maximum number of idle
+ * connections. Checking out and returning a connection then only check that it is not closed, without ping query.
+ * <p>
+ * When {@link #setPoolPreparedStatementCacheSize(int) poolPreparedStatementCacheSize} is set, each physical
+ * connection keeps that many prepared statements open after they are closed, and reuses them for the same SQL
+ * across checkouts, see {@link StatementCache}.
  *
  * @author Clinton Begin
  */
@@ -41,21 +73,53 @@ public class PooledDataSource implements DataSource {
 
   private static final Log log = LogFactory.getLog(PooledDataSource.class);
 
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+  // 线程工厂不能引用数据源，否则后台线程使其无法被回收
+  private static final ThreadFactory CONNECTOR_THREAD_FACTORY = new ThreadFactory() {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "mybatis-pool-connector-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  };
+  private static final ThreadFactory HOUSEKEEPER_THREAD_FACTORY = new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "mybatis-pool-housekeeper");
+      thread.setDaemon(true);
+      return thread;
+    }
+  };
+
   private final PoolState state = new PoolState(this);
+  private final ConnectionBag bag = new ConnectionBag();
+  // 物理连接数，包括正在建立的连接
+  private final AtomicInteger connectionCount = new AtomicInteger();
+  private final AtomicInteger pendingConnects = new AtomicInteger();
+  private ThreadPoolExecutor connector;
+  private volatile ScheduledThreadPoolExecutor housekeeper;
 
   private final UnpooledDataSource dataSource;
 
   // OPTIONAL CONFIGURATION FIELDS
   protected int poolMaximumActiveConnections = 10;
   protected int poolMaximumIdleConnections = 5;
+  protected int poolMinimumIdleConnections;
+  protected int poolMaximumConcurrentConnects = 2;
   protected int poolMaximumCheckoutTime = 20000;
   protected int poolTimeToWait = 20000;
   protected int poolMaximumLocalBadConnectionTolerance = 3;
   protected String poolPingQuery = "NO PING QUERY SET";
   protected boolean poolPingEnabled;
   protected int poolPingConnectionsNotUsedFor;
+  protected int poolHousekeepingInterval;
+  protected int poolMaximumLifetime;
+  protected int poolPreparedStatementCacheSize;
 
-  private int expectedConnectionTypeCode;
+  private volatile int expectedConnectionTypeCode;
 
   public PooledDataSource() {
     dataSource = new UnpooledDataSource();
@@ -170,6 +234,34 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /*
+   * The number of idle connections kept open ahead of demand by background threads,
+   * at most the maximum number of idle connections
+   *
+   * @param poolMinimumIdleConnections The minimum number of idle connections
+   */
+  public void setPoolMinimumIdleConnections(int poolMinimumIdleConnections) {
+    this.poolMinimumIdleConnections = poolMinimumIdleConnections;
+    forceCloseAll();
+  }
+
+  /*
+   * The maximum number of connections opened at the same time by the background threads
+   *
+   * @param poolMaximumConcurrentConnects The maximum number of background threads
+   */
+  public synchronized void setPoolMaximumConcurrentConnects(int poolMaximumConcurrentConnects) {
+    if (poolMaximumConcurrentConnects < 1) {
+      throw new IllegalArgumentException("poolMaximumConcurrentConnects must be greater than zero but was " + poolMaximumConcurrentConnects);
+    }
+    this.poolMaximumConcurrentConnects = poolMaximumConcurrentConnects;
+    if (connector != null) {
+      connector.shutdown();
+      connector = null;
+    }
+    forceCloseAll();
+  }
+
   /*
    * The maximum number of tolerance for bad connection happens in one thread
     * which are applying for new {@link PooledConnection}
@@ -236,6 +328,39 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /*
+   * The number of milliseconds between two runs of the housekeeping, which validates the idle connections
+   * in the background instead of pinging them on checkout. Disabled if not positive.
+   *
+   * @param poolHousekeepingInterval the number of milliseconds between two runs
+   */
+  public void setPoolHousekeepingInterval(int poolHousekeepingInterval) {
+    stopHousekeeping();
+    this.poolHousekeepingInterval = poolHousekeepingInterval;
+    forceCloseAll();
+  }
+
+  /*
+   * The maximum number of milliseconds a connection is kept open, shortened by up to 2.5% for each connection
+   * so that connections opened together are not closed together. Unlimited if not positive.
+   *
+   * @param poolMaximumLifetime the maximum lifetime
+   */
+  public void setPoolMaximumLifetime(int poolMaximumLifetime) {
+    this.poolMaximumLifetime = poolMaximumLifetime;
+    forceCloseAll();
+  }
+
+  /*
+   * The number of prepared statements kept open by each connection to be reused, none if not positive
+   *
+   * @param poolPreparedStatementCacheSize the maximum number of cached statements per connection
+   */
+  public void setPoolPreparedStatementCacheSize(int poolPreparedStatementCacheSize) {
+    this.poolPreparedStatementCacheSize = poolPreparedStatementCacheSize;
+    forceCloseAll();
+  }
+
   public String getDriver() {
     return dataSource.getDriver();
   }
@@ -272,6 +397,14 @@ public class PooledDataSource implements DataSource {
     return poolMaximumIdleConnections;
   }
 
+  public int getPoolMinimumIdleConnections() {
+    return poolMinimumIdleConnections;
+  }
+
+  public int getPoolMaximumConcurrentConnects() {
+    return poolMaximumConcurrentConnects;
+  }
+
   public int getPoolMaximumLocalBadConnectionTolerance() {
     return poolMaximumLocalBadConnectionTolerance;
   }
@@ -296,32 +429,32 @@ public class PooledDataSource implements DataSource {
     return poolPingConnectionsNotUsedFor;
   }
 
+  public int getPoolHousekeepingInterval() {
+    return poolHousekeepingInterval;
+  }
+
+  public int getPoolMaximumLifetime() {
+    return poolMaximumLifetime;
+  }
+
+  public int getPoolPreparedStatementCacheSize() {
+    return poolPreparedStatementCacheSize;
+  }
+
   /*
    * Closes all active and idle connections in the pool
    */
   public void forceCloseAll() {
-    synchronized (state) {
-      expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(), dataSource.getPassword());
-      for (int i = state.activeConnections.size(); i > 0; i--) {
-        try {
-          PooledConnection conn = state.activeConnections.remove(i - 1);
+    expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(), dataSource.getPassword());
+    for (PoolEntry entry : bag.values()) {
+      if (bag.remove(entry)) {
+        connectionCount.decrementAndGet();
+        PooledConnection conn = entry.releaseAny();
+        if (conn != null) {
           conn.invalidate();
-
-          Connection realConn = conn.getRealConnection();
-          if (!realConn.getAutoCommit()) {
-            realConn.rollback();
-          }
-          realConn.close();
-        } catch (Exception e) {
-          // ignore
         }
-      }
-      for (int i = state.idleConnections.size(); i > 0; i--) {
         try {
-          PooledConnection conn = state.idleConnections.remove(i - 1);
-          conn.invalidate();
-
-          Connection realConn = conn.getRealConnection();
+          Connection realConn = entry.getRealConnection();
           if (!realConn.getAutoCommit()) {
             realConn.rollback();
           }
@@ -340,161 +473,455 @@ public class PooledDataSource implements DataSource {
     return state;
   }
 
+  /*
+   * Starts the housekeeping and opening the minimum number of idle connections in the background,
+   * without waiting for them
+   */
+  public void warmUp() {
+    if (poolHousekeepingInterval > 0) {
+      startHousekeeping();
+    }
+    fillPool();
+  }
+
+  ConnectionBag getConnectionBag() {
+    return bag;
+  }
+
   private int assembleConnectionTypeCode(String url, String username, String password) {
     return ("" + url + username + password).hashCode();
   }
 
   protected void pushConnection(PooledConnection conn) throws SQLException {
-
-    synchronized (state) {
-      state.activeConnections.remove(conn);
-      if (conn.isValid()) {
-        if (state.idleConnections.size() < poolMaximumIdleConnections && conn.getConnectionTypeCode() == expectedConnectionTypeCode) {
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
-          if (!conn.getRealConnection().getAutoCommit()) {
-            conn.getRealConnection().rollback();
-          }
-          PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this);
-          state.idleConnections.add(newConn);
-          newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
-          newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
-          conn.invalidate();
-          if (log.isDebugEnabled()) {
-            log.debug("Returned connection " + newConn.getRealHashCode() + " to pool.");
-          }
-          state.notifyAll();
-        } else {
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
-          if (!conn.getRealConnection().getAutoCommit()) {
-            conn.getRealConnection().rollback();
-          }
-          conn.getRealConnection().close();
-          if (log.isDebugEnabled()) {
-            log.debug("Closed connection " + conn.getRealHashCode() + ".");
-          }
-          conn.invalidate();
+    PoolEntry entry = conn.getEntry();
+    // 已归还、被收回或被强制关闭的连接不能再次归还
+    if (entry == null || !entry.release(conn)) {
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+      }
+      state.badConnectionCount.increment();
+      return;
+    }
+    state.accumulatedCheckoutTime.add(conn.getCheckoutTime());
+    if (!conn.isValid()) {
+      conn.invalidate();
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+      }
+      state.badConnectionCount.increment();
+      closeEntry(entry);
+      return;
+    }
+    conn.invalidate();
+    entry.setLastUsedTimestamp(conn.getLastUsedTimestamp());
+    boolean expired = entry.isExpired(poolMaximumLifetime, System.currentTimeMillis());
+    if (expired) {
+      state.expiredConnectionCount.increment();
+    }
+    // 开启维护时多余的空闲连接由维护线程关闭，归还的线程不必等待
+    boolean keep = !expired && conn.getConnectionTypeCode() == expectedConnectionTypeCode
+        && (housekeeper != null || bag.getWaiterCount() > 0 || bag.count(PoolEntry.STATE_IDLE) < poolMaximumIdleConnections);
+    if (keep) {
+      try {
+        if (!entry.getRealConnection().getAutoCommit()) {
+          entry.getRealConnection().rollback();
         }
-      } else {
+      } catch (SQLException e) {
+        closeEntry(entry);
+        throw e;
+      }
+      if (bag.requite(entry)) {
         if (log.isDebugEnabled()) {
-          log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+          log.debug("Returned connection " + conn.getRealHashCode() + " to pool.");
         }
-        state.badConnectionCount++;
+        return;
       }
     }
+    closeEntry(entry);
+    if (log.isDebugEnabled()) {
+      log.debug("Closed connection " + conn.getRealHashCode() + ".");
+    }
   }
 
   private PooledConnection popConnection(String username, String password) throws SQLException {
+    if (poolHousekeepingInterval > 0 && housekeeper == null) {
+      startHousekeeping();
+    }
     boolean countedWait = false;
-    PooledConnection conn = null;
     long t = System.currentTimeMillis();
+    long waitStart = 0;
+    long remaining = ConnectionDeadline.remainingNanos();
+    long deadline = System.nanoTime() + remaining;
     int localBadConnectionCount = 0;
+    ConnectionBag.Waiter waiter = null;
 
-    while (conn == null) {
-      synchronized (state) {
-        if (!state.idleConnections.isEmpty()) {
+    try {
+      while (true) {
+        PoolEntry entry = bag.borrow();
+        if (entry != null) {
           // Pool has available connection
-          conn = state.idleConnections.remove(0);
           if (log.isDebugEnabled()) {
-            log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
+            log.debug("Checked out connection " + entry.getRealConnection().hashCode() + " from pool.");
           }
         } else {
           // Pool does not have available connection
-          if (state.activeConnections.size() < poolMaximumActiveConnections) {
-            // Can create new connection
-            conn = new PooledConnection(dataSource.getConnection(), this);
-            if (log.isDebugEnabled()) {
-              log.debug("Created connection " + conn.getRealHashCode() + ".");
-            }
-          } else {
+          entry = createEntry();
+          if (entry == null) {
             // Cannot create new connection
-            PooledConnection oldestActiveConnection = state.activeConnections.get(0);
-            long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
-            if (longestCheckoutTime > poolMaximumCheckoutTime) {
-              // Can claim overdue connection
-              state.claimedOverdueConnectionCount++;
-              state.accumulatedCheckoutTimeOfOverdueConnections += longestCheckoutTime;
-              state.accumulatedCheckoutTime += longestCheckoutTime;
-              state.activeConnections.remove(oldestActiveConnection);
-              if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
-                try {
-                  oldestActiveConnection.getRealConnection().rollback();
-                } catch (SQLException e) {
-                  /*
-                     Just log a message for debug and continue to execute the following
-                     statement like nothing happend.
-                     Wrap the bad connection with a new PooledConnection, this will help
-                     to not intterupt current executing thread and give current thread a
-                     chance to join the next competion for another valid/good database
-                     connection. At the end of this loop, bad {@link @conn} will be set as null.
-                   */
-                  log.debug("Bad connection. Could not roll back");
-                }  
-              }
-              conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
-              conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
-              conn.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
-              oldestActiveConnection.invalidate();
-              if (log.isDebugEnabled()) {
-                log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
-              }
-            } else {
-              // Must wait
-              try {
-                if (!countedWait) {
-                  state.hadToWaitCount++;
-                  countedWait = true;
-                }
-                if (log.isDebugEnabled()) {
-                  log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
-                }
-                long wt = System.currentTimeMillis();
-                state.wait(poolTimeToWait);
-                state.accumulatedWaitTime += System.currentTimeMillis() - wt;
-              } catch (InterruptedException e) {
-                break;
+            entry = claimOverdueEntry();
+          }
+          if (entry == null) {
+            // Must wait
+            if (!countedWait) {
+              state.hadToWaitCount.increment();
+              countedWait = true;
+              waitStart = System.nanoTime();
+            }
+            if (remaining != Long.MAX_VALUE) {
+              remaining = deadline - System.nanoTime();
+              if (remaining <= 0) {
+                throw new SQLTransientConnectionException("PooledDataSource: Timed out waiting for a connection.");
               }
             }
+            long wait = poolTimeToWait > 0 ? Math.min(TimeUnit.MILLISECONDS.toNanos(poolTimeToWait), remaining) : remaining;
+            if (log.isDebugEnabled()) {
+              log.debug("Waiting as long as " + TimeUnit.NANOSECONDS.toMillis(wait) + " milliseconds for connection.");
+            }
+            if (waiter == null) {
+              waiter = bag.enqueue();
+            }
+            long wt = System.currentTimeMillis();
+            try {
+              entry = bag.await(waiter, wait);
+            } catch (InterruptedException e) {
+              waiter = null;
+              Thread.currentThread().interrupt();
+              throw new SQLException("PooledDataSource: Interrupted while waiting for a connection.", e);
+            } finally {
+              state.accumulatedWaitTime.add(System.currentTimeMillis() - wt);
+            }
+            if (entry == null) {
+              continue;
+            }
+            // the thread left the queue
+            waiter = null;
           }
         }
-        if (conn != null) {
-          // ping to server and check the connection is valid or not
-          if (conn.isValid()) {
+        PooledConnection conn = new PooledConnection(entry, this);
+        // ping to server and check the connection is valid or not
+        if (conn.isValid()) {
+          try {
             if (!conn.getRealConnection().getAutoCommit()) {
               conn.getRealConnection().rollback();
             }
-            conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
-            conn.setCheckoutTimestamp(System.currentTimeMillis());
-            conn.setLastUsedTimestamp(System.currentTimeMillis());
-            state.activeConnections.add(conn);
-            state.requestCount++;
-            state.accumulatedRequestTime += System.currentTimeMillis() - t;
-          } else {
-            if (log.isDebugEnabled()) {
-              log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
-            }
-            state.badConnectionCount++;
-            localBadConnectionCount++;
-            conn = null;
-            if (localBadConnectionCount > (poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance)) {
-              if (log.isDebugEnabled()) {
-                log.debug("PooledDataSource: Could not get a good connection to the database.");
-              }
-              throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
-            }
+          } catch (SQLException e) {
+            closeEntry(entry);
+            throw e;
           }
+          conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
+          conn.setCheckoutTimestamp(System.currentTimeMillis());
+          conn.setLastUsedTimestamp(System.currentTimeMillis());
+          entry.setBorrower(conn);
+          state.requestCount.increment();
+          state.accumulatedRequestTime.add(System.currentTimeMillis() - t);
+          if (countedWait) {
+            state.waitTime.record(System.nanoTime() - waitStart);
+          }
+          if (poolMinimumIdleConnections > 0) {
+            fillPool();
+          }
+          return conn;
+        }
+        if (log.isDebugEnabled()) {
+          log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
         }
+        state.badConnectionCount.increment();
+        localBadConnectionCount++;
+        closeEntry(entry);
+        if (localBadConnectionCount > (poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance)) {
+          if (log.isDebugEnabled()) {
+            log.debug("PooledDataSource: Could not get a good connection to the database.");
+          }
+          throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
+        }
+      }
+    } finally {
+      if (waiter != null) {
+        bag.cancel(waiter);
       }
+    }
+  }
 
+  /*
+   * Opens a new physical connection if the pool is not full
+   *
+   * @return The new entry, checked out, or null if the pool is full
+   */
+  private PoolEntry createEntry() throws SQLException {
+    int count;
+    do {
+      count = connectionCount.get();
+      if (count >= poolMaximumActiveConnections) {
+        return null;
+      }
+    } while (!connectionCount.compareAndSet(count, count + 1));
+    boolean created = false;
+    try {
+      PoolEntry entry = new PoolEntry(dataSource.getConnection(),
+          poolPreparedStatementCacheSize > 0 ? new StatementCache(poolPreparedStatementCacheSize, state) : null);
+      bag.add(entry);
+      created = true;
+      if (log.isDebugEnabled()) {
+        log.debug("Created connection " + entry.getRealConnection().hashCode() + ".");
+      }
+      return entry;
+    } finally {
+      if (!created) {
+        connectionCount.decrementAndGet();
+      }
     }
+  }
 
-    if (conn == null) {
+  /*
+   * Takes the connection checked out for the longest time from its borrower if it exceeded the maximum checkout time
+   *
+   * @return The entry, checked out, or null if no connection is overdue
+   */
+  private PoolEntry claimOverdueEntry() {
+    PooledConnection oldestActiveConnection = null;
+    for (PoolEntry entry : bag.values()) {
+      PooledConnection conn = entry.getBorrower();
+      if (conn != null && (oldestActiveConnection == null || conn.getCheckoutTimestamp() < oldestActiveConnection.getCheckoutTimestamp())) {
+        oldestActiveConnection = conn;
+      }
+    }
+    if (oldestActiveConnection == null) {
+      return null;
+    }
+    long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
+    PoolEntry entry = oldestActiveConnection.getEntry();
+    if (longestCheckoutTime <= poolMaximumCheckoutTime || !entry.release(oldestActiveConnection)) {
+      return null;
+    }
+    // Can claim overdue connection
+    oldestActiveConnection.invalidate();
+    state.claimedOverdueConnectionCount.increment();
+    state.accumulatedCheckoutTimeOfOverdueConnections.add(longestCheckoutTime);
+    state.accumulatedCheckoutTime.add(longestCheckoutTime);
+    entry.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
+    try {
+      if (!entry.getRealConnection().getAutoCommit()) {
+        entry.getRealConnection().rollback();
+      }
+    } catch (SQLException e) {
+      /*
+         Just log a message for debug and continue to execute the following
+         statement like nothing happend.
+         The bad connection is then detected by the validation of the checkout,
+         which gives current thread a chance to join the next competion for
+         another valid/good database connection.
+       */
+      log.debug("Bad connection. Could not roll back");
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Claimed overdue connection " + oldestActiveConnection.getRealHashCode() + ".");
+    }
+    return entry;
+  }
+
+  /*
+   * Opens connections in the background until the minimum number of idle connections is reached
+   */
+  private void fillPool() {
+    int minimumIdle = Math.min(poolMinimumIdleConnections, poolMaximumIdleConnections);
+    if (minimumIdle <= 0) {
+      return;
+    }
+    int wanted = minimumIdle - bag.count(PoolEntry.STATE_IDLE);
+    while (true) {
+      int pending = pendingConnects.get();
+      if (pending >= wanted || pending >= poolMaximumConcurrentConnects || connectionCount.get() >= poolMaximumActiveConnections) {
+        return;
+      }
+      if (pendingConnects.compareAndSet(pending, pending + 1)) {
+        try {
+          getConnector().execute(new Runnable() {
+            @Override
+            public void run() {
+              fillConnection();
+            }
+          });
+        } catch (RuntimeException e) {
+          pendingConnects.decrementAndGet();
+          throw e;
+        }
+        wanted--;
+      }
+    }
+  }
+
+  private void fillConnection() {
+    boolean filled = false;
+    try {
+      PoolEntry entry = createEntry();
+      if (entry != null) {
+        PooledConnection conn = new PooledConnection(entry, this);
+        if (conn.isValid()) {
+          conn.invalidate();
+          filled = bag.requite(entry);
+        } else {
+          closeEntry(entry);
+        }
+      }
+    } catch (SQLException e) {
+      log.warn("Could not open a connection in the background.  Cause: " + e);
+    } catch (RuntimeException e) {
+      log.warn("Could not open a connection in the background.  Cause: " + e);
+    } finally {
+      pendingConnects.decrementAndGet();
+    }
+    // 失败时不再继续，避免数据库不可用时反复重试
+    if (filled) {
+      fillPool();
+    }
+  }
+
+  private synchronized ThreadPoolExecutor getConnector() {
+    if (connector == null) {
+      connector = new ThreadPoolExecutor(poolMaximumConcurrentConnects, poolMaximumConcurrentConnects, 30, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(), CONNECTOR_THREAD_FACTORY);
+      connector.allowCoreThreadTimeOut(true);
+    }
+    return connector;
+  }
+
+  private synchronized void startHousekeeping() {
+    if (housekeeper != null || poolHousekeepingInterval <= 0) {
+      return;
+    }
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, HOUSEKEEPER_THREAD_FACTORY);
+    executor.scheduleWithFixedDelay(new Housekeeping(this, executor), poolHousekeepingInterval, poolHousekeepingInterval,
+        TimeUnit.MILLISECONDS);
+    housekeeper = executor;
+  }
+
+  private synchronized void stopHousekeeping() {
+    if (housekeeper != null) {
+      housekeeper.shutdownNow();
+      housekeeper = null;
+    }
+  }
+
+  /*
+   * Validates the idle connections and closes those that are bad, expired, or exceed the maximum number of idle
+   * connections, then opens the minimum number of idle connections
+   */
+  private void houseKeep() {
+    long now = System.currentTimeMillis();
+    for (PoolEntry entry : bag.values()) {
+      // 占用空闲连接，借出的线程会跳过它
+      if (!entry.compareAndSetState(PoolEntry.STATE_IDLE, PoolEntry.STATE_IN_USE)) {
+        continue;
+      }
+      if (entry.isExpired(poolMaximumLifetime, now)) {
+        state.expiredConnectionCount.increment();
+        if (log.isDebugEnabled()) {
+          log.debug("Closing expired connection " + entry.getRealConnection().hashCode() + ".");
+        }
+        closeEntry(entry);
+      } else if (poolPingConnectionsNotUsedFor >= 0 && now - entry.getLastUsedTimestamp() > poolPingConnectionsNotUsedFor
+          && !validateConnection(entry.getRealConnection())) {
+        state.badConnectionCount.increment();
+        closeEntry(entry);
+      } else {
+        bag.requite(entry);
+      }
+    }
+    evictIdleEntries();
+    fillPool();
+  }
+
+  /*
+   * Closes the least recently used idle connections exceeding the maximum number of idle connections
+   */
+  private void evictIdleEntries() {
+    List<PoolEntry> idleEntries = new ArrayList<PoolEntry>();
+    for (PoolEntry entry : bag.values()) {
+      if (entry.getState() == PoolEntry.STATE_IDLE) {
+        idleEntries.add(entry);
+      }
+    }
+    int excess = idleEntries.size() - poolMaximumIdleConnections;
+    if (excess <= 0) {
+      return;
+    }
+    Collections.sort(idleEntries, new Comparator<PoolEntry>() {
+      @Override
+      public int compare(PoolEntry o1, PoolEntry o2) {
+        return Long.compare(o1.getLastUsedTimestamp(), o2.getLastUsedTimestamp());
+      }
+    });
+    for (PoolEntry entry : idleEntries) {
+      if (excess <= 0) {
+        break;
+      }
+      if (entry.compareAndSetState(PoolEntry.STATE_IDLE, PoolEntry.STATE_IN_USE)) {
+        state.evictedConnectionCount.increment();
+        if (log.isDebugEnabled()) {
+          log.debug("Closing idle connection " + entry.getRealConnection().hashCode() + ".");
+        }
+        closeEntry(entry);
+        excess--;
+      }
+    }
+  }
+
+  /*
+   * Checks an idle connection with the ping query if enabled, or else with the driver's own check
+   */
+  private boolean validateConnection(Connection realConn) {
+    if (poolPingEnabled) {
+      return executePingQuery(realConn);
+    }
+    try {
+      if (realConn.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+        return true;
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("Connection " + realConn.hashCode() + " is BAD.");
+      }
+    } catch (SQLException e) {
       if (log.isDebugEnabled()) {
-        log.debug("PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+        log.debug("Connection " + realConn.hashCode() + " is BAD: " + e.getMessage());
       }
-      throw new SQLException("PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
     }
+    return false;
+  }
 
-    return conn;
+  /*
+   * Removes a connection from the pool and closes it
+   *
+   * @param entry - the pool entry of the connection
+   */
+  private void closeEntry(PoolEntry entry) {
+    if (!bag.remove(entry)) {
+      // closed by forceCloseAll already
+      return;
+    }
+    connectionCount.decrementAndGet();
+    try {
+      Connection realConn = entry.getRealConnection();
+      if (!realConn.isClosed()) {
+        if (!realConn.getAutoCommit()) {
+          realConn.rollback();
+        }
+        realConn.close();
+      }
+    } catch (SQLException e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Could not close connection " + entry.getRealConnection().hashCode() + ": " + e.getMessage());
+      }
+    }
   }
 
   /*
@@ -515,43 +942,45 @@ public class PooledDataSource implements DataSource {
       result = false;
     }
 
-    if (result) {
-      if (poolPingEnabled) {
-        if (poolPingConnectionsNotUsedFor >= 0 && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor) {
-          try {
-            if (log.isDebugEnabled()) {
-              log.debug("Testing connection " + conn.getRealHashCode() + " ...");
-            }
-            Connection realConn = conn.getRealConnection();
-            Statement statement = realConn.createStatement();
-            ResultSet rs = statement.executeQuery(poolPingQuery);
-            rs.close();
-            statement.close();
-            if (!realConn.getAutoCommit()) {
-              realConn.rollback();
-            }
-            result = true;
-            if (log.isDebugEnabled()) {
-              log.debug("Connection " + conn.getRealHashCode() + " is GOOD!");
-            }
-          } catch (Exception e) {
-            log.warn("Execution of ping query '" + poolPingQuery + "' failed: " + e.getMessage());
-            try {
-              conn.getRealConnection().close();
-            } catch (Exception e2) {
-              //ignore
-            }
-            result = false;
-            if (log.isDebugEnabled()) {
-              log.debug("Connection " + conn.getRealHashCode() + " is BAD: " + e.getMessage());
-            }
-          }
-        }
+    // 开启维护时由维护线程验证空闲连接
+    if (result && poolPingEnabled && poolHousekeepingInterval <= 0) {
+      if (poolPingConnectionsNotUsedFor >= 0 && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor) {
+        result = executePingQuery(conn.getRealConnection());
       }
     }
     return result;
   }
 
+  private boolean executePingQuery(Connection realConn) {
+    try {
+      if (log.isDebugEnabled()) {
+        log.debug("Testing connection " + realConn.hashCode() + " ...");
+      }
+      Statement statement = realConn.createStatement();
+      ResultSet rs = statement.executeQuery(poolPingQuery);
+      rs.close();
+      statement.close();
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("Connection " + realConn.hashCode() + " is GOOD!");
+      }
+      return true;
+    } catch (Exception e) {
+      log.warn("Execution of ping query '" + poolPingQuery + "' failed: " + e.getMessage());
+      try {
+        realConn.close();
+      } catch (Exception e2) {
+        //ignore
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("Connection " + realConn.hashCode() + " is BAD: " + e.getMessage());
+      }
+      return false;
+    }
+  }
+
   /*
    * Unwraps a pooled connection to get to the 'real' connection
    *
@@ -569,6 +998,7 @@ public class PooledDataSource implements DataSource {
   }
 
   protected void finalize() throws Throwable {
+    stopHousekeeping();
     forceCloseAll();
     super.finalize();
   }
@@ -585,4 +1015,34 @@ public class PooledDataSource implements DataSource {
     return Logger.getLogger(Logger.GLOBAL_LOGGER_NAME); // requires JDK version 1.6
   }
 
+  /**
+   * Runs the housekeeping of a data source as long as it is not garbage collected.
+   */
+  private static final class Housekeeping implements Runnable {
+
+    private final WeakReference<PooledDataSource> dataSource;
+    private final ScheduledThreadPoolExecutor executor;
+
+    Housekeeping(PooledDataSource dataSource, ScheduledThreadPoolExecutor executor) {
+      this.dataSource = new WeakReference<PooledDataSource>(dataSource);
+      this.executor = executor;
+    }
+
+    @Override
+    public void run() {
+      PooledDataSource ds = dataSource.get();
+      if (ds == null) {
+        executor.shutdown();
+        return;
+      }
+      try {
+        ds.houseKeep();
+      } catch (RuntimeException e) {
+        // 异常会取消后续的执行
+        log.warn("Housekeeping of the pool failed.  Cause: " + e);
+      }
+    }
+
+  }
+
 }
@@ -0,0 +1,125 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The prepared statements of a physical connection, kept open when they are closed to be reused by the next
+ * {@code prepareStatement} call with the same arguments, whoever checked out the connection.
+ * <p>
+ * A statement leaves the cache while it is in use. The least recently used statements are closed beyond
+ * the maximum size.
+ */
+final class StatementCache {
+
+  private final int maxSize;
+  private final PoolState state;
+  private final LinkedHashMap<StatementKey, PreparedStatement> statements;
+
+  StatementCache(int maxSize, PoolState state) {
+    this.maxSize = maxSize;
+    this.state = state;
+    this.statements = new LinkedHashMap<StatementKey, PreparedStatement>(16, 0.75f, true);
+  }
+
+  /**
+   * Returns a cached statement, or else prepares it, calling one of the {@code prepareStatement} methods.
+   */
+  PreparedStatement prepare(Connection realConnection, Method method, Object[] args) throws Throwable {
+    StatementKey key = new StatementKey(method, args);
+    PreparedStatement statement;
+    synchronized (this) {
+      statement = statements.remove(key);
+    }
+    if (statement != null) {
+      state.statementCacheHitCount.increment();
+    } else {
+      state.statementCacheMissCount.increment();
+      statement = (PreparedStatement) method.invoke(realConnection, args);
+    }
+    return new CachedStatement(this, key, statement).getProxyStatement();
+  }
+
+  /**
+   * Keeps a statement closed by its user, closing the one it replaces or the least recently used if any.
+   */
+  void release(StatementKey key, PreparedStatement statement) {
+    PreparedStatement displaced;
+    synchronized (this) {
+      displaced = statements.put(key, statement);
+      if (displaced == null && statements.size() > maxSize) {
+        Iterator<PreparedStatement> eldest = statements.values().iterator();
+        displaced = eldest.next();
+        eldest.remove();
+        state.statementCacheEvictionCount.increment();
+      }
+    }
+    if (displaced != null) {
+      CachedStatement.closeQuietly(displaced);
+    }
+  }
+
+  synchronized int size() {
+    return statements.size();
+  }
+
+  /**
+   * A {@code prepareStatement} method and its arguments: the SQL, and the result set type, concurrency and
+   * holdability or the generated keys mode if any.
+   */
+  static final class StatementKey {
+
+    private final Method method;
+    private final Object[] args;
+    private final int hashCode;
+
+    StatementKey(Method method, Object[] args) {
+      this.method = method;
+      this.args = args;
+      this.hashCode = 31 * method.hashCode() + Arrays.deepHashCode(args);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) {
+        return true;
+      }
+      if (!(object instanceof StatementKey)) {
+        return false;
+      }
+      StatementKey other = (StatementKey) object;
+      return hashCode == other.hashCode && method.equals(other.method) && Arrays.deepEquals(args, other.args);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.deepToString(args);
+    }
+
+  }
+
+}
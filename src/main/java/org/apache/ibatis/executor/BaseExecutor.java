@@ -22,10 +22,12 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.datasource.ConnectionDeadline;
 import org.apache.ibatis.executor.statement.StatementUtil;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
@@ -34,11 +36,13 @@ import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.ResultMap;
 import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.LocalCacheScope;
+import org.apache.ibatis.session.LocalCacheStatistics;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
@@ -61,11 +65,13 @@ public abstract class BaseExecutor implements Executor {
 
   protected int queryStack;
   private boolean closed;
+  private long localCacheHits;
+  private long localCacheMisses;
 
   protected BaseExecutor(Configuration configuration, Transaction transaction) {
     this.transaction = transaction;
     this.deferredLoads = new ConcurrentLinkedQueue<DeferredLoad>();
-    this.localCache = new PerpetualCache("LocalCache");
+    this.localCache = new LocalCache("LocalCache", configuration.getLocalCacheSize(), configuration.getLocalCacheMaxRows());
     this.localOutputParameterCache = new PerpetualCache("LocalOutputParameterCache");
     this.closed = false;
     this.configuration = configuration;
@@ -135,8 +141,8 @@ public abstract class BaseExecutor implements Executor {
   @Override
   public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler) throws SQLException {
     BoundSql boundSql = ms.getBoundSql(parameter);
-    // 构建缓存的唯一主键key
-    CacheKey key = createCacheKey(ms, parameter, rowBounds, boundSql);
+    // 构建缓存的唯一主键key，不会用到一级缓存时跳过
+    CacheKey key = isLocalCacheUsed(ms) ? createCacheKey(ms, parameter, rowBounds, boundSql) : null;
     return query(ms, parameter, rowBounds, resultHandler, key, boundSql);
  }
 
@@ -151,11 +157,23 @@ public abstract class BaseExecutor implements Executor {
     if (queryStack == 0 && ms.isFlushCacheRequired()) {
       clearLocalCache();
     }
+    // 调用方（如CachingExecutor）传入的key，语句不使用一级缓存时忽略
+    if (key != null && !ms.isUseLocalCache() && !isLocalCacheUsed(ms)) {
+      key = null;
+    }
     List<E> list;
     try {
       // 查询栈自增处理，对延迟加载处理
       queryStack++;
-      list = resultHandler == null ? (List<E>) localCache.getObject(key) : null;
+      list = null;
+      if (resultHandler == null && key != null) {
+        list = (List<E>) localCache.getObject(key);
+        if (list != null) {
+          localCacheHits++;
+        } else {
+          localCacheMisses++;
+        }
+      }
       // 如果查询结果是从一级缓存中获取的，则处理存储过程的参数
       if (list != null) {
         handleLocallyCachedOutputParameters(ms, key, parameter, boundSql);
@@ -178,6 +196,9 @@ public abstract class BaseExecutor implements Executor {
       if (configuration.getLocalCacheScope() == LocalCacheScope.STATEMENT) {
         // issue #482
         clearLocalCache();
+      } else if (localCache instanceof LocalCache) {
+        // 查询及其嵌套查询都结束后才淘汰，避免淘汰它们依赖的条目
+        ((LocalCache) localCache).trim();
       }
     }
     return list;
@@ -207,12 +228,12 @@ public abstract class BaseExecutor implements Executor {
     if (closed) {
       throw new ExecutorException("Executor was closed.");
     }
-    CacheKey cacheKey = new CacheKey();
+    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+    CacheKey cacheKey = new CacheKey(parameterMappings.size() + 5);
     cacheKey.update(ms.getId());
     cacheKey.update(rowBounds.getOffset());
     cacheKey.update(rowBounds.getLimit());
     cacheKey.update(boundSql.getSql());
-    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
     TypeHandlerRegistry typeHandlerRegistry = ms.getConfiguration().getTypeHandlerRegistry();
     // mimic DefaultParameterHandler logic
     for (ParameterMapping parameterMapping : parameterMappings) {
@@ -239,6 +260,23 @@ public abstract class BaseExecutor implements Executor {
     return cacheKey;
   }
 
+  /**
+   * Whether the local cache may be used by a query run outside of any other: with the session scope unless the
+   * statement opted out, and with the statement scope only by its nested queries, which may also find the query
+   * itself. Callable statements and statements with nested queries or results always use it.
+   */
+  private boolean isLocalCacheUsed(MappedStatement ms) {
+    if (queryStack > 0 || ms.getStatementType() == StatementType.CALLABLE) {
+      return true;
+    }
+    for (ResultMap resultMap : ms.getResultMaps()) {
+      if (resultMap.hasNestedQueries() || resultMap.hasNestedResultMaps() || resultMap.getDiscriminator() != null) {
+        return true;
+      }
+    }
+    return configuration.getLocalCacheScope() == LocalCacheScope.SESSION && ms.isUseLocalCache();
+  }
+
   @Override
   public boolean isCached(MappedStatement ms, CacheKey key) {
     return localCache.getObject(key) != null;
@@ -272,6 +310,15 @@ public abstract class BaseExecutor implements Executor {
     }
   }
 
+  @Override
+  public LocalCacheStatistics getLocalCacheStatistics() {
+    if (closed) {
+      throw new ExecutorException("Executor was closed.");
+    }
+    final long evictions = localCache instanceof LocalCache ? ((LocalCache) localCache).getEvictions() : 0;
+    return new LocalCacheStatistics(localCacheHits, localCacheMisses, evictions, localCache.getSize());
+  }
+
   @Override
   public void clearLocalCache() {
     // 这里开始涉及缓存：Cache
@@ -336,6 +383,9 @@ public abstract class BaseExecutor implements Executor {
 
   private <E> List<E> queryFromDatabase(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, CacheKey key, BoundSql boundSql) throws SQLException {
     List<E> list;
+    if (key == null) {
+      return doQuery(ms, parameter, rowBounds, resultHandler, boundSql);
+    }
     localCache.putObject(key, EXECUTION_PLACEHOLDER);
     try {
       // 具体的查询流程，模板方法，子类实现
@@ -353,7 +403,19 @@ public abstract class BaseExecutor implements Executor {
   }
 
   protected Connection getConnection(Log statementLog) throws SQLException {
-    Connection connection = transaction.getConnection();
+    Connection connection;
+    Integer timeout = getConnectionTimeout();
+    if (timeout == null) {
+      connection = transaction.getConnection();
+    } else {
+      // 连接池等待连接的时间不超过事务剩余时间与语句超时时间
+      Long previous = ConnectionDeadline.set(timeout, TimeUnit.SECONDS);
+      try {
+        connection = transaction.getConnection();
+      } finally {
+        ConnectionDeadline.restore(previous);
+      }
+    }
     if (statementLog.isDebugEnabled()) {
       return ConnectionLogger.newInstance(connection, statementLog, queryStack);
     } else {
@@ -361,6 +423,15 @@ public abstract class BaseExecutor implements Executor {
     }
   }
 
+  private Integer getConnectionTimeout() throws SQLException {
+    Integer timeout = configuration.getDefaultStatementTimeout();
+    Integer transactionTimeout = transaction.getTimeout();
+    if (transactionTimeout != null && (timeout == null || transactionTimeout < timeout)) {
+      timeout = transactionTimeout;
+    }
+    return timeout == null || timeout <= 0 ? null : timeout;
+  }
+
   @Override
   public void setExecutorWrapper(Executor wrapper) {
     this.wrapper = wrapper;
@@ -17,11 +17,16 @@ package org.apache.ibatis.executor;
 
 import java.sql.BatchUpdateException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
@@ -30,6 +35,11 @@ import org.apache.ibatis.executor.keygen.NoKeyGenerator;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
@@ -44,8 +54,18 @@ public class BatchExecutor extends BaseExecutor {
 
   private final List<Statement> statementList = new ArrayList<Statement>();
   private final List<BatchResult> batchResultList = new ArrayList<BatchResult>();
+  // 改写为多行insert的批次缓存的行，与statementList一一对应，普通JDBC批次为null（其statement也不预编译，为null）
+  private final List<BufferedInsert> bufferedInserts = new ArrayList<BufferedInsert>();
+  // 按SQL分组时，每个打开的批次在statementList中的下标
+  private final Map<BatchKey, Integer> batchIndexes = new HashMap<BatchKey, Integer>();
+  // 按SQL分组时，语句第一次使用的先后顺序，跨多次提交保持不变，提交时按此顺序执行批次
+  private final Map<MappedStatement, Integer> statementOrder = new HashMap<MappedStatement, Integer>();
+  // 达到阈值后自动提交的批次结果，在下次flushStatements时一并返回
+  private final List<BatchResult> autoFlushedResults = new ArrayList<BatchResult>();
   private String currentSql;
   private MappedStatement currentStatement;
+  private int pendingRows;
+  private long pendingBytes;
 
   public BatchExecutor(Configuration configuration, Transaction transaction) {
     super(configuration, transaction);
@@ -58,28 +78,132 @@ public class BatchExecutor extends BaseExecutor {
     final BoundSql boundSql = handler.getBoundSql();
     // 该SQL为预处理语句：即带有占位符？的sql
     final String sql = boundSql.getSql();
-    final Statement stmt;
-    if (sql.equals(currentSql) && ms.equals(currentStatement)) {
-      int last = statementList.size() - 1;
-      stmt = statementList.get(last);
-      applyTransactionTimeout(stmt);
-     handler.parameterize(stmt);//fix Issues 322
-      BatchResult batchResult = batchResultList.get(last);
+    final int openBatch = findOpenBatch(ms, sql);
+    if (openBatch >= 0) {
+      BatchResult batchResult = batchResultList.get(openBatch);
       batchResult.addParameterObject(parameterObject);
+      final BufferedInsert bufferedInsert = bufferedInserts.get(openBatch);
+      if (bufferedInsert != null) {
+        bufferedInsert.rows.add(new BufferedRow(boundSql, getParameterValues(configuration, boundSql, parameterObject)));
+      } else {
+        final Statement stmt = statementList.get(openBatch);
+        applyTransactionTimeout(stmt);
+        handler.parameterize(stmt);//fix Issues 322
+        handler.batch(stmt);
+      }
     } else {
-      Connection connection = getConnection(ms.getStatementLog());
-      stmt = handler.prepare(connection, transaction.getTimeout());
-      handler.parameterize(stmt);    //fix Issues 322
+      final MultiRowInsertSql multiRowInsertSql = isRewritableInsert(configuration, ms) ? MultiRowInsertSql.parse(sql) : null;
+      if (multiRowInsertSql != null) {
+        // 单行insert：先缓存每行的参数值，提交时再拼成 VALUES (...), (...) 的多行insert执行
+        // 与JDBC批次一样在此时取值，参数对象之后的修改（如循环中复用同一对象）不影响已加入的行
+        statementList.add(null);
+        bufferedInserts.add(new BufferedInsert(multiRowInsertSql,
+            new BufferedRow(boundSql, getParameterValues(configuration, boundSql, parameterObject))));
+      } else {
+        Connection connection = getConnection(ms.getStatementLog());
+        final Statement stmt = handler.prepare(connection, transaction.getTimeout());
+        handler.parameterize(stmt);    //fix Issues 322
+        handler.batch(stmt);
+        statementList.add(stmt);
+        bufferedInserts.add(null);
+      }
       currentSql = sql;
       currentStatement = ms;
-      statementList.add(stmt);
       batchResultList.add(new BatchResult(ms, sql, parameterObject));
+      if (configuration.isBatchGroupingEnabled()) {
+        batchIndexes.put(new BatchKey(ms, sql), statementList.size() - 1);
+        if (!statementOrder.containsKey(ms)) {
+          statementOrder.put(ms, statementOrder.size());
+        }
+      }
+    }
+    if (shouldAutoFlush(configuration, boundSql, parameterObject)) {
+      // 全部提交，先使用的语句（如主表）的批次总是先于后使用的语句（如明细表）的批次执行
+      autoFlushedResults.addAll(flushStatements());
     }
-  // handler.parameterize(stmt);
-    handler.batch(stmt);
     return BATCH_UPDATE_RETURN_VALUE;
   }
 
+  private int findOpenBatch(MappedStatement ms, String sql) {
+    if (configuration.isBatchGroupingEnabled()) {
+      final Integer index = batchIndexes.get(new BatchKey(ms, sql));
+      return index == null ? -1 : index;
+    }
+    return sql.equals(currentSql) && ms.equals(currentStatement) ? statementList.size() - 1 : -1;
+  }
+
+  private boolean isRewritableInsert(Configuration configuration, MappedStatement ms) {
+    if (!configuration.isBatchInsertRewriteEnabled()
+        || ms.getSqlCommandType() != SqlCommandType.INSERT
+        || ms.getStatementType() != StatementType.PREPARED) {
+      return false;
+    }
+    final Class<?> keyGeneratorType = ms.getKeyGenerator().getClass();
+    return Jdbc3KeyGenerator.class.equals(keyGeneratorType) || NoKeyGenerator.class.equals(keyGeneratorType);
+  }
+
+  private boolean shouldAutoFlush(Configuration configuration, BoundSql boundSql, Object parameterObject) {
+    pendingRows++;
+    final int rowThreshold = configuration.getBatchFlushRowThreshold();
+    if (rowThreshold > 0 && pendingRows >= rowThreshold) {
+      return true;
+    }
+    final int byteThreshold = configuration.getBatchFlushByteThreshold();
+    if (byteThreshold > 0) {
+      pendingBytes += estimateParameterBytes(configuration, boundSql, parameterObject);
+      return pendingBytes >= byteThreshold;
+    }
+    return false;
+  }
+
+  /**
+   * Rough size of the parameters bound for one row.
+   */
+  private long estimateParameterBytes(Configuration configuration, BoundSql boundSql, Object parameterObject) {
+    long bytes = 0;
+    for (Object value : getParameterValues(configuration, boundSql, parameterObject)) {
+      if (value == null) {
+        bytes += 1;
+      } else if (value instanceof CharSequence) {
+        bytes += 2 * ((CharSequence) value).length();
+      } else if (value instanceof byte[]) {
+        bytes += ((byte[]) value).length;
+      } else {
+        bytes += 8;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Values bound for one row, resolved the same way as DefaultParameterHandler does. OUT parameters are null.
+   */
+  private Object[] getParameterValues(Configuration configuration, BoundSql boundSql, Object parameterObject) {
+    final List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+    final Object[] values = new Object[parameterMappings.size()];
+    MetaObject metaObject = null;
+    for (int i = 0; i < values.length; i++) {
+      final ParameterMapping parameterMapping = parameterMappings.get(i);
+      if (parameterMapping.getMode() == ParameterMode.OUT) {
+        continue;
+      }
+      final String propertyName = parameterMapping.getProperty();
+      if (boundSql.hasAdditionalParameter(propertyName)) {
+        values[i] = boundSql.getAdditionalParameter(propertyName);
+      } else if (parameterObject == null) {
+        values[i] = null;
+      } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+        values[i] = parameterObject;
+      } else {
+        if (metaObject == null) {
+          metaObject = configuration.newMetaObject(parameterObject);
+        }
+        values[i] = metaObject.getValue(propertyName);
+      }
+    }
+    return values;
+  }
+
   @Override
   public <E> List<E> doQuery(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql)
       throws SQLException {
@@ -112,14 +236,26 @@ public class BatchExecutor extends BaseExecutor {
   @Override
   public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
     try {
-      List<BatchResult> results = new ArrayList<BatchResult>();
+      List<BatchResult> results = new ArrayList<BatchResult>(autoFlushedResults);
+      autoFlushedResults.clear();
       if (isRollback) {
         return Collections.emptyList();
       }
-      for (int i = 0, n = statementList.size(); i < n; i++) {
-        Statement stmt = statementList.get(i);
+      final List<Integer> flushOrder = getFlushOrder();
+      for (int i = 0, n = flushOrder.size(); i < n; i++) {
+        BatchResult batchResult = batchResultList.get(flushOrder.get(i));
+        BufferedInsert bufferedInsert = bufferedInserts.get(flushOrder.get(i));
+        if (bufferedInsert != null) {
+          try {
+            batchResult.setUpdateCounts(executeMultiRowInsert(batchResult, bufferedInsert));
+          } catch (BatchUpdateException e) {
+            throw new BatchExecutorException(batchFailureMessage(batchResult, i), e, results, batchResult);
+          }
+          results.add(batchResult);
+          continue;
+        }
+        Statement stmt = statementList.get(flushOrder.get(i));
         applyTransactionTimeout(stmt);
-        BatchResult batchResult = batchResultList.get(i);
         try {
           // 注意：这里才真正提交SQL：stmt.executeBatch()
           batchResult.setUpdateCounts(stmt.executeBatch());
@@ -138,18 +274,7 @@ public class BatchExecutor extends BaseExecutor {
           // Close statement to close cursor #1109
           closeStatement(stmt);
         } catch (BatchUpdateException e) {
-          StringBuilder message = new StringBuilder();
-          message.append(batchResult.getMappedStatement().getId())
-              .append(" (batch index #")
-              .append(i + 1)
-              .append(")")
-              .append(" failed.");
-          if (i > 0) {
-            message.append(" ")
-                .append(i)
-                .append(" prior sub executor(s) completed successfully, but will be rolled back.");
-          }
-          throw new BatchExecutorException(message.toString(), e, results, batchResult);
+          throw new BatchExecutorException(batchFailureMessage(batchResult, i), e, results, batchResult);
         }
         results.add(batchResult);
       }
@@ -161,8 +286,165 @@ public class BatchExecutor extends BaseExecutor {
       }
       // 清空缓存
       currentSql = null;
+      currentStatement = null;
       statementList.clear();
       batchResultList.clear();
+      bufferedInserts.clear();
+      batchIndexes.clear();
+      pendingRows = 0;
+      pendingBytes = 0;
+    }
+  }
+
+  private String batchFailureMessage(BatchResult batchResult, int i) {
+    StringBuilder message = new StringBuilder();
+    message.append(batchResult.getMappedStatement().getId())
+        .append(" (batch index #")
+        .append(i + 1)
+        .append(")")
+        .append(" failed.");
+    if (i > 0) {
+      message.append(" ")
+          .append(i)
+          .append(" prior sub executor(s) completed successfully, but will be rolled back.");
+    }
+    return message.toString();
+  }
+
+  /**
+   * Inserts the buffered rows with one statement per chunk of rows. The generated keys of each chunk are
+   * assigned to its parameter objects in order. A row counts 1 when its chunk inserted all of its rows,
+   * {@link Statement#SUCCESS_NO_INFO} otherwise.
+   */
+  private int[] executeMultiRowInsert(BatchResult batchResult, BufferedInsert bufferedInsert) throws SQLException {
+    final MappedStatement ms = batchResult.getMappedStatement();
+    final List<Object> parameterObjects = batchResult.getParameterObjects();
+    final int chunkSize = configuration.getBatchInsertRewriteChunkSize();
+    final int[] updateCounts = new int[parameterObjects.size()];
+    for (int from = 0; from < parameterObjects.size(); from += chunkSize) {
+      final int to = Math.min(from + chunkSize, parameterObjects.size());
+      final List<Object> chunk = parameterObjects.subList(from, to);
+      final BoundSql boundSql = newMultiRowBoundSql(bufferedInsert, chunk, from);
+      final StatementHandler handler = configuration.newStatementHandler(this, ms, chunk, RowBounds.DEFAULT, null, boundSql);
+      Statement stmt = null;
+      try {
+        stmt = handler.prepare(getConnection(ms.getStatementLog()), transaction.getTimeout());
+        handler.parameterize(stmt);
+        final int count = ((PreparedStatement) stmt).executeUpdate();
+        if (Jdbc3KeyGenerator.class.equals(ms.getKeyGenerator().getClass())) {
+          ((Jdbc3KeyGenerator) ms.getKeyGenerator()).processBatch(ms, stmt, chunk);
+        }
+        Arrays.fill(updateCounts, from, to, count == chunk.size() ? 1 : Statement.SUCCESS_NO_INFO);
+      } catch (SQLException e) {
+        // 与JDBC批次一致，失败时报告此前已执行的行
+        throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), Arrays.copyOf(updateCounts, from), e);
+      } finally {
+        closeStatement(stmt);
+      }
+    }
+    return updateCounts;
+  }
+
+  private BoundSql newMultiRowBoundSql(BufferedInsert bufferedInsert, List<Object> chunk, int from) {
+    final List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>();
+    final List<Object> values = new ArrayList<Object>();
+    for (int row = 0; row < chunk.size(); row++) {
+      final BufferedRow bufferedRow = bufferedInsert.rows.get(from + row);
+      final List<ParameterMapping> rowMappings = bufferedRow.parameterMappings;
+      final Object[] rowValues = bufferedRow.values;
+      for (int i = 0; i < rowMappings.size(); i++) {
+        final ParameterMapping rowMapping = rowMappings.get(i);
+        // 每行的参数以 __row{行号}_{序号} 为名放入附加参数，不能含'.'与'['
+        parameterMappings.add(new ParameterMapping.Builder(configuration, "__row" + row + "_" + i, rowMapping.getTypeHandler())
+            .mode(rowMapping.getMode())
+            .javaType(rowMapping.getJavaType())
+            .jdbcType(rowMapping.getJdbcType())
+            .jdbcTypeName(rowMapping.getJdbcTypeName())
+            .numericScale(rowMapping.getNumericScale())
+            .build());
+        values.add(rowValues[i]);
+      }
+    }
+    final BoundSql boundSql = new BoundSql(configuration, bufferedInsert.sql.getSql(chunk.size()), parameterMappings, chunk);
+    for (int i = 0; i < parameterMappings.size(); i++) {
+      boundSql.setAdditionalParameter(parameterMappings.get(i).getProperty(), values.get(i));
+    }
+    return boundSql;
+  }
+
+  private List<Integer> getFlushOrder() {
+    final List<Integer> flushOrder = new ArrayList<Integer>(statementList.size());
+    for (int i = 0; i < statementList.size(); i++) {
+      flushOrder.add(i);
+    }
+    if (configuration.isBatchGroupingEnabled()) {
+      // stable sort, batches of the same statement keep their opening order
+      Collections.sort(flushOrder, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer left, Integer right) {
+          return statementOrder.get(batchResultList.get(left).getMappedStatement())
+              - statementOrder.get(batchResultList.get(right).getMappedStatement());
+        }
+      });
+    }
+    return flushOrder;
+  }
+
+  /**
+   * The rows of a batch sent as multi-row inserts at flush time.
+   */
+  private static final class BufferedInsert {
+    private final MultiRowInsertSql sql;
+    private final List<BufferedRow> rows = new ArrayList<BufferedRow>();
+
+    BufferedInsert(MultiRowInsertSql sql, BufferedRow firstRow) {
+      this.sql = sql;
+      this.rows.add(firstRow);
+    }
+  }
+
+  /**
+   * The parameters of a buffered row and their values when the row was added.
+   */
+  private static final class BufferedRow {
+    private final List<ParameterMapping> parameterMappings;
+    private final Object[] values;
+
+    BufferedRow(BoundSql boundSql, Object[] values) {
+      this.parameterMappings = boundSql.getParameterMappings();
+      this.values = values;
+    }
+  }
+
+  /**
+   * Identifies an open batch: the same mapped statement producing the same SQL.
+   */
+  private static final class BatchKey {
+    private final MappedStatement mappedStatement;
+    private final String sql;
+    private final int hashcode;
+
+    BatchKey(MappedStatement mappedStatement, String sql) {
+      this.mappedStatement = mappedStatement;
+      this.sql = sql;
+      this.hashcode = 31 * mappedStatement.hashCode() + sql.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashcode;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) {
+        return true;
+      }
+      if (!(object instanceof BatchKey)) {
+        return false;
+      }
+      final BatchKey other = (BatchKey) object;
+      return mappedStatement.equals(other.mappedStatement) && sql.equals(other.sql);
     }
   }
 
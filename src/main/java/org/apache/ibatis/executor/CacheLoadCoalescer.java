@@ -0,0 +1,160 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.CacheSerializer;
+
+/**
+ * Lets concurrent second level cache misses on the same key share a single query: the first session to miss
+ * runs it, the sessions missing meanwhile wait for its result instead of querying the database too.
+ * <p>
+ * The loading session keeps its result. If others waited, it is serialized once and each of them gets its own
+ * deserialized copy, so sessions never share result objects. When the result cannot be serialized, the waiting
+ * sessions run the query themselves. When the query fails, they fail with the same cause.
+ * Nothing is left behind once the query completes, whatever its outcome.
+ * <p>
+ * A session waits for a bounded time only, then runs the query itself: the running query may be waiting
+ * for a connection or a lock held by the waiting session, a deadlock the database cannot detect.
+ *
+ * @see org.apache.ibatis.session.Configuration#setCacheLoadCoalescingEnabled(boolean)
+ */
+public class CacheLoadCoalescer {
+
+  private final ConcurrentMap<String, ConcurrentMap<CacheKey, Load>> loads = new ConcurrentHashMap<String, ConcurrentMap<CacheKey, Load>>();
+
+  public interface Loader {
+    Object load() throws SQLException;
+  }
+
+  /**
+   * @param timeout milliseconds to wait for a query run by another session before running it
+   */
+  public Object load(Cache cache, CacheKey key, CacheSerializer serializer, long timeout, Loader loader) throws SQLException {
+    final ConcurrentMap<CacheKey, Load> cacheLoads = getCacheLoads(cache.getId());
+    final Load load = new Load();
+    final Load running = cacheLoads.putIfAbsent(key, load);
+    if (running == null) {
+      return lead(cacheLoads, key, load, serializer, loader);
+    }
+    if (running.thread == Thread.currentThread()) {
+      // 同一线程内的嵌套查询，等待自己会死锁
+      return loader.load();
+    }
+    return follow(running, serializer, timeout, loader);
+  }
+
+  /**
+   * Number of queries currently shared.
+   */
+  public int size() {
+    int size = 0;
+    for (ConcurrentMap<CacheKey, Load> cacheLoads : loads.values()) {
+      size += cacheLoads.size();
+    }
+    return size;
+  }
+
+  private Object lead(ConcurrentMap<CacheKey, Load> cacheLoads, CacheKey key, Load load, CacheSerializer serializer, Loader loader) throws SQLException {
+    Object result = null;
+    try {
+      result = loader.load();
+      return result;
+    } catch (SQLException e) {
+      load.failure = e;
+      throw e;
+    } catch (RuntimeException e) {
+      load.failure = e;
+      throw e;
+    } catch (Error e) {
+      load.failure = e;
+      throw e;
+    } finally {
+      // 先移除，此后加入的会话不再等待本次查询
+      cacheLoads.remove(key, load);
+      if (load.failure == null && load.followers.get() > 0) {
+        try {
+          load.result = serializer.serialize(result);
+        } catch (CacheException e) {
+          // the followers run the query themselves
+        }
+      }
+      load.done.countDown();
+    }
+  }
+
+  private Object follow(Load load, CacheSerializer serializer, long timeout, Loader loader) throws SQLException {
+    load.followers.incrementAndGet();
+    final boolean done;
+    try {
+      done = load.done.await(timeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      load.followers.decrementAndGet();
+      Thread.currentThread().interrupt();
+      throw new ExecutorException("Interrupted while waiting for a query run by another session.", e);
+    }
+    if (!done) {
+      // 不再等待，查询的会话可能正等待本会话持有的连接或锁
+      load.followers.decrementAndGet();
+      return loader.load();
+    }
+    final Throwable failure = load.failure;
+    if (failure instanceof SQLException) {
+      final SQLException cause = (SQLException) failure;
+      throw new SQLException("Query run by another session failed: " + cause.getMessage(), cause.getSQLState(), cause.getErrorCode(), cause);
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    } else if (failure != null) {
+      throw new ExecutorException("Query run by another session failed.  Cause: " + failure, failure);
+    }
+    final byte[] result = load.result;
+    if (result == null) {
+      // 结果不可序列化，或本会话在查询结束时才加入
+      return loader.load();
+    }
+    return serializer.deserialize(result);
+  }
+
+  private ConcurrentMap<CacheKey, Load> getCacheLoads(String cacheId) {
+    ConcurrentMap<CacheKey, Load> cacheLoads = loads.get(cacheId);
+    if (cacheLoads == null) {
+      cacheLoads = new ConcurrentHashMap<CacheKey, Load>();
+      final ConcurrentMap<CacheKey, Load> previous = loads.putIfAbsent(cacheId, cacheLoads);
+      if (previous != null) {
+        cacheLoads = previous;
+      }
+    }
+    return cacheLoads;
+  }
+
+  private static final class Load {
+    private final Thread thread = Thread.currentThread();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicInteger followers = new AtomicInteger();
+    private volatile byte[] result;
+    private volatile Throwable failure;
+  }
+
+}
@@ -20,7 +20,9 @@ import java.util.List;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.CacheTagVersions;
 import org.apache.ibatis.cache.TransactionalCacheManager;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
@@ -28,6 +30,8 @@ import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.ParameterMode;
 import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.LocalCacheStatistics;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
@@ -73,13 +77,21 @@ public class CachingExecutor implements Executor {
   @Override
   public int update(MappedStatement ms, Object parameterObject) throws SQLException {
     // 尝试清理二级缓存
-    flushCacheIfRequired(ms);
+    if (ms.getConfiguration().isCacheTagInvalidationEnabled()) {
+      invalidateCacheIfRequired(ms, parameterObject);
+    } else {
+      flushCacheIfRequired(ms);
+    }
     // 委托其他执行器处理
     return delegate.update(ms, parameterObject);
   }
 
   @Override
   public <E> List<E> query(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler) throws SQLException {
+    if (ms.getCache() == null) {
+      // 没有二级缓存，是否需要缓存键由被委托的执行器决定
+      return delegate.<E> query(ms, parameterObject, rowBounds, resultHandler);
+    }
     BoundSql boundSql = ms.getBoundSql(parameterObject);
     CacheKey key = createCacheKey(ms, parameterObject, rowBounds, boundSql);
     return query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
@@ -99,11 +111,27 @@ public class CachingExecutor implements Executor {
       flushCacheIfRequired(ms);
       if (ms.isUseCache() && resultHandler == null) {
         ensureNoOutParams(ms, boundSql);
+        CacheKey cacheKey = key;
+        Configuration configuration = ms.getConfiguration();
+        if (configuration.isCacheTagInvalidationEnabled()) {
+          CacheTagVersions tagVersions = configuration.getCacheTagVersions();
+          String[] tags = tagVersions.getTags(ms, boundSql);
+          if (tcm.isInvalidated(cache, tags)) {
+            // 本会话修改过这些表，缓存的结果已过期
+            return delegate.<E> query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
+          }
+          cacheKey = tagVersions.versionedKey(key, tags);
+        }
         @SuppressWarnings("unchecked")
-        List<E> list = (List<E>) tcm.getObject(cache, key);
+        List<E> list = (List<E>) tcm.getObject(cache, cacheKey);
         if (list == null) {
-          list = delegate.<E> query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
-          tcm.putObject(cache, key, list); // issue #578 and #116
+          CacheMetrics metrics = configuration.isCacheMetricsEnabled() ? configuration.getCacheMetricsRegistry().getMetrics(cache.getId()) : null;
+          long start = metrics != null ? System.nanoTime() : 0;
+          list = queryCoalesced(ms, parameterObject, rowBounds, key, cacheKey, boundSql, cache);
+          if (metrics != null) {
+            metrics.recordLoad(System.nanoTime() - start);
+          }
+          tcm.putObject(cache, cacheKey, list); // issue #578 and #116
         }
         return list;
       }
@@ -111,6 +139,24 @@ public class CachingExecutor implements Executor {
     return delegate.<E> query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
   }
 
+  private <E> List<E> queryCoalesced(final MappedStatement ms, final Object parameterObject, final RowBounds rowBounds, final CacheKey key, CacheKey cacheKey,
+      final BoundSql boundSql, Cache cache) throws SQLException {
+    Configuration configuration = ms.getConfiguration();
+    // 本会话修改过缓存的数据时，其查询结果可能包含未提交的数据，不能与其他会话共享
+    if (!configuration.isCacheLoadCoalescingEnabled() || tcm.isClearOnCommit(cache)) {
+      return delegate.<E> query(ms, parameterObject, rowBounds, Executor.NO_RESULT_HANDLER, key, boundSql);
+    }
+    @SuppressWarnings("unchecked")
+    List<E> list = (List<E>) configuration.getCacheLoadCoalescer().load(cache, cacheKey, configuration.getCacheSerializer(),
+        configuration.getCacheLoadCoalescingTimeout(), new CacheLoadCoalescer.Loader() {
+      @Override
+      public Object load() throws SQLException {
+        return delegate.<E> query(ms, parameterObject, rowBounds, Executor.NO_RESULT_HANDLER, key, boundSql);
+      }
+    });
+    return list;
+  }
+
   @Override
   public List<BatchResult> flushStatements() throws SQLException {
     return delegate.flushStatements();
@@ -163,6 +209,11 @@ public class CachingExecutor implements Executor {
     delegate.clearLocalCache();
   }
 
+  @Override
+  public LocalCacheStatistics getLocalCacheStatistics() {
+    return delegate.getLocalCacheStatistics();
+  }
+
   private void flushCacheIfRequired(MappedStatement ms) {
     // 获取缓存
     Cache cache = ms.getCache();
@@ -172,6 +223,19 @@ public class CachingExecutor implements Executor {
     }
   }
 
+  private void invalidateCacheIfRequired(MappedStatement ms, Object parameterObject) {
+    Cache cache = ms.getCache();
+    if (cache != null && ms.isFlushCacheRequired()) {
+      CacheTagVersions tagVersions = ms.getConfiguration().getCacheTagVersions();
+      String[] tags = ms.getCacheTags() != null ? ms.getCacheTags() : tagVersions.getTags(ms, ms.getBoundSql(parameterObject));
+      if (tags == null) {
+        tcm.clear(cache);
+      } else {
+        tcm.invalidate(cache, tagVersions, tags);
+      }
+    }
+  }
+
   @Override
   public void setExecutorWrapper(Executor executor) {
     throw new UnsupportedOperationException("This method should not be called");
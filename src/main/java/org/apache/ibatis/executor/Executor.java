@@ -23,6 +23,7 @@ import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.LocalCacheStatistics;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
@@ -54,6 +55,13 @@ public interface Executor {
 
   void clearLocalCache();
 
+  /**
+   * Executors without a local cache report zeroed counters.
+   */
+  default LocalCacheStatistics getLocalCacheStatistics() {
+    return new LocalCacheStatistics(0, 0, 0, 0);
+  }
+
   void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType);
 
   Transaction getTransaction();
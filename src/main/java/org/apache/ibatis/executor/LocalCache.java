@@ -0,0 +1,115 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.cache.impl.PerpetualCache;
+
+/**
+ * The local (first level) cache of a session, kept under {@code localCacheSize} entries and
+ * {@code localCacheMaxRows} rows by evicting the least recently used entries, when these settings are set.
+ * <p>
+ * Entries are only evicted by {@link #trim()}, called once the outermost query completed, so that the
+ * entries a query and its nested queries rely on stay in the cache until then.
+ */
+final class LocalCache extends PerpetualCache {
+
+  private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, .75F, true);
+  private final int maxSize;
+  private final int maxRows;
+  private long rows;
+  private long evictions;
+
+  /**
+   * @param maxSize maximum number of entries, unbounded when zero or less
+   * @param maxRows maximum number of rows of all entries, unbounded when zero or less
+   */
+  LocalCache(String id, int maxSize, int maxRows) {
+    super(id);
+    this.maxSize = maxSize;
+    this.maxRows = maxRows;
+  }
+
+  @Override
+  public int getSize() {
+    return entries.size();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    final Entry entry = new Entry(value);
+    final Entry previous = entries.put(key, entry);
+    rows += entry.rows - (previous == null ? 0 : previous.rows);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    final Entry entry = entries.get(key);
+    return entry == null ? null : entry.value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    final Entry entry = entries.remove(key);
+    if (entry == null) {
+      return null;
+    }
+    rows -= entry.rows;
+    return entry.value;
+  }
+
+  @Override
+  public void clear() {
+    entries.clear();
+    rows = 0;
+  }
+
+  void trim() {
+    if ((maxSize <= 0 || entries.size() <= maxSize) && (maxRows <= 0 || rows <= maxRows)) {
+      return;
+    }
+    final Iterator<Map.Entry<Object, Entry>> iterator = entries.entrySet().iterator();
+    while (iterator.hasNext() && ((maxSize > 0 && entries.size() > maxSize) || (maxRows > 0 && rows > maxRows))) {
+      final Entry entry = iterator.next().getValue();
+      if (entry.value == ExecutionPlaceholder.EXECUTION_PLACEHOLDER) {
+        continue;
+      }
+      iterator.remove();
+      rows -= entry.rows;
+      evictions++;
+    }
+  }
+
+  long getEvictions() {
+    return evictions;
+  }
+
+  private static final class Entry {
+    private final Object value;
+    // 放入时的行数，结果列表之后可能被调用方修改
+    private final int rows;
+
+    Entry(Object value) {
+      this.value = value;
+      this.rows = value instanceof List ? ((List<?>) value).size() : 1;
+    }
+  }
+
+}
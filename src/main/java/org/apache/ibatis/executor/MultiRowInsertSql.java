@@ -0,0 +1,111 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An {@code INSERT ... VALUES (...)} statement split into the part before the row tuple and the tuple,
+ * so that it can be repeated into a multi-row {@code INSERT ... VALUES (...), (...)} statement.
+ */
+final class MultiRowInsertSql {
+
+  private static final Pattern INSERT = Pattern.compile("^\\s*insert\\s", Pattern.CASE_INSENSITIVE);
+  private static final Pattern VALUES = Pattern.compile("[\\s)]values\\s*\\(", Pattern.CASE_INSENSITIVE);
+  private static final Pattern SELECT = Pattern.compile("\\sselect\\s", Pattern.CASE_INSENSITIVE);
+
+  private final String prefix;
+  private final String tuple;
+  private String lastSql;
+  private int lastRows;
+
+  private MultiRowInsertSql(String prefix, String tuple) {
+    this.prefix = prefix;
+    this.tuple = tuple;
+  }
+
+  /**
+   * Returns null unless the statement inserts a single VALUES tuple holding all of its placeholders
+   * and nothing follows that tuple.
+   */
+  static MultiRowInsertSql parse(String sql) {
+    if (!INSERT.matcher(sql).find()) {
+      return null;
+    }
+    final Matcher values = VALUES.matcher(sql);
+    if (!values.find()) {
+      return null;
+    }
+    final int open = values.end() - 1;
+    final String prefix = sql.substring(0, open);
+    if (!isOutsideLiterals(prefix) || prefix.indexOf('?') >= 0 || SELECT.matcher(prefix).find()) {
+      return null;
+    }
+    final int close = findClosingParenthesis(sql, open);
+    if (close < 0) {
+      return null;
+    }
+    int end = sql.length();
+    while (end > close + 1 && (Character.isWhitespace(sql.charAt(end - 1)) || sql.charAt(end - 1) == ';')) {
+      end--;
+    }
+    if (end != close + 1) {
+      // ON DUPLICATE KEY UPDATE, RETURNING, a second tuple...
+      return null;
+    }
+    return new MultiRowInsertSql(prefix, sql.substring(open, close + 1));
+  }
+
+  String getSql(int rows) {
+    if (rows == lastRows) {
+      return lastSql;
+    }
+    final StringBuilder sql = new StringBuilder(prefix.length() + rows * (tuple.length() + 2));
+    sql.append(prefix).append(tuple);
+    for (int i = 1; i < rows; i++) {
+      sql.append(", ").append(tuple);
+    }
+    lastRows = rows;
+    lastSql = sql.toString();
+    return lastSql;
+  }
+
+  private static boolean isOutsideLiterals(String sql) {
+    return findClosingParenthesis("(" + sql + ")", 0) == sql.length() + 1;
+  }
+
+  private static int findClosingParenthesis(String sql, int open) {
+    int depth = 0;
+    char quote = 0;
+    for (int i = open; i < sql.length(); i++) {
+      final char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"' || c == '`') {
+        quote = c;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')' && --depth == 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+}
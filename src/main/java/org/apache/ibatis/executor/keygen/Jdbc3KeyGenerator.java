@@ -19,15 +19,16 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.ibatis.binding.BindingException;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.executor.keygen.KeyAssignerCache.KeyAssigner;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.Configuration;
@@ -67,11 +68,24 @@ public class Jdbc3KeyGenerator implements KeyGenerator {
       final ResultSetMetaData rsmd = rs.getMetaData();
       TypeHandler<?>[] typeHandlers = null;
       if (keyProperties != null && rsmd.getColumnCount() >= keyProperties.length) {
+        final JdbcType[] jdbcTypes = getJdbcTypes(rsmd, keyProperties.length);
+        final Object[] args = new Object[1];
+        Class<?> assignerType = null;
+        KeyAssigner assigner = null;
         for (Object parameter : parameters) {
           // there should be one row for each statement (also one for each parameter)
           if (!rs.next()) {
             break;
           }
+          if (parameter != null && parameter.getClass() != assignerType) {
+            assignerType = parameter.getClass();
+            assigner = configuration.getKeyAssignerCache().getKeyAssigner(ms, assignerType, jdbcTypes);
+          }
+          if (parameter != null && assigner != null) {
+            // 缓存的setter与TypeHandler，不再为每行创建MetaObject
+            assigner.assign(rs, parameter, args);
+            continue;
+          }
           final MetaObject metaParam = configuration.newMetaObject(parameter);
           if (typeHandlers == null) {
             typeHandlers = getTypeHandlers(typeHandlerRegistry, metaParam, keyProperties, rsmd);
@@ -107,12 +121,19 @@ public class Jdbc3KeyGenerator implements KeyGenerator {
       }
     }
     if (parameters == null) {
-      parameters = new ArrayList<Object>();
-      parameters.add(parameter);
+      parameters = Collections.singletonList(parameter);
     }
     return parameters;
   }
 
+  private JdbcType[] getJdbcTypes(ResultSetMetaData rsmd, int columnCount) throws SQLException {
+    final JdbcType[] jdbcTypes = new JdbcType[columnCount];
+    for (int i = 0; i < columnCount; i++) {
+      jdbcTypes[i] = JdbcType.forCode(rsmd.getColumnType(i + 1));
+    }
+    return jdbcTypes;
+  }
+
   private TypeHandler<?>[] getTypeHandlers(TypeHandlerRegistry typeHandlerRegistry, MetaObject metaParam, String[] keyProperties, ResultSetMetaData rsmd) throws SQLException {
     TypeHandler<?>[] typeHandlers = new TypeHandler<?>[keyProperties.length];
     for (int i = 0; i < keyProperties.length; i++) {
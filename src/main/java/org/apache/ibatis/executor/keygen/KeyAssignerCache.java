@@ -0,0 +1,135 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.keygen;
+
+import java.lang.reflect.InvocationTargetException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.reflection.wrapper.DefaultObjectWrapperFactory;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * Keeps, per mapped statement and parameter class, the setters and type handlers that
+ * {@link Jdbc3KeyGenerator} uses to assign generated keys, so that no {@code MetaObject}
+ * is created nor type handler resolved for each inserted row.
+ * <p>
+ * Only key properties that are plain bean properties are assigned this way. Map, collection and array
+ * parameters, nested key properties and custom object wrappers keep going through {@code MetaObject}.
+ */
+public class KeyAssignerCache {
+
+  private static final KeyAssigner UNSUPPORTED = new KeyAssigner(null, null, null);
+
+  private final ConcurrentMap<String, ConcurrentMap<Class<?>, KeyAssigner>> assigners = new ConcurrentHashMap<String, ConcurrentMap<Class<?>, KeyAssigner>>();
+
+  /**
+   * Returns null when the keys must be assigned through {@code MetaObject}.
+   *
+   * @param jdbcTypes the types of the generated key columns, one per key property
+   */
+  KeyAssigner getKeyAssigner(MappedStatement ms, Class<?> parameterType, JdbcType[] jdbcTypes) {
+    ConcurrentMap<Class<?>, KeyAssigner> statementAssigners = assigners.get(ms.getId());
+    if (statementAssigners == null) {
+      statementAssigners = new ConcurrentHashMap<Class<?>, KeyAssigner>();
+      final ConcurrentMap<Class<?>, KeyAssigner> previous = assigners.putIfAbsent(ms.getId(), statementAssigners);
+      if (previous != null) {
+        statementAssigners = previous;
+      }
+    }
+    KeyAssigner assigner = statementAssigners.get(parameterType);
+    if (assigner == null || (assigner != UNSUPPORTED && !Arrays.equals(assigner.jdbcTypes, jdbcTypes))) {
+      assigner = createKeyAssigner(ms.getConfiguration(), parameterType, ms.getKeyProperties(), jdbcTypes);
+      statementAssigners.put(parameterType, assigner);
+    }
+    return assigner == UNSUPPORTED ? null : assigner;
+  }
+
+  public int size() {
+    int size = 0;
+    for (Map<Class<?>, KeyAssigner> statementAssigners : assigners.values()) {
+      size += statementAssigners.size();
+    }
+    return size;
+  }
+
+  public void clear() {
+    assigners.clear();
+  }
+
+  private KeyAssigner createKeyAssigner(Configuration configuration, Class<?> parameterType, String[] keyProperties, JdbcType[] jdbcTypes) {
+    if (!DefaultObjectWrapperFactory.class.equals(configuration.getObjectWrapperFactory().getClass())
+        || Map.class.isAssignableFrom(parameterType)
+        || Collection.class.isAssignableFrom(parameterType)
+        || parameterType.isArray()) {
+      return UNSUPPORTED;
+    }
+    final Reflector reflector = configuration.getReflectorFactory().findForClass(parameterType);
+    final Invoker[] setters = new Invoker[keyProperties.length];
+    final TypeHandler<?>[] typeHandlers = new TypeHandler<?>[keyProperties.length];
+    for (int i = 0; i < keyProperties.length; i++) {
+      final String property = keyProperties[i];
+      if (property.indexOf('.') >= 0 || property.indexOf('[') >= 0) {
+        return UNSUPPORTED;
+      }
+      if (reflector.hasSetter(property)) {
+        setters[i] = reflector.getSetInvoker(property);
+        typeHandlers[i] = configuration.getTypeHandlerRegistry().getTypeHandler(reflector.getSetterType(property), jdbcTypes[i]);
+      }
+    }
+    return new KeyAssigner(jdbcTypes, setters, typeHandlers);
+  }
+
+  /**
+   * Sets the generated keys of the current row of the key result set to a parameter object.
+   * Keys without a setter or a type handler are skipped.
+   */
+  static final class KeyAssigner {
+    private final JdbcType[] jdbcTypes;
+    private final Invoker[] setters;
+    private final TypeHandler<?>[] typeHandlers;
+
+    KeyAssigner(JdbcType[] jdbcTypes, Invoker[] setters, TypeHandler<?>[] typeHandlers) {
+      this.jdbcTypes = jdbcTypes;
+      this.setters = setters;
+      this.typeHandlers = typeHandlers;
+    }
+
+    /**
+     * @param args a reusable array of one element
+     */
+    void assign(ResultSet rs, Object parameter, Object[] args) throws SQLException, IllegalAccessException, InvocationTargetException {
+      for (int i = 0; i < setters.length; i++) {
+        if (setters[i] != null && typeHandlers[i] != null) {
+          args[0] = typeHandlers[i].getResult(rs, i + 1);
+          setters[i].invoke(parameter, args);
+        }
+      }
+      args[0] = null;
+    }
+  }
+
+}
@@ -0,0 +1,154 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.result;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.ibatis.executor.ExecutorException;
+
+/**
+ * Result of a select whose result type is {@code ColumnarResult} (alias {@code columnar}):
+ * the whole result set stored column by column instead of one object per row.
+ * <p>
+ * Integral and floating point columns are kept in primitive arrays, character columns are
+ * dictionary encoded (each distinct value is stored once and rows hold its code), any other
+ * column holds the values read by its {@link org.apache.ibatis.type.TypeHandler}.
+ * Columns are looked up by label, ignoring case.
+ */
+public class ColumnarResult implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  public enum ColumnType {
+    LONG, INT, DOUBLE, STRING, OBJECT
+  }
+
+  private final int rowCount;
+  private final List<String> columnNames;
+  private final ColumnType[] columnTypes;
+  private final Object[] values;
+  private final String[][] dictionaries;
+  private final BitSet[] nulls;
+  private final Map<String, Integer> columnIndexes = new HashMap<String, Integer>();
+
+  /**
+   * @param values one array per column, {@code long[]}, {@code int[]}, {@code double[]}, {@code int[]} of
+   *          dictionary codes or {@code Object[]} depending on the column type, holding rowCount elements
+   * @param dictionaries the dictionary of each STRING column, null for the other columns
+   * @param nulls the rows holding SQL NULL in each column, null when the column has none
+   */
+  public ColumnarResult(int rowCount, List<String> columnNames, ColumnType[] columnTypes, Object[] values, String[][] dictionaries, BitSet[] nulls) {
+    this.rowCount = rowCount;
+    this.columnNames = Collections.unmodifiableList(columnNames);
+    this.columnTypes = columnTypes;
+    this.values = values;
+    this.dictionaries = dictionaries;
+    this.nulls = nulls;
+    for (int i = columnNames.size() - 1; i >= 0; i--) {
+      columnIndexes.put(columnNames.get(i).toUpperCase(Locale.ENGLISH), i);
+    }
+  }
+
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  public List<String> getColumnNames() {
+    return columnNames;
+  }
+
+  public int getColumnIndex(String columnName) {
+    final Integer index = columnIndexes.get(columnName.toUpperCase(Locale.ENGLISH));
+    if (index == null) {
+      throw new ExecutorException("Column '" + columnName + "' was not found in the result. Available columns are " + columnNames);
+    }
+    return index;
+  }
+
+  public ColumnType getColumnType(String columnName) {
+    return columnTypes[getColumnIndex(columnName)];
+  }
+
+  public boolean isNull(String columnName, int row) {
+    final BitSet columnNulls = nulls[getColumnIndex(columnName)];
+    return columnNulls != null && columnNulls.get(row);
+  }
+
+  /**
+   * Values of a LONG column, SQL NULL is stored as 0.
+   */
+  public long[] getLongs(String columnName) {
+    return (long[]) getValues(columnName, ColumnType.LONG);
+  }
+
+  /**
+   * Values of an INT column, SQL NULL is stored as 0.
+   */
+  public int[] getInts(String columnName) {
+    return (int[]) getValues(columnName, ColumnType.INT);
+  }
+
+  /**
+   * Values of a DOUBLE column, SQL NULL is stored as 0.
+   */
+  public double[] getDoubles(String columnName) {
+    return (double[]) getValues(columnName, ColumnType.DOUBLE);
+  }
+
+  /**
+   * Dictionary codes of a STRING column, indexes into {@link #getDictionary(String)} or -1 for SQL NULL.
+   */
+  public int[] getCodes(String columnName) {
+    return (int[]) getValues(columnName, ColumnType.STRING);
+  }
+
+  public String[] getDictionary(String columnName) {
+    getValues(columnName, ColumnType.STRING);
+    return dictionaries[getColumnIndex(columnName)];
+  }
+
+  /**
+   * Decoded values of a STRING column. Rows share the dictionary's String instances.
+   */
+  public String[] getStrings(String columnName) {
+    final int[] codes = getCodes(columnName);
+    final String[] dictionary = getDictionary(columnName);
+    final String[] strings = new String[rowCount];
+    for (int i = 0; i < rowCount; i++) {
+      strings[i] = codes[i] < 0 ? null : dictionary[codes[i]];
+    }
+    return strings;
+  }
+
+  public Object[] getObjects(String columnName) {
+    return (Object[]) getValues(columnName, ColumnType.OBJECT);
+  }
+
+  private Object getValues(String columnName, ColumnType expectedType) {
+    final int index = getColumnIndex(columnName);
+    if (columnTypes[index] != expectedType) {
+      throw new ExecutorException("Column '" + columnName + "' is a " + columnTypes[index] + " column, not a " + expectedType + " column.");
+    }
+    return values[index];
+  }
+
+}
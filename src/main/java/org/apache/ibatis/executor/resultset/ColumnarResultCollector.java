@@ -0,0 +1,210 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.executor.result.ColumnarResult;
+import org.apache.ibatis.executor.result.ColumnarResult.ColumnType;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * Reads the rows of a result set into the column arrays of a {@link ColumnarResult}.
+ * Numeric columns are read with the primitive getters of the {@link ResultSet}, so no value is boxed.
+ */
+final class ColumnarResultCollector {
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  private final List<String> columnNames;
+  private final ColumnType[] columnTypes;
+  private final TypeHandler<?>[] typeHandlers;
+  private final Object[] values;
+  private final BitSet[] nulls;
+  private final List<Map<String, Integer>> dictionaryCodes;
+  private int capacity = INITIAL_CAPACITY;
+  private int rowCount;
+
+  ColumnarResultCollector(ResultSetWrapper rsw) {
+    this.columnNames = rsw.getColumnNames();
+    final int columnCount = columnNames.size();
+    this.columnTypes = new ColumnType[columnCount];
+    this.typeHandlers = new TypeHandler<?>[columnCount];
+    this.values = new Object[columnCount];
+    this.nulls = new BitSet[columnCount];
+    this.dictionaryCodes = new ArrayList<Map<String, Integer>>(columnCount);
+    for (int i = 0; i < columnCount; i++) {
+      final String columnName = columnNames.get(i);
+      final ColumnType columnType = columnType(rsw.getJdbcType(columnName));
+      columnTypes[i] = columnType;
+      values[i] = newArray(columnType, capacity);
+      if (columnType == ColumnType.STRING) {
+        typeHandlers[i] = rsw.getTypeHandler(String.class, columnName);
+        dictionaryCodes.add(new HashMap<String, Integer>());
+      } else {
+        if (columnType == ColumnType.OBJECT) {
+          typeHandlers[i] = rsw.getTypeHandler(Object.class, columnName);
+        }
+        dictionaryCodes.add(null);
+      }
+    }
+  }
+
+  void addRow(ResultSet rs) throws SQLException {
+    if (rowCount == capacity) {
+      grow();
+    }
+    for (int i = 0; i < columnTypes.length; i++) {
+      final int columnIndex = i + 1;
+      switch (columnTypes[i]) {
+        case LONG:
+          ((long[]) values[i])[rowCount] = rs.getLong(columnIndex);
+          checkNull(rs, i);
+          break;
+        case INT:
+          ((int[]) values[i])[rowCount] = rs.getInt(columnIndex);
+          checkNull(rs, i);
+          break;
+        case DOUBLE:
+          ((double[]) values[i])[rowCount] = rs.getDouble(columnIndex);
+          checkNull(rs, i);
+          break;
+        case STRING:
+          ((int[]) values[i])[rowCount] = encode(i, (String) typeHandlers[i].getResult(rs, columnIndex));
+          break;
+        default:
+          final Object value = typeHandlers[i].getResult(rs, columnIndex);
+          ((Object[]) values[i])[rowCount] = value;
+          if (value == null) {
+            markNull(i);
+          }
+      }
+    }
+    rowCount++;
+  }
+
+  ColumnarResult build() {
+    final Object[] columns = new Object[columnTypes.length];
+    final String[][] dictionaries = new String[columnTypes.length][];
+    for (int i = 0; i < columnTypes.length; i++) {
+      columns[i] = copyOf(values[i], rowCount);
+      final Map<String, Integer> codes = dictionaryCodes.get(i);
+      if (codes != null) {
+        final String[] dictionary = new String[codes.size()];
+        for (Map.Entry<String, Integer> entry : codes.entrySet()) {
+          dictionary[entry.getValue()] = entry.getKey();
+        }
+        dictionaries[i] = dictionary;
+      }
+    }
+    return new ColumnarResult(rowCount, new ArrayList<String>(columnNames), columnTypes, columns, dictionaries, nulls);
+  }
+
+  private int encode(int column, String value) {
+    if (value == null) {
+      markNull(column);
+      return -1;
+    }
+    final Map<String, Integer> codes = dictionaryCodes.get(column);
+    Integer code = codes.get(value);
+    if (code == null) {
+      code = codes.size();
+      codes.put(value, code);
+    }
+    return code;
+  }
+
+  private void checkNull(ResultSet rs, int column) throws SQLException {
+    if (rs.wasNull()) {
+      markNull(column);
+    }
+  }
+
+  private void markNull(int column) {
+    if (nulls[column] == null) {
+      nulls[column] = new BitSet();
+    }
+    nulls[column].set(rowCount);
+  }
+
+  private void grow() {
+    capacity = capacity * 2;
+    for (int i = 0; i < values.length; i++) {
+      values[i] = copyOf(values[i], capacity);
+    }
+  }
+
+  private static Object copyOf(Object array, int length) {
+    if (array instanceof long[]) {
+      return Arrays.copyOf((long[]) array, length);
+    } else if (array instanceof int[]) {
+      return Arrays.copyOf((int[]) array, length);
+    } else if (array instanceof double[]) {
+      return Arrays.copyOf((double[]) array, length);
+    }
+    return Arrays.copyOf((Object[]) array, length);
+  }
+
+  private static Object newArray(ColumnType columnType, int length) {
+    switch (columnType) {
+      case LONG:
+        return new long[length];
+      case INT:
+      case STRING:
+        return new int[length];
+      case DOUBLE:
+        return new double[length];
+      default:
+        return new Object[length];
+    }
+  }
+
+  private static ColumnType columnType(JdbcType jdbcType) {
+    if (jdbcType == null) {
+      return ColumnType.OBJECT;
+    }
+    switch (jdbcType) {
+      case BIGINT:
+        return ColumnType.LONG;
+      case INTEGER:
+      case SMALLINT:
+      case TINYINT:
+        return ColumnType.INT;
+      case DOUBLE:
+      case FLOAT:
+      case REAL:
+        return ColumnType.DOUBLE;
+      case CHAR:
+      case VARCHAR:
+      case LONGVARCHAR:
+      case NCHAR:
+      case NVARCHAR:
+      case LONGNVARCHAR:
+        return ColumnType.STRING;
+      default:
+        return ColumnType.OBJECT;
+    }
+  }
+
+}
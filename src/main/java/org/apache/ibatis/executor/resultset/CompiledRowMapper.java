@@ -0,0 +1,48 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * Base class of the row mappers generated by {@link RowMapperCompiler}.
+ * A subclass is bound to one result map and one result set column layout,
+ * so columns are read by index and properties are set by direct setter calls.
+ */
+public abstract class CompiledRowMapper {
+
+  protected TypeHandler<?>[] typeHandlers;
+
+  void setTypeHandlers(TypeHandler<?>[] typeHandlers) {
+    this.typeHandlers = typeHandlers;
+  }
+
+  /**
+   * Instantiates the result object through its public default constructor.
+   */
+  public abstract Object createResultObject();
+
+  /**
+   * Copies the current row of the result set into the result object.
+   *
+   * @return true if at least one non null value was found
+   */
+  public abstract boolean applyMappings(ResultSet rs, Object resultObject) throws SQLException;
+
+}
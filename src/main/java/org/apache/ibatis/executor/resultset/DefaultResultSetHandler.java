@@ -20,12 +20,14 @@ import org.apache.ibatis.binding.MapperMethod.ParamMap;
 import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.cursor.defaults.DefaultCursor;
+import org.apache.ibatis.cursor.defaults.PrefetchingCursor;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
 import org.apache.ibatis.executor.loader.ResultLoader;
 import org.apache.ibatis.executor.loader.ResultLoaderMap;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.executor.result.ColumnarResult;
 import org.apache.ibatis.executor.result.DefaultResultContext;
 import org.apache.ibatis.executor.result.DefaultResultHandler;
 import org.apache.ibatis.executor.result.ResultMapException;
@@ -38,13 +40,19 @@ import org.apache.ibatis.mapping.ResultMap;
 import org.apache.ibatis.mapping.ResultMapping;
 import org.apache.ibatis.reflection.MetaClass;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.ReflectionException;
 import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.factory.DefaultObjectFactory;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.type.ByteTypeHandler;
+import org.apache.ibatis.type.IntegerTypeHandler;
+import org.apache.ibatis.type.LongTypeHandler;
+import org.apache.ibatis.type.ShortTypeHandler;
 import org.apache.ibatis.type.TypeHandler;
 import org.apache.ibatis.type.TypeHandlerRegistry;
 
@@ -56,10 +64,14 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * @author Clinton Begin
@@ -83,9 +95,12 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   private final ReflectorFactory reflectorFactory;
 
   // nested resultmaps
-  private final Map<CacheKey, Object> nestedResultObjects = new HashMap<CacheKey, Object>();
+  private final Map<NestedRowKey, Object> nestedResultObjects = new HashMap<NestedRowKey, Object>();
   private final Map<String, Object> ancestorObjects = new HashMap<String, Object>();
   private Object previousRowValue;
+  // reusable row keys, one per nesting level
+  private final List<NestedRowKey> rowKeyProbes = new ArrayList<NestedRowKey>();
+  private int nestingLevel;
 
   // multiple resultsets
   private final Map<String, ResultMapping> nextResultMaps = new HashMap<String, ResultMapping>();
@@ -242,7 +257,12 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     }
 
     ResultMap resultMap = resultMaps.get(0);
-    return new DefaultCursor<E>(this, resultMap, rsw, rowBounds);
+    Cursor<E> cursor = new DefaultCursor<E>(this, resultMap, rsw, rowBounds);
+    // 开启预取时，由后台线程提前读取并映射数据行
+    if (configuration.getCursorPrefetchSize() > 0) {
+      cursor = new PrefetchingCursor<E>(cursor, configuration.getCursorPrefetchExecutor(), configuration.getCursorPrefetchSize(), rowBounds);
+    }
+    return cursor;
   }
 
   private ResultSetWrapper getFirstResultSet(Statement stmt) throws SQLException {
@@ -259,7 +279,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         }
       }
     }
-    return rs != null ? new ResultSetWrapper(rs, configuration) : null;
+    return rs != null ? new ResultSetWrapper(rs, configuration, mappedStatement.getId()) : null;
   }
 
   private ResultSetWrapper getNextResultSet(Statement stmt) throws SQLException {
@@ -272,7 +292,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
           if (rs == null) {
             return getNextResultSet(stmt);
           } else {
-            return new ResultSetWrapper(rs, configuration);
+            return new ResultSetWrapper(rs, configuration, mappedStatement.getId());
           }
         }
       }
@@ -307,6 +327,9 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     try {
       if (parentMapping != null) {
         handleRowValues(rsw, resultMap, null, RowBounds.DEFAULT, parentMapping);
+      } else if (resultMap.getType() == ColumnarResult.class) {
+        // 列式结果：整个结果集映射为一个ColumnarResult对象
+        handleColumnarResult(rsw, multipleResults);
       } else {
         // 默认实现
         if (resultHandler == null) {
@@ -326,6 +349,26 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     }
   }
 
+  @SuppressWarnings("unchecked")
+  private void handleColumnarResult(ResultSetWrapper rsw, List<Object> multipleResults) throws SQLException {
+    final ColumnarResultCollector collector = new ColumnarResultCollector(rsw);
+    final ResultSet rs = rsw.getResultSet();
+    skipRows(rs, rowBounds);
+    int rowCount = 0;
+    while (rowCount < rowBounds.getLimit() && rs.next()) {
+      collector.addRow(rs);
+      rowCount++;
+    }
+    final ColumnarResult columnarResult = collector.build();
+    if (resultHandler == null) {
+      final List<Object> resultList = objectFactory.create(List.class);
+      resultList.add(columnarResult);
+      multipleResults.add(resultList);
+    } else {
+      callResultHandler(resultHandler, new DefaultResultContext<Object>(), columnarResult);
+    }
+  }
+
   @SuppressWarnings("unchecked")
   private List<Object> collapseSingleResultList(List<Object> multipleResults) {
     return multipleResults.size() == 1 ? (List<Object>) multipleResults.get(0) : multipleResults;
@@ -366,13 +409,27 @@ public class DefaultResultSetHandler implements ResultSetHandler {
 
   private void handleRowValuesForSimpleResultMap(ResultSetWrapper rsw, ResultMap resultMap, ResultHandler<?> resultHandler, RowBounds rowBounds, ResultMapping parentMapping)
       throws SQLException {
+    // 开启parallelMapping的语句：读取线程只负责取列值，对象的创建与赋值交给ForkJoin线程池
+    // 批量交付要求处理器收集全部结果，游标和自定义处理器可能在任一行后停止，仍逐行映射
+    if (parentMapping == null && mappedStatement.isParallelMapping() && resultHandler != null
+        && resultHandler.getClass() == DefaultResultHandler.class && hasOnlyColumnMappings(rsw, resultMap)) {
+      handleRowValuesInParallel(rsw, resultMap, resultHandler, rowBounds);
+      return;
+    }
     DefaultResultContext<Object> resultContext = new DefaultResultContext<Object>();
+    // 开启compiledRowMappersEnabled时，获取该ResultMap与列布局对应的编译映射器（不支持时为null）
+    final CompiledRowMapper rowMapper = getCompiledRowMapper(rsw, resultMap);
     skipRows(rsw.getResultSet(), rowBounds);
     while (shouldProcessMoreRows(resultContext, rowBounds) && rsw.getResultSet().next()) {
-      // 鉴别器处理结果集映射
-      ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(rsw.getResultSet(), resultMap, null);
-      // 核心，获取原始字段的值
-      Object rowValue = getRowValue(rsw, discriminatedResultMap);
+      final Object rowValue;
+      if (rowMapper != null) {
+        rowValue = getRowValue(rsw, rowMapper);
+      } else {
+        // 鉴别器处理结果集映射
+        ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(rsw.getResultSet(), resultMap, null);
+        // 核心，获取原始字段的值
+        rowValue = getRowValue(rsw, discriminatedResultMap);
+      }
       storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw.getResultSet());
     }
   }
@@ -433,6 +490,12 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return rowValue;
   }
 
+  private Object getRowValue(ResultSetWrapper rsw, CompiledRowMapper rowMapper) throws SQLException {
+    final Object rowValue = rowMapper.createResultObject();
+    final boolean foundValues = rowMapper.applyMappings(rsw.getResultSet(), rowValue);
+    return foundValues || configuration.isReturnInstanceForEmptyRow() ? rowValue : null;
+  }
+
   private boolean shouldApplyAutomaticMappings(ResultMap resultMap, boolean isNested) {
     if (resultMap.getAutoMapping() != null) {
       return resultMap.getAutoMapping();
@@ -578,6 +641,228 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return foundValues;
   }
 
+  //
+  // COMPILED ROW MAPPERS
+  //
+
+  private CompiledRowMapper getCompiledRowMapper(ResultSetWrapper rsw, ResultMap resultMap) throws SQLException {
+    if (!configuration.isCompiledRowMappersEnabled() || !isCompilable(rsw, resultMap)) {
+      return null;
+    }
+    final RowMapperCompiler compiler = configuration.getRowMapperCompiler();
+    final String layoutKey = RowMapperCompiler.layoutKey(resultMap, rsw);
+    final CompiledRowMapper rowMapper = compiler.getRowMapper(layoutKey);
+    if (rowMapper != null || compiler.isUnsupported(layoutKey) || compiler.isFull()) {
+      return rowMapper;
+    }
+    // 与applyAutomaticMappings、applyPropertyMappings的顺序及规则保持一致
+    final Class<?> resultType = resultMap.getType();
+    final List<RowMapperCompiler.ColumnMapping> columnMappings = new ArrayList<RowMapperCompiler.ColumnMapping>();
+    try {
+      final MetaClass metaType = MetaClass.forClass(resultType, reflectorFactory);
+      if (shouldApplyAutomaticMappings(resultMap, false)) {
+        final MetaObject metaObject = configuration.newMetaObject(objectFactory.create(resultType));
+        for (UnMappedColumnAutoMapping mapping : createAutomaticMappings(rsw, resultMap, metaObject, null)) {
+          columnMappings.add(new RowMapperCompiler.ColumnMapping(
+              getColumnIndex(rsw, mapping.column), mapping.property, metaType.getSetterType(mapping.property), mapping.typeHandler));
+        }
+      }
+      final List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, null);
+      for (ResultMapping propertyMapping : resultMap.getPropertyResultMappings()) {
+        final String column = propertyMapping.getColumn();
+        final String property = propertyMapping.getProperty();
+        if (column != null && property != null && mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH))) {
+          if (!metaType.hasSetter(property)) {
+            compiler.markUnsupported(layoutKey);
+            return null;
+          }
+          columnMappings.add(new RowMapperCompiler.ColumnMapping(
+              getColumnIndex(rsw, column), property, metaType.getSetterType(property), propertyMapping.getTypeHandler()));
+        }
+      }
+    } catch (ReflectionException e) {
+      // 无法编译的情况交给常规映射处理，不影响查询
+      compiler.markUnsupported(layoutKey);
+      return null;
+    }
+    return compiler.compile(layoutKey, resultType, columnMappings, configuration.isCallSettersOnNulls());
+  }
+
+  private boolean isCompilable(ResultSetWrapper rsw, ResultMap resultMap) {
+    // 只编译最简单的情况：只有列到属性的映射，且结果类型不是接口或Map、使用默认的对象工厂
+    return hasOnlyColumnMappings(rsw, resultMap)
+        && !resultMap.getType().isInterface()
+        && !Map.class.isAssignableFrom(resultMap.getType())
+        && objectFactory.getClass() == DefaultObjectFactory.class;
+  }
+
+  private boolean hasOnlyColumnMappings(ResultSetWrapper rsw, ResultMap resultMap) {
+    // 无鉴别器、无构造器映射、无嵌套、无延迟加载，每个属性的值只取决于当前行的一列
+    if (resultMap.getDiscriminator() != null
+        || resultMap.hasNestedResultMaps()
+        || resultMap.hasNestedQueries()
+        || !resultMap.getConstructorResultMappings().isEmpty()
+        || hasTypeHandlerForResultObject(rsw, resultMap.getType())) {
+      return false;
+    }
+    for (ResultMapping propertyMapping : resultMap.getPropertyResultMappings()) {
+      if (propertyMapping.isCompositeResult() || propertyMapping.getResultSet() != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int getColumnIndex(ResultSetWrapper rsw, String columnName) {
+    final List<String> columnNames = rsw.getColumnNames();
+    for (int i = 0; i < columnNames.size(); i++) {
+      if (columnNames.get(i).equalsIgnoreCase(columnName)) {
+        return i + 1;
+      }
+    }
+    throw new ExecutorException("Column '" + columnName + "' was not found in the result set.");
+  }
+  //
+  // PARALLEL MAPPING
+  //
+
+  private void handleRowValuesInParallel(ResultSetWrapper rsw, ResultMap resultMap, ResultHandler<?> resultHandler, RowBounds rowBounds)
+      throws SQLException {
+    final DefaultResultContext<Object> resultContext = new DefaultResultContext<Object>();
+    final List<BufferedColumn> columns = createBufferedColumns(rsw, resultMap);
+    final ForkJoinPool pool = configuration.getParallelMappingPool();
+    final int batchSize = configuration.getParallelMappingBatchSize();
+    // 限制已读取未交付的批次数，避免读取远快于映射时缓冲整个结果集
+    final int maxPendingBatches = Math.max(2, pool.getParallelism() * 2);
+    final LinkedList<ForkJoinTask<Object[]>> pendingBatches = new LinkedList<ForkJoinTask<Object[]>>();
+    final ResultSet rs = rsw.getResultSet();
+    skipRows(rs, rowBounds);
+    try {
+      int rowCount = 0;
+      Object[][] rows = new Object[batchSize][];
+      int size = 0;
+      // 交付滞后于读取，所以按已读取的行数而不是resultContext的计数来判断limit
+      while (rowCount < rowBounds.getLimit() && !resultContext.isStopped() && rs.next()) {
+        rows[size++] = readBufferedRow(rs, columns);
+        rowCount++;
+        if (size == batchSize) {
+          pendingBatches.add(pool.submit(new RowBatchMapping(resultMap.getType(), columns, rows, size)));
+          rows = new Object[batchSize][];
+          size = 0;
+          if (pendingBatches.size() >= maxPendingBatches) {
+            deliverRowBatch(pendingBatches.removeFirst().join(), resultHandler, resultContext);
+          }
+        }
+      }
+      if (size > 0 && !resultContext.isStopped()) {
+        pendingBatches.add(pool.submit(new RowBatchMapping(resultMap.getType(), columns, rows, size)));
+      }
+      // 按提交顺序交付，保持结果的原始顺序
+      while (!pendingBatches.isEmpty()) {
+        deliverRowBatch(pendingBatches.removeFirst().join(), resultHandler, resultContext);
+      }
+    } finally {
+      for (ForkJoinTask<Object[]> pendingBatch : pendingBatches) {
+        pendingBatch.cancel(false);
+      }
+    }
+  }
+
+  private List<BufferedColumn> createBufferedColumns(ResultSetWrapper rsw, ResultMap resultMap) throws SQLException {
+    // 与applyAutomaticMappings、applyPropertyMappings的顺序及规则保持一致
+    final MetaObject metaObject = configuration.newMetaObject(objectFactory.create(resultMap.getType()));
+    final List<BufferedColumn> columns = new ArrayList<BufferedColumn>();
+    if (shouldApplyAutomaticMappings(resultMap, false)) {
+      for (UnMappedColumnAutoMapping mapping : createAutomaticMappings(rsw, resultMap, metaObject, null)) {
+        columns.add(new BufferedColumn(getColumnIndex(rsw, mapping.column), mapping.property, mapping.typeHandler, mapping.primitive));
+      }
+    }
+    final List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, null);
+    for (ResultMapping propertyMapping : resultMap.getPropertyResultMappings()) {
+      final String column = propertyMapping.getColumn();
+      final String property = propertyMapping.getProperty();
+      if (column != null && property != null && mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH))) {
+        final boolean primitive = configuration.isCallSettersOnNulls() && metaObject.getSetterType(property).isPrimitive();
+        columns.add(new BufferedColumn(getColumnIndex(rsw, column), property, propertyMapping.getTypeHandler(), primitive));
+      }
+    }
+    return columns;
+  }
+
+  private Object[] readBufferedRow(ResultSet rs, List<BufferedColumn> columns) throws SQLException {
+    final Object[] values = new Object[columns.size()];
+    for (int i = 0; i < values.length; i++) {
+      final BufferedColumn column = columns.get(i);
+      values[i] = column.typeHandler.getResult(rs, column.columnIndex);
+    }
+    return values;
+  }
+
+  private Object mapBufferedRow(Class<?> resultType, List<BufferedColumn> columns, Object[] values) {
+    final Object rowValue = objectFactory.create(resultType);
+    final MetaObject metaObject = configuration.newMetaObject(rowValue);
+    boolean foundValues = false;
+    for (int i = 0; i < values.length; i++) {
+      final BufferedColumn column = columns.get(i);
+      final Object value = values[i];
+      if (value != null) {
+        foundValues = true;
+      }
+      if (value != null || (configuration.isCallSettersOnNulls() && !column.primitive)) {
+        metaObject.setValue(column.property, value);
+      }
+    }
+    return foundValues || configuration.isReturnInstanceForEmptyRow() ? rowValue : null;
+  }
+
+  private void deliverRowBatch(Object[] rowValues, ResultHandler<?> resultHandler, DefaultResultContext<Object> resultContext) {
+    for (Object rowValue : rowValues) {
+      if (resultContext.isStopped()) {
+        break;
+      }
+      callResultHandler(resultHandler, resultContext, rowValue);
+    }
+  }
+
+  private static class BufferedColumn {
+    private final int columnIndex;
+    private final String property;
+    private final TypeHandler<?> typeHandler;
+    private final boolean primitive;
+
+    public BufferedColumn(int columnIndex, String property, TypeHandler<?> typeHandler, boolean primitive) {
+      this.columnIndex = columnIndex;
+      this.property = property;
+      this.typeHandler = typeHandler;
+      this.primitive = primitive;
+    }
+  }
+
+  private class RowBatchMapping implements Callable<Object[]> {
+    private final Class<?> resultType;
+    private final List<BufferedColumn> columns;
+    private final Object[][] rows;
+    private final int size;
+
+    public RowBatchMapping(Class<?> resultType, List<BufferedColumn> columns, Object[][] rows, int size) {
+      this.resultType = resultType;
+      this.columns = columns;
+      this.rows = rows;
+      this.size = size;
+    }
+
+    @Override
+    public Object[] call() {
+      final Object[] rowValues = new Object[size];
+      for (int i = 0; i < size; i++) {
+        rowValues[i] = mapBufferedRow(resultType, columns, rows[i]);
+        rows[i] = null;
+      }
+      return rowValues;
+    }
+  }
+
+
   // MULTIPLE RESULT SETS
 
   private void linkToParents(ResultSet rs, ResultMapping parentMapping, Object rowValue) throws SQLException {
@@ -928,8 +1213,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     while (shouldProcessMoreRows(resultContext, rowBounds) && rsw.getResultSet().next()) {
       // 鉴别器处理后的结果集映射
       final ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(rsw.getResultSet(), resultMap, null);
-      // 创建缓存Key
-      final CacheKey rowKey = createRowKey(discriminatedResultMap, rsw, null);
+      // 创建行Key（复用的探测Key，只有新对象才会复制保存）
+      final NestedRowKey rowKey = createRowKey(discriminatedResultMap, rsw, null);
       // 获取缓存
       Object partialObject = nestedResultObjects.get(rowKey);
       // issue #577 && #542
@@ -964,7 +1249,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   // GET VALUE FROM ROW FOR NESTED RESULT MAP
   //
 
-  private Object getRowValue(ResultSetWrapper rsw, ResultMap resultMap, CacheKey combinedKey, String columnPrefix, Object partialObject) throws SQLException {
+  private Object getRowValue(ResultSetWrapper rsw, ResultMap resultMap, NestedRowKey combinedKey, String columnPrefix, Object partialObject) throws SQLException {
     final String resultMapId = resultMap.getId();
     Object rowValue = partialObject;
     if (rowValue != null) {
@@ -973,6 +1258,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       applyNestedResultMappings(rsw, resultMap, metaObject, columnPrefix, combinedKey, false);
       ancestorObjects.remove(resultMapId);
     } else {
+      // 新对象的Key需要保存，子对象的Key也会引用它，所以这里复制一份不可变的Key
+      combinedKey = combinedKey.copy();
       final ResultLoaderMap lazyLoader = new ResultLoaderMap();
       rowValue = createResultObject(rsw, resultMap, lazyLoader, columnPrefix);
       if (rowValue != null && !hasTypeHandlerForResultObject(rsw, resultMap.getType())) {
@@ -988,7 +1275,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         foundValues = lazyLoader.size() > 0 || foundValues;
         rowValue = foundValues || configuration.isReturnInstanceForEmptyRow() ? rowValue : null;
       }
-      if (combinedKey != CacheKey.NULL_CACHE_KEY) {
+      if (combinedKey != NestedRowKey.NULL_KEY) {
         nestedResultObjects.put(combinedKey, rowValue);
       }
     }
@@ -1003,7 +1290,16 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   // NESTED RESULT MAP (JOIN MAPPING)
   //
 
-  private boolean applyNestedResultMappings(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, String parentPrefix, CacheKey parentRowKey, boolean newObject) {
+  private boolean applyNestedResultMappings(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, String parentPrefix, NestedRowKey parentRowKey, boolean newObject) {
+    nestingLevel++;
+    try {
+      return applyNestedResultMappingsAtCurrentLevel(rsw, resultMap, metaObject, parentPrefix, parentRowKey, newObject);
+    } finally {
+      nestingLevel--;
+    }
+  }
+
+  private boolean applyNestedResultMappingsAtCurrentLevel(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, String parentPrefix, NestedRowKey parentRowKey, boolean newObject) {
     boolean foundValues = false;
     for (ResultMapping resultMapping : resultMap.getPropertyResultMappings()) {
       final String nestedResultMapId = resultMapping.getNestedResultMapId();
@@ -1022,8 +1318,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
               continue;
             }
           }
-          final CacheKey rowKey = createRowKey(nestedResultMap, rsw, columnPrefix);
-          final CacheKey combinedKey = combineKeys(rowKey, parentRowKey);
+          final NestedRowKey rowKey = createRowKey(nestedResultMap, rsw, columnPrefix);
+          final NestedRowKey combinedKey = combineKeys(rowKey, parentRowKey);
           Object rowValue = nestedResultObjects.get(combinedKey);
           boolean knownValue = rowValue != null;
           instantiateCollectionPropertyIfAppropriate(resultMapping, metaObject); // mandatory
@@ -1084,37 +1380,35 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   // UNIQUE RESULT KEY
   //
 
-  private CacheKey createRowKey(ResultMap resultMap, ResultSetWrapper rsw, String columnPrefix) throws SQLException {
-    final CacheKey cacheKey = new CacheKey();
-    cacheKey.update(resultMap.getId());
+  private NestedRowKey createRowKey(ResultMap resultMap, ResultSetWrapper rsw, String columnPrefix) throws SQLException {
+    while (rowKeyProbes.size() <= nestingLevel) {
+      rowKeyProbes.add(NestedRowKey.newProbe());
+    }
+    final NestedRowKey rowKey = rowKeyProbes.get(nestingLevel);
+    rowKey.reset(resultMap.getId(), columnPrefix);
     List<ResultMapping> resultMappings = getResultMappingsForRowKey(resultMap);
     if (resultMappings.isEmpty()) {
       if (Map.class.isAssignableFrom(resultMap.getType())) {
-        createRowKeyForMap(rsw, cacheKey);
+        createRowKeyForMap(rsw, rowKey);
       } else {
-        createRowKeyForUnmappedProperties(resultMap, rsw, cacheKey, columnPrefix);
+        createRowKeyForUnmappedProperties(resultMap, rsw, rowKey, columnPrefix);
       }
     } else {
-      createRowKeyForMappedProperties(resultMap, rsw, cacheKey, resultMappings, columnPrefix);
+      createRowKeyForMappedProperties(resultMap, rsw, rowKey, resultMappings, columnPrefix);
     }
-    if (cacheKey.getUpdateCount() < 2) {
-      return CacheKey.NULL_CACHE_KEY;
+    if (rowKey.isEmpty()) {
+      return NestedRowKey.NULL_KEY;
     }
-    return cacheKey;
+    return rowKey;
   }
 
-  private CacheKey combineKeys(CacheKey rowKey, CacheKey parentRowKey) {
-    if (rowKey.getUpdateCount() > 1 && parentRowKey.getUpdateCount() > 1) {
-      CacheKey combinedKey;
-      try {
-        combinedKey = rowKey.clone();
-      } catch (CloneNotSupportedException e) {
-        throw new ExecutorException("Error cloning cache key.  Cause: " + e, e);
-      }
-      combinedKey.update(parentRowKey);
-      return combinedKey;
+  private NestedRowKey combineKeys(NestedRowKey rowKey, NestedRowKey parentRowKey) {
+    if (rowKey != NestedRowKey.NULL_KEY && parentRowKey != NestedRowKey.NULL_KEY) {
+      // 行Key是当前层级的探测Key，直接引用父Key即可，无需克隆
+      rowKey.setParent(parentRowKey);
+      return rowKey;
     }
-    return CacheKey.NULL_CACHE_KEY;
+    return NestedRowKey.NULL_KEY;
   }
 
   private List<ResultMapping> getResultMappingsForRowKey(ResultMap resultMap) {
@@ -1125,12 +1419,12 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return resultMappings;
   }
 
-  private void createRowKeyForMappedProperties(ResultMap resultMap, ResultSetWrapper rsw, CacheKey cacheKey, List<ResultMapping> resultMappings, String columnPrefix) throws SQLException {
+  private void createRowKeyForMappedProperties(ResultMap resultMap, ResultSetWrapper rsw, NestedRowKey rowKey, List<ResultMapping> resultMappings, String columnPrefix) throws SQLException {
     for (ResultMapping resultMapping : resultMappings) {
       if (resultMapping.getNestedResultMapId() != null && resultMapping.getResultSet() == null) {
         // Issue #392
         final ResultMap nestedResultMap = configuration.getResultMap(resultMapping.getNestedResultMapId());
-        createRowKeyForMappedProperties(nestedResultMap, rsw, cacheKey, nestedResultMap.getConstructorResultMappings(),
+        createRowKeyForMappedProperties(nestedResultMap, rsw, rowKey, nestedResultMap.getConstructorResultMappings(),
             prependPrefix(resultMapping.getColumnPrefix(), columnPrefix));
       } else if (resultMapping.getNestedQueryId() == null) {
         final String column = prependPrefix(resultMapping.getColumn(), columnPrefix);
@@ -1138,17 +1432,36 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, columnPrefix);
         // Issue #114
         if (column != null && mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH))) {
-          final Object value = th.getResult(rsw.getResultSet(), column);
-          if (value != null || configuration.isReturnInstanceForEmptyRow()) {
-            cacheKey.update(column);
-            cacheKey.update(value);
+          if (isIntegralTypeHandler(th)) {
+            // 整数类型的id直接按long读取，避免装箱
+            final long value = rsw.getResultSet().getLong(column);
+            if (!rsw.getResultSet().wasNull()) {
+              rowKey.addLong(value);
+            } else if (configuration.isReturnInstanceForEmptyRow()) {
+              rowKey.addObject(null);
+            } else {
+              rowKey.skip();
+            }
+          } else {
+            final Object value = th.getResult(rsw.getResultSet(), column);
+            if (value != null || configuration.isReturnInstanceForEmptyRow()) {
+              rowKey.addObject(value);
+            } else {
+              rowKey.skip();
+            }
           }
         }
       }
     }
   }
 
-  private void createRowKeyForUnmappedProperties(ResultMap resultMap, ResultSetWrapper rsw, CacheKey cacheKey, String columnPrefix) throws SQLException {
+  private boolean isIntegralTypeHandler(TypeHandler<?> typeHandler) {
+    final Class<?> type = typeHandler.getClass();
+    return type == LongTypeHandler.class || type == IntegerTypeHandler.class
+        || type == ShortTypeHandler.class || type == ByteTypeHandler.class;
+  }
+
+  private void createRowKeyForUnmappedProperties(ResultMap resultMap, ResultSetWrapper rsw, NestedRowKey rowKey, String columnPrefix) throws SQLException {
     final MetaClass metaType = MetaClass.forClass(resultMap.getType(), reflectorFactory);
     List<String> unmappedColumnNames = rsw.getUnmappedColumnNames(resultMap, columnPrefix);
     for (String column : unmappedColumnNames) {
@@ -1164,20 +1477,22 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       if (metaType.findProperty(property, configuration.isMapUnderscoreToCamelCase()) != null) {
         String value = rsw.getResultSet().getString(column);
         if (value != null) {
-          cacheKey.update(column);
-          cacheKey.update(value);
+          rowKey.addObject(value);
+        } else {
+          rowKey.skip();
         }
       }
     }
   }
 
-  private void createRowKeyForMap(ResultSetWrapper rsw, CacheKey cacheKey) throws SQLException {
+  private void createRowKeyForMap(ResultSetWrapper rsw, NestedRowKey rowKey) throws SQLException {
     List<String> columnNames = rsw.getColumnNames();
     for (String columnName : columnNames) {
       final String value = rsw.getResultSet().getString(columnName);
       if (value != null) {
-        cacheKey.update(columnName);
-        cacheKey.update(value);
+        rowKey.addObject(value);
+      } else {
+        rowKey.skip();
       }
     }
   }
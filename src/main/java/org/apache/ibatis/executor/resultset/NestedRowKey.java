@@ -0,0 +1,191 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.util.Arrays;
+
+import org.apache.ibatis.reflection.ArrayUtil;
+
+/**
+ * Identity of a row object while joining nested result maps.
+ * <p>
+ * Replaces the {@link org.apache.ibatis.cache.CacheKey} that used to be built for every row:
+ * key columns are stored by position in primitive slots (numeric ids are never boxed), the
+ * parent key is referenced instead of copied, and lookups go through a mutable probe that is
+ * reused row after row. A probe is only copied when a new row object is actually stored.
+ */
+final class NestedRowKey {
+
+  static final NestedRowKey NULL_KEY = new NestedRowKey(false, 0);
+
+  private static final byte ABSENT = 0;
+  private static final byte LONG = 1;
+  private static final byte OBJECT = 2;
+
+  private final boolean probe;
+  private String resultMapId;
+  private String columnPrefix;
+  private byte[] kinds;
+  private long[] longs;
+  private Object[] objects;
+  private int size;
+  private int valueCount;
+  private NestedRowKey parent;
+  private int hashcode;
+
+  private NestedRowKey(boolean probe, int capacity) {
+    this.probe = probe;
+    this.kinds = new byte[capacity];
+    this.longs = new long[capacity];
+    this.objects = new Object[capacity];
+  }
+
+  static NestedRowKey newProbe() {
+    return new NestedRowKey(true, 4);
+  }
+
+  void reset(String resultMapId, String columnPrefix) {
+    if (!probe) {
+      throw new IllegalStateException("Only probe keys can be reused");
+    }
+    this.resultMapId = resultMapId;
+    this.columnPrefix = columnPrefix;
+    Arrays.fill(objects, 0, size, null);
+    this.size = 0;
+    this.valueCount = 0;
+    this.parent = null;
+    this.hashcode = 17 * 37 + resultMapId.hashCode();
+    if (columnPrefix != null) {
+      this.hashcode = 37 * hashcode + columnPrefix.hashCode();
+    }
+  }
+
+  void addLong(long value) {
+    final int slot = nextSlot(LONG);
+    longs[slot] = value;
+    valueCount++;
+    hashcode = 37 * hashcode + (int) (value ^ (value >>> 32));
+  }
+
+  void addObject(Object value) {
+    final int slot = nextSlot(OBJECT);
+    objects[slot] = value;
+    valueCount++;
+    hashcode = 37 * hashcode + (value == null ? 1 : ArrayUtil.hashCode(value));
+  }
+
+  /**
+   * A key column with a null value.
+   */
+  void skip() {
+    nextSlot(ABSENT);
+    hashcode = 37 * hashcode;
+  }
+
+  boolean isEmpty() {
+    return valueCount == 0;
+  }
+
+  void setParent(NestedRowKey parent) {
+    this.parent = parent;
+    this.hashcode = 37 * hashcode + parent.hashCode();
+  }
+
+  /**
+   * Returns an immutable key equal to this one, copying the parent chain when it holds probes.
+   */
+  NestedRowKey copy() {
+    if (!probe) {
+      return this;
+    }
+    final NestedRowKey copy = new NestedRowKey(false, 0);
+    copy.resultMapId = resultMapId;
+    copy.columnPrefix = columnPrefix;
+    copy.kinds = Arrays.copyOf(kinds, size);
+    copy.longs = Arrays.copyOf(longs, size);
+    copy.objects = Arrays.copyOf(objects, size);
+    copy.size = size;
+    copy.valueCount = valueCount;
+    copy.parent = parent == null ? null : parent.copy();
+    copy.hashcode = hashcode;
+    return copy;
+  }
+
+  private int nextSlot(byte kind) {
+    if (size == kinds.length) {
+      final int capacity = size * 2;
+      kinds = Arrays.copyOf(kinds, capacity);
+      longs = Arrays.copyOf(longs, capacity);
+      objects = Arrays.copyOf(objects, capacity);
+    }
+    kinds[size] = kind;
+    return size++;
+  }
+
+  @Override
+  public int hashCode() {
+    return hashcode;
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) {
+      return true;
+    }
+    if (!(object instanceof NestedRowKey)) {
+      return false;
+    }
+    final NestedRowKey other = (NestedRowKey) object;
+    if (resultMapId == null || other.resultMapId == null) {
+      return false;
+    }
+    if (hashcode != other.hashcode || size != other.size
+        || !resultMapId.equals(other.resultMapId)
+        || (columnPrefix == null ? other.columnPrefix != null : !columnPrefix.equals(other.columnPrefix))) {
+      return false;
+    }
+    for (int i = 0; i < size; i++) {
+      if (kinds[i] != other.kinds[i]) {
+        return false;
+      }
+      if (kinds[i] == LONG && longs[i] != other.longs[i]) {
+        return false;
+      }
+      if (kinds[i] == OBJECT && !ArrayUtil.equals(objects[i], other.objects[i])) {
+        return false;
+      }
+    }
+    return parent == null ? other.parent == null : parent.equals(other.parent);
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder(String.valueOf(resultMapId));
+    for (int i = 0; i < size; i++) {
+      builder.append(':');
+      if (kinds[i] == LONG) {
+        builder.append(longs[i]);
+      } else if (kinds[i] == OBJECT) {
+        builder.append(ArrayUtil.toString(objects[i]));
+      }
+    }
+    if (parent != null) {
+      builder.append(" <- ").append(parent);
+    }
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,112 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * Keeps the column layout of the result sets returned by each mapped statement, keyed by
+ * statement id plus the column labels and JDBC type codes, so that {@link ResultSetWrapper} does not walk the
+ * {@link ResultSetMetaData} nor resolve type handlers and mapped columns again on every execution.
+ */
+public class ResultSetLayoutCache {
+
+  /**
+   * Dynamic SQL may return an unbounded number of layouts, stop caching new ones past this size.
+   */
+  private static final int MAX_LAYOUTS = 4096;
+
+  private final ConcurrentMap<String, Layout> layouts = new ConcurrentHashMap<String, Layout>();
+
+  Layout getLayout(String statementId, List<String> columnNames, ResultSetMetaData metaData) throws SQLException {
+    final String key = layoutKey(statementId, columnNames, metaData);
+    Layout layout = layouts.get(key);
+    if (layout == null) {
+      layout = new Layout(Collections.unmodifiableList(columnNames), metaData, true);
+      if (layouts.size() < MAX_LAYOUTS) {
+        final Layout previous = layouts.putIfAbsent(key, layout);
+        if (previous != null) {
+          layout = previous;
+        }
+      }
+    }
+    return layout;
+  }
+
+  public int size() {
+    return layouts.size();
+  }
+
+  public void clear() {
+    layouts.clear();
+  }
+
+  private String layoutKey(String statementId, List<String> columnNames, ResultSetMetaData metaData) throws SQLException {
+    final StringBuilder key = new StringBuilder(statementId);
+    for (int i = 0; i < columnNames.size(); i++) {
+      // 动态SQL可能在同一列名下返回不同类型的列
+      key.append(':').append(columnNames.get(i)).append('/').append(metaData.getColumnType(i + 1));
+    }
+    return key.toString();
+  }
+
+  /**
+   * Column metadata and everything {@link ResultSetWrapper} derives from it.
+   * Shared layouts use concurrent maps because they are read and filled by concurrent executions.
+   */
+  static class Layout {
+    final List<String> columnNames;
+    final List<String> classNames;
+    final List<JdbcType> jdbcTypes;
+    final Map<String, Map<Class<?>, TypeHandler<?>>> typeHandlerMap;
+    final Map<String, List<String>> mappedColumnNamesMap;
+    final Map<String, List<String>> unMappedColumnNamesMap;
+    final boolean shared;
+
+    Layout(List<String> columnNames, ResultSetMetaData metaData, boolean shared) throws SQLException {
+      final int columnCount = columnNames.size();
+      final List<String> classNames = new ArrayList<String>(columnCount);
+      final List<JdbcType> jdbcTypes = new ArrayList<JdbcType>(columnCount);
+      for (int i = 1; i <= columnCount; i++) {
+        jdbcTypes.add(JdbcType.forCode(metaData.getColumnType(i)));
+        classNames.add(metaData.getColumnClassName(i));
+      }
+      this.columnNames = columnNames;
+      this.classNames = Collections.unmodifiableList(classNames);
+      this.jdbcTypes = jdbcTypes;
+      this.shared = shared;
+      this.typeHandlerMap = newMap(shared);
+      this.mappedColumnNamesMap = newMap(shared);
+      this.unMappedColumnNamesMap = newMap(shared);
+    }
+
+    private static <K, V> Map<K, V> newMap(boolean concurrent) {
+      return concurrent ? new ConcurrentHashMap<K, V>() : new HashMap<K, V>();
+    }
+  }
+
+}
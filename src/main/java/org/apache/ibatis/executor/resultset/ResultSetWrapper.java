@@ -19,13 +19,13 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.mapping.ResultMap;
 import org.apache.ibatis.session.Configuration;
@@ -42,24 +42,46 @@ public class ResultSetWrapper {
 
   private final ResultSet resultSet;
   private final TypeHandlerRegistry typeHandlerRegistry;
-  private final List<String> columnNames = new ArrayList<String>();
-  private final List<String> classNames = new ArrayList<String>();
-  private final List<JdbcType> jdbcTypes = new ArrayList<JdbcType>();
-  private final Map<String, Map<Class<?>, TypeHandler<?>>> typeHandlerMap = new HashMap<String, Map<Class<?>, TypeHandler<?>>>();
-  private final Map<String, List<String>> mappedColumnNamesMap = new HashMap<String, List<String>>();
-  private final Map<String, List<String>> unMappedColumnNamesMap = new HashMap<String, List<String>>();
+  private final List<String> columnNames;
+  private final List<String> classNames;
+  private final List<JdbcType> jdbcTypes;
+  private final Map<String, Map<Class<?>, TypeHandler<?>>> typeHandlerMap;
+  private final Map<String, List<String>> mappedColumnNamesMap;
+  private final Map<String, List<String>> unMappedColumnNamesMap;
+  private final boolean sharedLayout;
 
   public ResultSetWrapper(ResultSet rs, Configuration configuration) throws SQLException {
+    this(rs, configuration, null);
+  }
+
+  /**
+   * When a statement id is given and the layout cache is enabled, the column metadata, the resolved type handlers
+   * and the mapped/unmapped column names are shared by every execution of that statement returning the same columns.
+   */
+  public ResultSetWrapper(ResultSet rs, Configuration configuration, String statementId) throws SQLException {
     super();
     this.typeHandlerRegistry = configuration.getTypeHandlerRegistry();
     this.resultSet = rs;
     final ResultSetMetaData metaData = rs.getMetaData();
     final int columnCount = metaData.getColumnCount();
+    final List<String> columnNames = new ArrayList<String>(columnCount);
     for (int i = 1; i <= columnCount; i++) {
       columnNames.add(configuration.isUseColumnLabel() ? metaData.getColumnLabel(i) : metaData.getColumnName(i));
-      jdbcTypes.add(JdbcType.forCode(metaData.getColumnType(i)));
-      classNames.add(metaData.getColumnClassName(i));
     }
+    final ResultSetLayoutCache.Layout layout;
+    if (statementId != null && configuration.isResultSetLayoutCacheEnabled()) {
+      // 同一语句、同样的列，直接复用已解析的列信息
+      layout = configuration.getResultSetLayoutCache().getLayout(statementId, columnNames, metaData);
+    } else {
+      layout = new ResultSetLayoutCache.Layout(columnNames, metaData, false);
+    }
+    this.columnNames = layout.columnNames;
+    this.classNames = layout.classNames;
+    this.jdbcTypes = layout.jdbcTypes;
+    this.typeHandlerMap = layout.typeHandlerMap;
+    this.mappedColumnNamesMap = layout.mappedColumnNamesMap;
+    this.unMappedColumnNamesMap = layout.unMappedColumnNamesMap;
+    this.sharedLayout = layout.shared;
   }
 
   public ResultSet getResultSet() {
@@ -71,7 +93,7 @@ public class ResultSetWrapper {
   }
 
   public List<String> getClassNames() {
-    return Collections.unmodifiableList(classNames);
+    return classNames;
   }
 
   public JdbcType getJdbcType(String columnName) {
@@ -96,7 +118,7 @@ public class ResultSetWrapper {
     TypeHandler<?> handler = null;
     Map<Class<?>, TypeHandler<?>> columnHandlers = typeHandlerMap.get(columnName);
     if (columnHandlers == null) {
-      columnHandlers = new HashMap<Class<?>, TypeHandler<?>>();
+      columnHandlers = sharedLayout ? new ConcurrentHashMap<Class<?>, TypeHandler<?>>() : new HashMap<Class<?>, TypeHandler<?>>();
       typeHandlerMap.put(columnName, columnHandlers);
     } else {
       handler = columnHandlers.get(propertyType);
@@ -0,0 +1,321 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.reflection.property.PropertyNamer;
+import org.apache.ibatis.type.BooleanTypeHandler;
+import org.apache.ibatis.type.ByteTypeHandler;
+import org.apache.ibatis.type.DoubleTypeHandler;
+import org.apache.ibatis.type.FloatTypeHandler;
+import org.apache.ibatis.type.IntegerTypeHandler;
+import org.apache.ibatis.type.LongTypeHandler;
+import org.apache.ibatis.type.ShortTypeHandler;
+import org.apache.ibatis.type.StringTypeHandler;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * Generates and caches {@link CompiledRowMapper} classes with javassist.
+ * A row mapper is generated the first time a (result map, column layout) pair is seen
+ * and reused by every later query, so the hot loop of a simple select only does indexed
+ * column reads and direct setter calls.
+ * <p>
+ * Layouts that cannot be compiled (non public types or setters, nested paths...) are
+ * remembered too, so the interpreted mapping is used for them without retrying. Each row mapper is a class
+ * of its own, so at most {@value #MAX_LAYOUTS} layouts are remembered; later ones use the interpreted mapping.
+ */
+public class RowMapperCompiler {
+
+  private static final Log log = LogFactory.getLog(RowMapperCompiler.class);
+
+  private static final AtomicInteger classCounter = new AtomicInteger();
+
+  /**
+   * Dynamic SQL may return an unbounded number of layouts, stop compiling new ones past this size.
+   */
+  private static final int MAX_LAYOUTS = 4096;
+
+  private static final Map<Class<?>, String[]> directReads = new HashMap<Class<?>, String[]>();
+
+  static {
+    // type handler -> { primitive type, wrapper type, ResultSet getter }
+    directReads.put(IntegerTypeHandler.class, new String[] { "int", "java.lang.Integer", "getInt" });
+    directReads.put(LongTypeHandler.class, new String[] { "long", "java.lang.Long", "getLong" });
+    directReads.put(ShortTypeHandler.class, new String[] { "short", "java.lang.Short", "getShort" });
+    directReads.put(ByteTypeHandler.class, new String[] { "byte", "java.lang.Byte", "getByte" });
+    directReads.put(DoubleTypeHandler.class, new String[] { "double", "java.lang.Double", "getDouble" });
+    directReads.put(FloatTypeHandler.class, new String[] { "float", "java.lang.Float", "getFloat" });
+    directReads.put(BooleanTypeHandler.class, new String[] { "boolean", "java.lang.Boolean", "getBoolean" });
+  }
+
+  private final ConcurrentMap<String, CompiledRowMapper> rowMappers = new ConcurrentHashMap<String, CompiledRowMapper>();
+  private final Set<String> unsupportedLayouts = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  /**
+   * A result map + result set column layout identifies a row mapper.
+   */
+  public static String layoutKey(ResultMap resultMap, ResultSetWrapper rsw) {
+    final StringBuilder key = new StringBuilder(resultMap.getId());
+    final List<String> columnNames = rsw.getColumnNames();
+    final List<String> classNames = rsw.getClassNames();
+    for (int i = 0; i < columnNames.size(); i++) {
+      key.append(':').append(columnNames.get(i))
+          .append('/').append(rsw.getJdbcType(columnNames.get(i)))
+          .append('/').append(classNames.get(i));
+    }
+    return key.toString();
+  }
+
+  public CompiledRowMapper getRowMapper(String layoutKey) {
+    return rowMappers.get(layoutKey);
+  }
+
+  public boolean isUnsupported(String layoutKey) {
+    return unsupportedLayouts.contains(layoutKey);
+  }
+
+  public void markUnsupported(String layoutKey) {
+    if (!isFull()) {
+      unsupportedLayouts.add(layoutKey);
+    }
+  }
+
+  /**
+   * Returns true once the maximum number of layouts is remembered, new layouts are no longer compiled.
+   */
+  public boolean isFull() {
+    return rowMappers.size() + unsupportedLayouts.size() >= MAX_LAYOUTS;
+  }
+
+  /**
+   * Generates the row mapper of a layout, or returns null (and remembers it) when the
+   * layout cannot be compiled.
+   */
+  public CompiledRowMapper compile(String layoutKey, Class<?> resultType, List<ColumnMapping> columnMappings, boolean callSettersOnNulls) {
+    CompiledRowMapper rowMapper = rowMappers.get(layoutKey);
+    if (rowMapper != null) {
+      return rowMapper;
+    }
+    if (isFull()) {
+      return null;
+    }
+    try {
+      rowMapper = generate(resultType, columnMappings, callSettersOnNulls);
+    } catch (Exception e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Could not compile a row mapper for " + layoutKey + ", using reflective mapping instead.  Cause: " + e);
+      }
+      rowMapper = null;
+    }
+    if (rowMapper == null) {
+      markUnsupported(layoutKey);
+      return null;
+    }
+    final CompiledRowMapper previous = rowMappers.putIfAbsent(layoutKey, rowMapper);
+    return previous != null ? previous : rowMapper;
+  }
+
+  private CompiledRowMapper generate(Class<?> resultType, List<ColumnMapping> columnMappings, boolean callSettersOnNulls) throws Exception {
+    if (!isAccessible(resultType) || Modifier.isAbstract(resultType.getModifiers())) {
+      return null;
+    }
+    try {
+      resultType.getConstructor();
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+    final ClassLoader parent = resultType.getClassLoader();
+    if (parent == null || !isVisible(CompiledRowMapper.class, parent)) {
+      return null;
+    }
+
+    final String typeName = sourceName(resultType);
+    final StringBuilder body = new StringBuilder();
+    body.append("{ java.sql.ResultSet rs = $1; ");
+    body.append(typeName).append(" target = (").append(typeName).append(") $2; ");
+    body.append("boolean foundValues = false; ");
+    final TypeHandler<?>[] typeHandlers = new TypeHandler<?>[columnMappings.size()];
+    for (int i = 0; i < columnMappings.size(); i++) {
+      final ColumnMapping mapping = columnMappings.get(i);
+      final Method setter = findSetter(resultType, mapping.property, mapping.setterType);
+      if (setter == null) {
+        return null;
+      }
+      typeHandlers[i] = mapping.typeHandler;
+      appendColumn(body, i, mapping, setter, callSettersOnNulls);
+    }
+    body.append("return foundValues; }");
+
+    final String className = CompiledRowMapper.class.getName() + "$$" + resultType.getSimpleName() + "$$" + classCounter.incrementAndGet();
+    final ClassPool pool = new ClassPool(false);
+    pool.appendClassPath(new LoaderClassPath(parent));
+    pool.appendClassPath(new ClassClassPath(CompiledRowMapper.class));
+    final CtClass ctClass = pool.makeClass(className, pool.get(CompiledRowMapper.class.getName()));
+    try {
+      ctClass.addConstructor(CtNewConstructor.defaultConstructor(ctClass));
+      ctClass.addMethod(CtNewMethod.make("public Object createResultObject() { return new " + typeName + "(); }", ctClass));
+      ctClass.addMethod(CtNewMethod.make("public boolean applyMappings(java.sql.ResultSet resultSet, Object resultObject) throws java.sql.SQLException "
+          + body, ctClass));
+      final byte[] bytecode = ctClass.toBytecode();
+      final Class<?> mapperClass = new RowMapperClassLoader(parent).define(className, bytecode);
+      final CompiledRowMapper rowMapper = (CompiledRowMapper) mapperClass.newInstance();
+      rowMapper.setTypeHandlers(typeHandlers);
+      if (log.isDebugEnabled()) {
+        log.debug("Compiled row mapper " + className + " for " + resultType.getName());
+      }
+      return rowMapper;
+    } finally {
+      ctClass.detach();
+    }
+  }
+
+  private void appendColumn(StringBuilder body, int i, ColumnMapping mapping, Method setter, boolean callSettersOnNulls) {
+    final Class<?> parameterType = setter.getParameterTypes()[0];
+    final String setterCall = "target." + setter.getName() + "(";
+    final String value = "v" + i;
+    final String[] directRead = directReads.get(mapping.typeHandler.getClass());
+    if (directRead != null && (directRead[0].equals(parameterType.getName()) || directRead[1].equals(parameterType.getName()))) {
+      // built-in handler: read the primitive straight from the result set
+      final boolean primitive = parameterType.isPrimitive();
+      body.append(directRead[0]).append(' ').append(value).append(" = rs.").append(directRead[2]).append('(').append(mapping.columnIndex).append("); ");
+      body.append("if (!rs.wasNull()) { foundValues = true; ").append(setterCall)
+          .append(primitive ? value : directRead[1] + ".valueOf(" + value + ")").append("); }");
+      if (callSettersOnNulls && !primitive) {
+        body.append(" else { ").append(setterCall).append('(').append(directRead[1]).append(") null); }");
+      }
+      body.append(' ');
+    } else if (mapping.typeHandler.getClass() == StringTypeHandler.class && parameterType.isAssignableFrom(String.class)) {
+      body.append("java.lang.String ").append(value).append(" = rs.getString(").append(mapping.columnIndex).append("); ");
+      body.append("if (").append(value).append(" != null) { foundValues = true; ").append(setterCall).append(value).append("); }");
+      if (callSettersOnNulls) {
+        body.append(" else { ").append(setterCall).append('(').append(sourceName(parameterType)).append(") null); }");
+      }
+      body.append(' ');
+    } else {
+      body.append("java.lang.Object ").append(value).append(" = typeHandlers[").append(i).append("].getResult(rs, ").append(mapping.columnIndex).append("); ");
+      body.append("if (").append(value).append(" != null) { foundValues = true; ").append(setterCall).append(unbox(value, parameterType)).append("); }");
+      if (callSettersOnNulls && !parameterType.isPrimitive()) {
+        body.append(" else { ").append(setterCall).append('(').append(sourceName(parameterType)).append(") null); }");
+      }
+      body.append(' ');
+    }
+  }
+
+  private String unbox(String value, Class<?> type) {
+    if (type.isPrimitive()) {
+      final String wrapper = new PrimitiveTypes().getWrapper(type).getName();
+      return "((" + wrapper + ") " + value + ")." + type.getName() + "Value()";
+    }
+    return "(" + sourceName(type) + ") " + value;
+  }
+
+  private Method findSetter(Class<?> type, String property, Class<?> setterType) {
+    if (property == null || property.indexOf('.') > -1 || property.indexOf('[') > -1) {
+      return null;
+    }
+    for (Method method : type.getMethods()) {
+      final String name = method.getName();
+      if (PropertyNamer.isSetter(name)
+          && method.getParameterTypes().length == 1
+          && method.getParameterTypes()[0].equals(setterType)
+          && !Modifier.isStatic(method.getModifiers())
+          && isAccessible(method.getDeclaringClass())
+          && isAccessible(setterType)
+          && property.equals(PropertyNamer.methodToProperty(name))) {
+        return method;
+      }
+    }
+    return null;
+  }
+
+  private static boolean isAccessible(Class<?> type) {
+    if (type.isArray()) {
+      return isAccessible(type.getComponentType());
+    }
+    if (type.isPrimitive()) {
+      return true;
+    }
+    for (Class<?> current = type; current != null; current = current.getEnclosingClass()) {
+      if (!Modifier.isPublic(current.getModifiers())) {
+        return false;
+      }
+      if (current.getEnclosingClass() != null && !Modifier.isStatic(current.getModifiers())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isVisible(Class<?> type, ClassLoader loader) {
+    try {
+      return Class.forName(type.getName(), false, loader) == type;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  private static String sourceName(Class<?> type) {
+    return type.isArray() ? sourceName(type.getComponentType()) + "[]" : type.getName();
+  }
+
+  /**
+   * One column of the layout bound to one writable property of the result object.
+   */
+  public static class ColumnMapping {
+    private final int columnIndex;
+    private final String property;
+    private final Class<?> setterType;
+    private final TypeHandler<?> typeHandler;
+
+    public ColumnMapping(int columnIndex, String property, Class<?> setterType, TypeHandler<?> typeHandler) {
+      this.columnIndex = columnIndex;
+      this.property = property;
+      this.setterType = setterType;
+      this.typeHandler = typeHandler;
+    }
+  }
+
+  private static class RowMapperClassLoader extends ClassLoader {
+    RowMapperClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    Class<?> define(String name, byte[] bytecode) {
+      return defineClass(name, bytecode, 0, bytecode.length);
+    }
+  }
+
+}
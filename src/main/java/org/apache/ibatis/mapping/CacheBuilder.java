@@ -23,14 +23,21 @@ import java.util.Properties;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheSerializer;
 import org.apache.ibatis.builder.InitializingObject;
 import org.apache.ibatis.cache.decorators.BlockingCache;
 import org.apache.ibatis.cache.decorators.LoggingCache;
 import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.MetricsCache;
+import org.apache.ibatis.cache.decorators.NearCache;
 import org.apache.ibatis.cache.decorators.ScheduledCache;
 import org.apache.ibatis.cache.decorators.SerializedCache;
 import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.impl.ConcurrentCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.invalidation.InvalidationBus;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
 
@@ -46,6 +53,9 @@ public class CacheBuilder {
   private boolean readWrite;
   private Properties properties;
   private boolean blocking;
+  private CacheSerializer serializer;
+  private InvalidationBus invalidationBus;
+  private CacheMetrics metrics;
 
   public CacheBuilder(String id) {
     this.id = id;
@@ -83,7 +93,22 @@ public class CacheBuilder {
     this.blocking = blocking;
     return this;
   }
+
+  public CacheBuilder serializer(CacheSerializer serializer) {
+    this.serializer = serializer;
+    return this;
+  }
   
+  public CacheBuilder invalidationBus(InvalidationBus invalidationBus) {
+    this.invalidationBus = invalidationBus;
+    return this;
+  }
+
+  public CacheBuilder metrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
   public CacheBuilder properties(Properties properties) {
     this.properties = properties;
     return this;
@@ -92,14 +117,24 @@ public class CacheBuilder {
   public Cache build() {
     setDefaultImplementations();
     Cache cache = newBaseCacheInstance(implementation, id);
+    if (serializer != null && cache instanceof OffHeapCache) {
+      ((OffHeapCache) cache).setSerializer(serializer);
+    }
     setCacheProperties(cache);
+    setCacheMetrics(cache);
     // issue #352, do not apply decorators to custom caches
     if (PerpetualCache.class.equals(cache.getClass())) {
       for (Class<? extends Cache> decorator : decorators) {
         cache = newCacheDecoratorInstance(decorator, cache);
         setCacheProperties(cache);
+        setCacheMetrics(cache);
       }
-      cache = setStandardDecorators(cache);
+      cache = setStandardDecorators(cache, true);
+    } else if (ConcurrentCache.class.equals(cache.getClass()) || OffHeapCache.class.equals(cache.getClass())) {
+      // evicts by itself and is thread safe, no eviction decorator nor SynchronizedCache
+      cache = setStandardDecorators(cache, false);
+    } else if (metrics != null) {
+      cache = new MetricsCache(cache, metrics);
     } else if (!LoggingCache.class.isAssignableFrom(cache.getClass())) {
       cache = new LoggingCache(cache);
     }
@@ -115,7 +150,7 @@ public class CacheBuilder {
     }
   }
 
-  private Cache setStandardDecorators(Cache cache) {
+  private Cache setStandardDecorators(Cache cache, boolean synchronize) {
     try {
       MetaObject metaCache = SystemMetaObject.forObject(cache);
       if (size != null && metaCache.hasSetter("size")) {
@@ -125,11 +160,17 @@ public class CacheBuilder {
         cache = new ScheduledCache(cache);
         ((ScheduledCache) cache).setClearInterval(clearInterval);
       }
-      if (readWrite) {
-        cache = new SerializedCache(cache);
+      // OffHeapCache stores values serialized already
+      if (readWrite && !(cache instanceof OffHeapCache)) {
+        cache = serializer == null ? new SerializedCache(cache) : new SerializedCache(cache, serializer);
+      }
+      cache = metrics == null ? new LoggingCache(cache) : new MetricsCache(cache, metrics);
+      if (synchronize) {
+        cache = new SynchronizedCache(cache);
+      }
+      if (invalidationBus != null) {
+        cache = new NearCache(cache, invalidationBus);
       }
-      cache = new LoggingCache(cache);
-      cache = new SynchronizedCache(cache);
       if (blocking) {
         cache = new BlockingCache(cache);
       }
@@ -186,6 +227,16 @@ public class CacheBuilder {
     }
   }
 
+  private void setCacheMetrics(Cache cache) {
+    if (metrics != null) {
+      MetaObject metaCache = SystemMetaObject.forObject(cache);
+      // 由缓存自身报告淘汰，外层装饰器无法区分淘汰与替换
+      if (metaCache.hasSetter("metrics") && CacheMetrics.class == metaCache.getSetterType("metrics")) {
+        metaCache.setValue("metrics", metrics);
+      }
+    }
+  }
+
   private Cache newBaseCacheInstance(Class<? extends Cache> cacheClass, String id) {
     Constructor<? extends Cache> cacheConstructor = getBaseCacheConstructor(cacheClass);
     try {
@@ -18,6 +18,7 @@ package org.apache.ibatis.mapping;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
@@ -47,6 +48,9 @@ public final class MappedStatement {
   private boolean flushCacheRequired;
   private boolean useCache;
   private boolean resultOrdered;
+  private boolean parallelMapping;
+  private String[] cacheTags;
+  private boolean useLocalCache;
   private SqlCommandType sqlCommandType;
   private KeyGenerator keyGenerator;
   private String[] keyProperties;
@@ -71,6 +75,7 @@ public final class MappedStatement {
       mappedStatement.statementType = StatementType.PREPARED;
       mappedStatement.parameterMap = new ParameterMap.Builder(configuration, "defaultParameterMap", null, new ArrayList<ParameterMapping>()).build();
       mappedStatement.resultMaps = new ArrayList<ResultMap>();
+      mappedStatement.useLocalCache = true;
       mappedStatement.sqlCommandType = sqlCommandType;
       mappedStatement.keyGenerator = configuration.isUseGeneratedKeys() && SqlCommandType.INSERT.equals(sqlCommandType) ? Jdbc3KeyGenerator.INSTANCE : NoKeyGenerator.INSTANCE;
       String logId = id;
@@ -143,6 +148,27 @@ public final class MappedStatement {
       return this;
     }
 
+    public Builder parallelMapping(boolean parallelMapping) {
+      mappedStatement.parallelMapping = parallelMapping;
+      return this;
+    }
+
+    public Builder cacheTags(String cacheTags) {
+      final String[] tags = delimitedStringToArray(cacheTags);
+      if (tags != null) {
+        for (int i = 0; i < tags.length; i++) {
+          tags[i] = tags[i].trim().toLowerCase(Locale.ENGLISH);
+        }
+      }
+      mappedStatement.cacheTags = tags;
+      return this;
+    }
+
+    public Builder useLocalCache(boolean useLocalCache) {
+      mappedStatement.useLocalCache = useLocalCache;
+      return this;
+    }
+
     public Builder keyGenerator(KeyGenerator keyGenerator) {
       mappedStatement.keyGenerator = keyGenerator;
       return this;
@@ -258,6 +284,26 @@ public final class MappedStatement {
     return resultOrdered;
   }
 
+  public boolean isParallelMapping() {
+    return parallelMapping;
+  }
+
+  /**
+   * Tables read or written by the statement, as declared by its {@code cacheTags}. Null if not declared.
+   */
+  public String[] getCacheTags() {
+    return cacheTags;
+  }
+
+  /**
+   * Whether the results of the statement are kept in the local cache of the session. Only honored with the
+   * {@code SESSION} local cache scope by statements run outside of any other, not callable and without nested
+   * queries or results, which need the local cache to resolve them.
+   */
+  public boolean isUseLocalCache() {
+    return useLocalCache;
+  }
+
   public String getDatabaseId() {
     return databaseId;
   }
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.ibatis.binding.MapperRegistry;
 import org.apache.ibatis.builder.CacheRefResolver;
@@ -31,26 +32,43 @@ import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.builder.annotation.MethodResolver;
 import org.apache.ibatis.builder.xml.XMLStatementBuilder;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.cache.CacheTagVersions;
 import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.SoftCache;
 import org.apache.ibatis.cache.decorators.WeakCache;
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.ConcurrentCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.invalidation.InvalidationBus;
+import org.apache.ibatis.cache.invalidation.LoopbackInvalidationBus;
+import org.apache.ibatis.cache.invalidation.MulticastInvalidationBus;
+import org.apache.ibatis.cache.metrics.CacheMetricsRegistry;
+import org.apache.ibatis.cache.serializer.BinaryCacheSerializer;
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
+import org.apache.ibatis.cursor.defaults.PrefetchingCursor;
 import org.apache.ibatis.datasource.jndi.JndiDataSourceFactory;
 import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
 import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.executor.CacheLoadCoalescer;
 import org.apache.ibatis.executor.CachingExecutor;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ReuseExecutor;
 import org.apache.ibatis.executor.SimpleExecutor;
+import org.apache.ibatis.executor.keygen.KeyAssignerCache;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.loader.ProxyFactory;
 import org.apache.ibatis.executor.loader.cglib.CglibProxyFactory;
 import org.apache.ibatis.executor.loader.javassist.JavassistProxyFactory;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.executor.result.ColumnarResult;
 import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
 import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.executor.resultset.ResultSetLayoutCache;
+import org.apache.ibatis.executor.resultset.RowMapperCompiler;
 import org.apache.ibatis.executor.statement.RoutingStatementHandler;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.io.VFS;
@@ -109,6 +127,25 @@ public class Configuration {
   protected boolean callSettersOnNulls;
   protected boolean useActualParamName = true;
   protected boolean returnInstanceForEmptyRow;
+  protected boolean compiledRowMappersEnabled;
+  protected boolean resultSetLayoutCacheEnabled = true;
+  protected int parallelMappingBatchSize = 512;
+  protected ForkJoinPool parallelMappingPool;
+  protected int cursorPrefetchSize;
+  protected boolean batchGroupingEnabled;
+  protected int batchFlushRowThreshold;
+  protected int batchFlushByteThreshold;
+  protected boolean batchInsertRewriteEnabled;
+  protected int batchInsertRewriteChunkSize = 100;
+  protected CacheSerializer cacheSerializer = new BinaryCacheSerializer();
+  protected boolean cacheLoadCoalescingEnabled;
+  protected int cacheLoadCoalescingTimeout = 1000;
+  protected boolean cacheTagInvalidationEnabled;
+  protected InvalidationBus cacheInvalidationBus;
+  protected boolean cacheMetricsEnabled;
+  protected int localCacheSize;
+  protected int localCacheMaxRows;
+  protected java.util.concurrent.Executor cursorPrefetchExecutor = PrefetchingCursor.THREAD_PER_CURSOR;
 
   protected String logPrefix;
   protected Class <? extends Log> logImpl;
@@ -144,6 +181,12 @@ public class Configuration {
   protected final TypeHandlerRegistry typeHandlerRegistry = new TypeHandlerRegistry();
   protected final TypeAliasRegistry typeAliasRegistry = new TypeAliasRegistry();
   protected final LanguageDriverRegistry languageRegistry = new LanguageDriverRegistry();
+  protected final RowMapperCompiler rowMapperCompiler = new RowMapperCompiler();
+  protected final ResultSetLayoutCache resultSetLayoutCache = new ResultSetLayoutCache();
+  protected final KeyAssignerCache keyAssignerCache = new KeyAssignerCache();
+  protected final CacheLoadCoalescer cacheLoadCoalescer = new CacheLoadCoalescer();
+  protected final CacheTagVersions cacheTagVersions = new CacheTagVersions();
+  protected final CacheMetricsRegistry cacheMetricsRegistry = new CacheMetricsRegistry();
 
   protected final Map<String, MappedStatement> mappedStatements = new StrictMap<MappedStatement>("Mapped Statements collection");
   protected final Map<String, Cache> caches = new StrictMap<Cache>("Caches collection");
@@ -180,8 +223,11 @@ public class Configuration {
     typeAliasRegistry.registerAlias("UNPOOLED", UnpooledDataSourceFactory.class);
 
     typeAliasRegistry.registerAlias("PERPETUAL", PerpetualCache.class);
+    typeAliasRegistry.registerAlias("CONCURRENT", ConcurrentCache.class);
+    typeAliasRegistry.registerAlias("OFFHEAP", OffHeapCache.class);
     typeAliasRegistry.registerAlias("FIFO", FifoCache.class);
     typeAliasRegistry.registerAlias("LRU", LruCache.class);
+    typeAliasRegistry.registerAlias("WEIGHTED", WeightedCache.class);
     typeAliasRegistry.registerAlias("SOFT", SoftCache.class);
     typeAliasRegistry.registerAlias("WEAK", WeakCache.class);
 
@@ -201,6 +247,14 @@ public class Configuration {
     typeAliasRegistry.registerAlias("CGLIB", CglibProxyFactory.class);
     typeAliasRegistry.registerAlias("JAVASSIST", JavassistProxyFactory.class);
 
+    typeAliasRegistry.registerAlias("COLUMNAR", ColumnarResult.class);
+
+    typeAliasRegistry.registerAlias("BINARY", BinaryCacheSerializer.class);
+    typeAliasRegistry.registerAlias("JDK", JavaCacheSerializer.class);
+
+    typeAliasRegistry.registerAlias("LOOPBACK", LoopbackInvalidationBus.class);
+    typeAliasRegistry.registerAlias("MULTICAST", MulticastInvalidationBus.class);
+
     languageRegistry.setDefaultDriverClass(XMLLanguageDriver.class);
     languageRegistry.register(RawLanguageDriver.class);
   }
@@ -259,6 +313,279 @@ public class Configuration {
     this.returnInstanceForEmptyRow = returnEmptyInstance;
   }
 
+  public boolean isCompiledRowMappersEnabled() {
+    return compiledRowMappersEnabled;
+  }
+
+  /**
+   * When enabled, simple result maps (no nested mappings, discriminators or constructor mappings)
+   * are mapped by row mappers generated with javassist instead of {@link MetaObject} reflection.
+   */
+  public void setCompiledRowMappersEnabled(boolean compiledRowMappersEnabled) {
+    this.compiledRowMappersEnabled = compiledRowMappersEnabled;
+  }
+
+  public RowMapperCompiler getRowMapperCompiler() {
+    return rowMapperCompiler;
+  }
+
+  public boolean isResultSetLayoutCacheEnabled() {
+    return resultSetLayoutCacheEnabled;
+  }
+
+  /**
+   * When enabled (the default), the column metadata of the result sets returned by a statement,
+   * with its resolved type handlers and mapped columns, is reused by later executions returning the same columns
+   * with the same JDBC types.
+   */
+  public void setResultSetLayoutCacheEnabled(boolean resultSetLayoutCacheEnabled) {
+    this.resultSetLayoutCacheEnabled = resultSetLayoutCacheEnabled;
+  }
+
+  public ResultSetLayoutCache getResultSetLayoutCache() {
+    return resultSetLayoutCache;
+  }
+
+  public KeyAssignerCache getKeyAssignerCache() {
+    return keyAssignerCache;
+  }
+
+  public CacheLoadCoalescer getCacheLoadCoalescer() {
+    return cacheLoadCoalescer;
+  }
+
+  public CacheTagVersions getCacheTagVersions() {
+    return cacheTagVersions;
+  }
+
+  public CacheMetricsRegistry getCacheMetricsRegistry() {
+    return cacheMetricsRegistry;
+  }
+
+  public int getParallelMappingBatchSize() {
+    return parallelMappingBatchSize;
+  }
+
+  /**
+   * Number of rows read into buffers before they are handed to the pool as one mapping task,
+   * for statements with parallelMapping enabled.
+   */
+  public void setParallelMappingBatchSize(int parallelMappingBatchSize) {
+    if (parallelMappingBatchSize < 1) {
+      throw new IllegalArgumentException("parallelMappingBatchSize must be greater than zero but was " + parallelMappingBatchSize);
+    }
+    this.parallelMappingBatchSize = parallelMappingBatchSize;
+  }
+
+  public ForkJoinPool getParallelMappingPool() {
+    return parallelMappingPool == null ? ForkJoinPool.commonPool() : parallelMappingPool;
+  }
+
+  /**
+   * Pool mapping the rows of statements with parallelMapping enabled, the common pool by default.
+   * The {@link ObjectFactory} and the result objects' setters must be safe to call from its threads.
+   */
+  public void setParallelMappingPool(ForkJoinPool parallelMappingPool) {
+    this.parallelMappingPool = parallelMappingPool;
+  }
+
+  public int getCursorPrefetchSize() {
+    return cursorPrefetchSize;
+  }
+
+  /**
+   * When greater than zero, cursors read and map up to this many rows ahead of the consumer
+   * on a thread of the {@link #getCursorPrefetchExecutor() cursor prefetch executor}.
+   */
+  public void setCursorPrefetchSize(int cursorPrefetchSize) {
+    this.cursorPrefetchSize = cursorPrefetchSize;
+  }
+
+  public java.util.concurrent.Executor getCursorPrefetchExecutor() {
+    return cursorPrefetchExecutor;
+  }
+
+  /**
+   * Executor running the readers of prefetching cursors, a new daemon thread per cursor by default.
+   * Each reader holds a thread until its cursor is consumed or closed.
+   */
+  public void setCursorPrefetchExecutor(java.util.concurrent.Executor cursorPrefetchExecutor) {
+    this.cursorPrefetchExecutor = cursorPrefetchExecutor;
+  }
+
+  public boolean isBatchGroupingEnabled() {
+    return batchGroupingEnabled;
+  }
+
+  /**
+   * When enabled, the batch executor keeps one open JDBC batch per mapped statement and SQL instead of only
+   * reusing the last one, so interleaved statements are still batched. Batches are executed in the order
+   * they were opened, which changes the execution order of interleaved statements.
+   */
+  public void setBatchGroupingEnabled(boolean batchGroupingEnabled) {
+    this.batchGroupingEnabled = batchGroupingEnabled;
+  }
+
+  public int getBatchFlushRowThreshold() {
+    return batchFlushRowThreshold;
+  }
+
+  /**
+   * When greater than zero, the batch executor flushes all its batches once this many rows are pending.
+   */
+  public void setBatchFlushRowThreshold(int batchFlushRowThreshold) {
+    this.batchFlushRowThreshold = batchFlushRowThreshold;
+  }
+
+  public int getBatchFlushByteThreshold() {
+    return batchFlushByteThreshold;
+  }
+
+  /**
+   * When greater than zero, the batch executor flushes all its batches once the estimated size
+   * of the pending parameters reaches this many bytes.
+   */
+  public void setBatchFlushByteThreshold(int batchFlushByteThreshold) {
+    this.batchFlushByteThreshold = batchFlushByteThreshold;
+  }
+
+  public boolean isBatchInsertRewriteEnabled() {
+    return batchInsertRewriteEnabled;
+  }
+
+  /**
+   * When enabled, the batch executor sends the rows of a single-row {@code INSERT ... VALUES (...)}
+   * statement as multi-row {@code INSERT ... VALUES (...), (...)} statements instead of a JDBC batch.
+   */
+  public void setBatchInsertRewriteEnabled(boolean batchInsertRewriteEnabled) {
+    this.batchInsertRewriteEnabled = batchInsertRewriteEnabled;
+  }
+
+  public int getBatchInsertRewriteChunkSize() {
+    return batchInsertRewriteChunkSize;
+  }
+
+  /**
+   * Maximum number of rows sent by one rewritten insert statement.
+   */
+  public void setBatchInsertRewriteChunkSize(int batchInsertRewriteChunkSize) {
+    if (batchInsertRewriteChunkSize < 1) {
+      throw new IllegalArgumentException("batchInsertRewriteChunkSize must be greater than zero but was " + batchInsertRewriteChunkSize);
+    }
+    this.batchInsertRewriteChunkSize = batchInsertRewriteChunkSize;
+  }
+
+  public CacheSerializer getCacheSerializer() {
+    return cacheSerializer;
+  }
+
+  /**
+   * Serializer copying the values of read/write second level caches, {@link BinaryCacheSerializer} by default.
+   * Applies to the caches built after it is set.
+   */
+  public void setCacheSerializer(CacheSerializer cacheSerializer) {
+    this.cacheSerializer = cacheSerializer;
+  }
+
+  public boolean isCacheLoadCoalescingEnabled() {
+    return cacheLoadCoalescingEnabled;
+  }
+
+  /**
+   * When enabled, sessions missing the same key of a second level cache at the same time share one query
+   * instead of all querying the database. Unlike {@code blocking} caches, no lock outlives a failed query.
+   */
+  public void setCacheLoadCoalescingEnabled(boolean cacheLoadCoalescingEnabled) {
+    this.cacheLoadCoalescingEnabled = cacheLoadCoalescingEnabled;
+  }
+
+  public int getCacheLoadCoalescingTimeout() {
+    return cacheLoadCoalescingTimeout;
+  }
+
+  /**
+   * Milliseconds a session waits for the query shared by another session before running it itself.
+   */
+  public void setCacheLoadCoalescingTimeout(int cacheLoadCoalescingTimeout) {
+    if (cacheLoadCoalescingTimeout < 1) {
+      throw new IllegalArgumentException("cacheLoadCoalescingTimeout must be greater than zero but was " + cacheLoadCoalescingTimeout);
+    }
+    this.cacheLoadCoalescingTimeout = cacheLoadCoalescingTimeout;
+  }
+
+  public boolean isCacheTagInvalidationEnabled() {
+    return cacheTagInvalidationEnabled;
+  }
+
+  /**
+   * When enabled, a statement flushing a second level cache only invalidates the entries reading the tables
+   * it writes, in all caches, instead of clearing its cache. See {@link CacheTagVersions}.
+   */
+  public void setCacheTagInvalidationEnabled(boolean cacheTagInvalidationEnabled) {
+    this.cacheTagInvalidationEnabled = cacheTagInvalidationEnabled;
+  }
+
+  public InvalidationBus getCacheInvalidationBus() {
+    return cacheInvalidationBus;
+  }
+
+  /**
+   * Bus propagating the invalidations of second level caches to the other nodes of a cluster. None by default.
+   * Applies to the caches built after it is set. In XML, the properties of the bus are set with
+   * {@code cacheInvalidationBus.<property>} settings, for instance {@code cacheInvalidationBus.port}.
+   */
+  public void setCacheInvalidationBus(InvalidationBus cacheInvalidationBus) {
+    this.cacheInvalidationBus = cacheInvalidationBus;
+    cacheTagVersions.setInvalidationBus(cacheInvalidationBus);
+  }
+
+  public boolean isCacheMetricsEnabled() {
+    return cacheMetricsEnabled;
+  }
+
+  /**
+   * When enabled, the hits, misses, evictions and latencies of second level caches are recorded in the
+   * {@link #getCacheMetricsRegistry() cache metrics registry}. Applies to the caches built after it is set.
+   */
+  public void setCacheMetricsEnabled(boolean cacheMetricsEnabled) {
+    this.cacheMetricsEnabled = cacheMetricsEnabled;
+  }
+
+  public boolean isCacheMetricsJmxEnabled() {
+    return cacheMetricsRegistry.isJmxEnabled();
+  }
+
+  /**
+   * When enabled, the cache metrics are exported over JMX, see {@link CacheMetricsRegistry}.
+   */
+  public void setCacheMetricsJmxEnabled(boolean cacheMetricsJmxEnabled) {
+    cacheMetricsRegistry.setJmxEnabled(cacheMetricsJmxEnabled);
+  }
+
+  public int getLocalCacheSize() {
+    return localCacheSize;
+  }
+
+  /**
+   * When greater than zero, the local cache of a session keeps at most this many query results, evicting the
+   * least recently used ones. Applies to the sessions opened after it is set.
+   */
+  public void setLocalCacheSize(int localCacheSize) {
+    this.localCacheSize = localCacheSize;
+  }
+
+  public int getLocalCacheMaxRows() {
+    return localCacheMaxRows;
+  }
+
+  /**
+   * When greater than zero, the local cache of a session keeps query results of at most this many rows in total,
+   * evicting the least recently used ones. Applies to the sessions opened after it is set.
+   */
+  public void setLocalCacheMaxRows(int localCacheMaxRows) {
+    this.localCacheMaxRows = localCacheMaxRows;
+  }
+
   public String getDatabaseId() {
     return databaseId;
   }
@@ -0,0 +1,63 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+/**
+ * Counters of the local (first level) cache of a session, see {@link SqlSession#getLocalCacheStatistics()}.
+ * Hits and misses count the lookups of queries without result handler; they are kept when the cache is cleared.
+ */
+public class LocalCacheStatistics {
+
+  private final long hits;
+  private final long misses;
+  private final long evictions;
+  private final int size;
+
+  public LocalCacheStatistics(long hits, long misses, long evictions, int size) {
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+    this.size = size;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Entries removed to keep the cache under {@code localCacheSize} and {@code localCacheMaxRows}.
+   */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Current number of entries.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  @Override
+  public String toString() {
+    return "LocalCacheStatistics[hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", size=" + size + "]";
+  }
+
+}
@@ -21,7 +21,9 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.defaults.CursorPublisher;
 import org.apache.ibatis.executor.BatchResult;
+import org.reactivestreams.Publisher;
 
 /**
  * The primary Java interface for working with MyBatis.
@@ -143,6 +145,42 @@ public interface SqlSession extends Closeable {
    */
   <T> Cursor<T> selectCursor(String statement, Object parameter, RowBounds rowBounds);
 
+  /**
+   * A Publisher offers the same results as a Cursor, pulling rows from the database only as they are requested
+   * by its subscriber. The statement runs on the first request.
+   * @param <T> the returned publisher element type.
+   * @param statement Unique identifier matching the statement to use.
+   * @return Publisher of mapped objects
+   */
+  default <T> Publisher<T> selectPublisher(String statement) {
+    return selectPublisher(statement, null);
+  }
+
+  /**
+   * A Publisher offers the same results as a Cursor, pulling rows from the database only as they are requested
+   * by its subscriber. The statement runs on the first request.
+   * @param <T> the returned publisher element type.
+   * @param statement Unique identifier matching the statement to use.
+   * @param parameter A parameter object to pass to the statement.
+   * @return Publisher of mapped objects
+   */
+  default <T> Publisher<T> selectPublisher(String statement, Object parameter) {
+    return selectPublisher(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  /**
+   * A Publisher offers the same results as a Cursor, pulling rows from the database only as they are requested
+   * by its subscriber. The statement runs on the first request.
+   * @param <T> the returned publisher element type.
+   * @param statement Unique identifier matching the statement to use.
+   * @param parameter A parameter object to pass to the statement.
+   * @param rowBounds  Bounds to limit object retrieval
+   * @return Publisher of mapped objects
+   */
+  default <T> Publisher<T> selectPublisher(String statement, Object parameter, RowBounds rowBounds) {
+    return new CursorPublisher<T>(this, statement, parameter, rowBounds);
+  }
+
   /**
    * Retrieve a single row mapped from the statement key and parameter
    * using a {@code ResultHandler}.
@@ -261,6 +299,14 @@ public interface SqlSession extends Closeable {
    */
   void clearCache();
 
+  /**
+   * Retrieves the counters of the local session cache, zeroed for sessions without one
+   * @return LocalCacheStatistics
+   */
+  default LocalCacheStatistics getLocalCacheStatistics() {
+    return new LocalCacheStatistics(0, 0, 0, 0);
+  }
+
   /**
    * Retrieves current configuration
    * @return Configuration
@@ -21,8 +21,10 @@ import java.io.Reader;
 import java.util.Properties;
 
 import org.apache.ibatis.builder.xml.XMLConfigBuilder;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
 import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.executor.ErrorContext;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
 
 /**
@@ -89,6 +91,11 @@ public class SqlSessionFactoryBuilder {
   }
     
   public SqlSessionFactory build(Configuration config) {
+    Environment environment = config.getEnvironment();
+    if (environment != null && environment.getDataSource() instanceof PooledDataSource) {
+      // 在后台预先建立最少空闲连接，首批请求无需等待建立连接
+      ((PooledDataSource) environment.getDataSource()).warmUp();
+    }
     return new DefaultSqlSessionFactory(config);
   }
 
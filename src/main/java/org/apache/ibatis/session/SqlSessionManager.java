@@ -26,8 +26,10 @@ import java.util.Map;
 import java.util.Properties;
 
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.defaults.CursorPublisher;
 import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.reflection.ExceptionUtil;
+import org.reactivestreams.Publisher;
 
 /**
  * @author Larry Meadors
@@ -196,6 +198,36 @@ public class SqlSessionManager implements SqlSessionFactory, SqlSession {
     return sqlSessionProxy.selectCursor(statement, parameter, rowBounds);
   }
 
+  @Override
+  public <T> Publisher<T> selectPublisher(String statement) {
+    return selectPublisher(statement, null);
+  }
+
+  @Override
+  public <T> Publisher<T> selectPublisher(String statement, Object parameter) {
+    return selectPublisher(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  @Override
+  public <T> Publisher<T> selectPublisher(String statement, Object parameter, RowBounds rowBounds) {
+    final SqlSession sqlSession = localSqlSession.get();
+    if (sqlSession != null) {
+      return sqlSession.selectPublisher(statement, parameter, rowBounds);
+    }
+    // the auto session of the proxy would be closed before the subscription, open one per subscription instead
+    return new CursorPublisher<T>(null, statement, parameter, rowBounds) {
+      @Override
+      protected SqlSession openSession() {
+        return sqlSessionFactory.openSession();
+      }
+
+      @Override
+      protected void closeSession(SqlSession session) {
+        session.close();
+      }
+    };
+  }
+
   @Override
   public <E> List<E> selectList(String statement) {
     return sqlSessionProxy.<E> selectList(statement);
@@ -279,6 +311,15 @@ public class SqlSessionManager implements SqlSessionFactory, SqlSession {
     sqlSession.clearCache();
   }
 
+  @Override
+  public LocalCacheStatistics getLocalCacheStatistics() {
+    final SqlSession sqlSession = localSqlSession.get();
+    if (sqlSession == null) {
+      throw new SqlSessionException("Error:  Cannot get local cache statistics.  No managed session is started.");
+    }
+    return sqlSession.getLocalCacheStatistics();
+  }
+
   @Override
   public void commit() {
     final SqlSession sqlSession = localSqlSession.get();
@@ -29,14 +29,17 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.defaults.CursorPublisher;
 import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.LocalCacheStatistics;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
+import org.reactivestreams.Publisher;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.dao.support.PersistenceExceptionTranslator;
 
@@ -214,6 +217,58 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
     return this.sqlSessionProxy.selectCursor(statement, parameter, rowBounds);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T> Publisher<T> selectPublisher(String statement) {
+    return selectPublisher(statement, null);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T> Publisher<T> selectPublisher(String statement, Object parameter) {
+    return selectPublisher(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  /**
+   * {@inheritDoc}
+   * The SqlSession is got from Spring's Transaction Manager when the subscriber first requests rows
+   * and released when the subscription completes or is cancelled. A {@code PersistenceException} is translated
+   * with the configured {@code PersistenceExceptionTranslator} before it reaches {@code onError}, like the other
+   * methods of this template.
+   */
+  @Override
+  public <T> Publisher<T> selectPublisher(String statement, Object parameter, RowBounds rowBounds) {
+    return new CursorPublisher<T>(null, statement, parameter, rowBounds) {
+      @Override
+      protected SqlSession openSession() {
+        return getSqlSession(
+            SqlSessionTemplate.this.sqlSessionFactory,
+            SqlSessionTemplate.this.executorType,
+            SqlSessionTemplate.this.exceptionTranslator);
+      }
+
+      @Override
+      protected void closeSession(SqlSession session) {
+        closeSqlSession(session, SqlSessionTemplate.this.sqlSessionFactory);
+      }
+
+      @Override
+      protected Throwable translateException(Throwable t) {
+        if (SqlSessionTemplate.this.exceptionTranslator != null && t instanceof PersistenceException) {
+          Throwable translated = SqlSessionTemplate.this.exceptionTranslator.translateExceptionIfPossible((PersistenceException) t);
+          if (translated != null) {
+            return translated;
+          }
+        }
+        return t;
+      }
+    };
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -366,6 +421,16 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
     this.sqlSessionProxy.clearCache();
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Outside of a Spring managed transaction each call uses a new session, whose counters are all zero.
+   */
+  @Override
+  public LocalCacheStatistics getLocalCacheStatistics() {
+    return this.sqlSessionProxy.getLocalCacheStatistics();
+  }
+
   /**
    * {@inheritDoc}
    *
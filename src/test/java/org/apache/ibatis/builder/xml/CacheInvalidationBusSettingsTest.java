@@ -0,0 +1,73 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.cache.invalidation.InvalidationListener;
+import org.apache.ibatis.cache.invalidation.MulticastInvalidationBus;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+
+public class CacheInvalidationBusSettingsTest {
+
+  private static Configuration parse(String settings) {
+    String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+        + "<!DOCTYPE configuration PUBLIC \"-//mybatis.org//DTD Config 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-config.dtd\">\n"
+        + "<configuration><settings>" + settings + "</settings></configuration>";
+    return new XMLConfigBuilder(new StringReader(xml)).parse();
+  }
+
+  @Test
+  public void shouldSetPropertiesOfTheBus() {
+    Configuration configuration = parse("<setting name=\"cacheInvalidationBus\" value=\"" + OfflineMulticastBus.class.getName() + "\"/>"
+        + "<setting name=\"cacheInvalidationBus.group\" value=\"239.255.27.9\"/>"
+        + "<setting name=\"cacheInvalidationBus.port\" value=\"4999\"/>"
+        + "<setting name=\"cacheInvalidationBus.timeToLive\" value=\"3\"/>");
+
+    assertTrue(configuration.getCacheInvalidationBus() instanceof OfflineMulticastBus);
+    MulticastInvalidationBus bus = (MulticastInvalidationBus) configuration.getCacheInvalidationBus();
+    assertEquals("239.255.27.9", bus.getGroup());
+    assertEquals(4999, bus.getPort());
+    assertEquals(3, bus.getTimeToLive());
+  }
+
+  @Test
+  public void shouldRejectUnknownPropertiesOfTheBus() {
+    try {
+      parse("<setting name=\"cacheInvalidationBus\" value=\"LOOPBACK\"/>"
+          + "<setting name=\"cacheInvalidationBus.port\" value=\"4999\"/>");
+      fail("An unknown property of the bus must be rejected");
+    } catch (BuilderException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("cacheInvalidationBus.port"));
+    }
+  }
+
+  /**
+   * Does not join the multicast group, so that the test needs no network.
+   */
+  public static class OfflineMulticastBus extends MulticastInvalidationBus {
+    @Override
+    public void subscribe(InvalidationListener listener) {
+    }
+  }
+
+}
@@ -0,0 +1,83 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+public class SqlTablesTest {
+
+  @Test
+  public void shouldFindTheTablesOfJoins() {
+    assertTables("select * from orders o join order_line l on l.order_id = o.id left outer join product p on p.id = l.product_id",
+        "orders", "order_line", "product");
+  }
+
+  @Test
+  public void shouldFindAllTablesOfACommaJoin() {
+    assertTables("select * from orders, order_line where order_line.order_id = orders.id", "orders", "order_line");
+    assertTables("SELECT * FROM Orders o, Order_Line AS l, product WHERE l.order_id = o.id", "orders", "order_line", "product");
+  }
+
+  @Test
+  public void shouldNotTakeAliasesForTables() {
+    assertTables("select * from orders o where o.id = ?", "orders");
+    assertTables("select * from orders as o inner join customer c using (customer_id)", "orders", "customer");
+  }
+
+  @Test
+  public void shouldFindTheTablesWrittenByAStatement() {
+    assertTables("insert into orders (id, customer_id) values (?, ?)", "orders");
+    assertTables("update orders set status = ? where id = ?", "orders");
+    assertTables("delete from orders where id = ?", "orders");
+    assertTables("insert into order_archive select * from orders where status = 'closed'", "order_archive", "orders");
+  }
+
+  @Test
+  public void shouldRemoveQuotesAndSchemas() {
+    assertTables("select * from \"Sales\".\"Orders\" join `order_line` on 1 = 1 join [Product] on 1 = 1",
+        "orders", "order_line", "product");
+    assertTables("select * from sales.orders, public.customer", "orders", "customer");
+    assertTables("select * from \"order table\"", "order table");
+  }
+
+  @Test
+  public void shouldFindTheTablesOfSubqueries() {
+    assertTables("select * from (select customer_id from orders) o join customer c on c.id = o.customer_id",
+        "orders", "customer");
+    assertTables("select * from customer where id in (select customer_id from orders)", "customer", "orders");
+    assertTables("update customer set total = (select sum(amount) from orders where customer_id = customer.id)",
+        "customer", "orders");
+  }
+
+  @Test
+  public void shouldIgnoreCommentsAndLiterals() {
+    assertTables("select * /* from audit */ from orders -- join customer\n where note = 'from payment'", "orders");
+    assertTables("select * from orders where note = 'it''s from payment'", "orders");
+  }
+
+  @Test
+  public void shouldReturnNoTablesWhenThereAreNone() {
+    assertTables("select 1");
+    assertTables("call refresh_totals(?)");
+  }
+
+  private static void assertTables(String sql, String... tables) {
+    assertArrayEquals(sql, tables, SqlTables.parse(sql));
+  }
+
+}
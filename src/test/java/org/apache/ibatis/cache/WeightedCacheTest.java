@@ -0,0 +1,105 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class WeightedCacheTest {
+
+  private WeightedCache newCache() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setRowWeight(100);
+    // 64 bytes of overhead per entry
+    cache.setMaximumWeight(1000);
+    return cache;
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedEntries() {
+    WeightedCache cache = newCache();
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, Collections.nCopies(1, i));
+    }
+    cache.getObject(0);
+    cache.putObject(5, Collections.nCopies(4, 5));
+    assertEquals(Collections.nCopies(1, 0), cache.getObject(0));
+    assertNull(cache.getObject(1));
+    assertNull(cache.getObject(2));
+    assertEquals(Collections.nCopies(1, 3), cache.getObject(3));
+    assertEquals(3 * 164 + 464, cache.getWeight());
+  }
+
+  @Test
+  public void shouldNotKeepAnEntryHeavierThanTheMaximumWeight() {
+    WeightedCache cache = newCache();
+    cache.putObject("small", Arrays.asList(1, 2));
+    cache.putObject("large", Collections.nCopies(20, 1));
+    assertNull(cache.getObject("large"));
+    assertEquals(Arrays.asList(1, 2), cache.getObject("small"));
+    assertEquals(264, cache.getWeight());
+  }
+
+  @Test
+  public void shouldRemoveTheValueReplacedByAnEntryTooHeavy() {
+    WeightedCache cache = newCache();
+    cache.putObject("key", Arrays.asList(1, 2));
+    cache.putObject("key", Collections.nCopies(20, 1));
+    assertNull(cache.getObject("key"));
+    assertEquals(0, cache.getSize());
+    assertEquals(0, cache.getWeight());
+  }
+
+  @Test
+  public void shouldReportTheWeightInTheCacheMetrics() {
+    Properties properties = new Properties();
+    properties.setProperty("rowWeight", "100");
+    properties.setProperty("maximumWeight", "1000");
+    CacheMetrics metrics = new CacheMetrics("weighted");
+    // 装饰后的缓存无法直接访问WeightedCache
+    Cache cache = new CacheBuilder("weighted").addDecorator(WeightedCache.class).properties(properties)
+        .metrics(metrics).build();
+    assertEquals(0, metrics.getWeight());
+
+    for (int i = 0; i < 7; i++) {
+      cache.putObject(i, Collections.nCopies(1, i));
+    }
+    assertEquals(6 * 164, metrics.getWeight());
+    assertEquals(1, metrics.getEvictions());
+    cache.removeObject(6);
+    assertEquals(5 * 164, metrics.getWeight());
+    cache.clear();
+    assertEquals(0, metrics.getWeight());
+  }
+
+  @Test
+  public void shouldReportNoWeightForUnweightedCaches() {
+    CacheMetrics metrics = new CacheMetrics("unweighted");
+    new CacheBuilder("unweighted").metrics(metrics).build();
+    assertEquals(-1, metrics.getWeight());
+  }
+
+}
@@ -0,0 +1,91 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.invalidation.CacheInvalidation;
+import org.apache.ibatis.cache.invalidation.InvalidationBus;
+import org.apache.ibatis.cache.invalidation.InvalidationListener;
+import org.junit.Test;
+
+public class NearCacheTest {
+
+  @Test
+  public void shouldClearOnInvalidationOfItsNamespace() {
+    RecordingBus bus = new RecordingBus();
+    Cache cache = new NearCache(new PerpetualCache("near"), bus);
+    cache.putObject("key", "value");
+
+    bus.deliver(CacheInvalidation.clear("other"));
+    assertEquals("value", cache.getObject("key"));
+    bus.deliver(CacheInvalidation.clear("near"));
+    assertNull(cache.getObject("key"));
+  }
+
+  @Test
+  public void shouldUnsubscribeOnceCollected() throws Exception {
+    RecordingBus bus = new RecordingBus();
+    WeakReference<Cache> reference = new WeakReference<Cache>(new NearCache(new PerpetualCache("near"), bus));
+    assertEquals(1, bus.listeners.size());
+
+    for (int i = 0; i < 50 && reference.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(reference.get());
+    bus.deliver(CacheInvalidation.clear("near"));
+
+    assertTrue(bus.listeners.isEmpty());
+  }
+
+  private static class RecordingBus implements InvalidationBus {
+    private final List<InvalidationListener> listeners = new ArrayList<InvalidationListener>();
+
+    void deliver(CacheInvalidation invalidation) {
+      for (InvalidationListener listener : new ArrayList<InvalidationListener>(listeners)) {
+        listener.onInvalidation(invalidation);
+      }
+    }
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+    }
+
+    @Override
+    public void subscribe(InvalidationListener listener) {
+      listeners.add(listener);
+    }
+
+    @Override
+    public void unsubscribe(InvalidationListener listener) {
+      listeners.remove(listener);
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+}
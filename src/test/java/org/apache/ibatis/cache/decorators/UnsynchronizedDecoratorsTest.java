@@ -0,0 +1,79 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.impl.ConcurrentCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class UnsynchronizedDecoratorsTest {
+
+  @Test
+  public void shouldCountEveryRequestOfConcurrentReaders() throws Exception {
+    Cache cache = new CacheBuilder("concurrent").implementation(ConcurrentCache.class).build();
+    assertTrue(cache instanceof LoggingCache);
+    final LoggingCache loggingCache = (LoggingCache) cache;
+    loggingCache.putObject("key", "value");
+
+    final int threads = 8;
+    final int requests = 20000;
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < requests; j++) {
+            loggingCache.getObject(j % 2 == 0 ? "key" : "missing");
+          }
+          done.countDown();
+        }
+      }.start();
+    }
+    done.await();
+
+    assertEquals(threads * requests, loggingCache.requests.sum());
+    assertEquals(threads * requests / 2, loggingCache.hits.sum());
+  }
+
+  @Test
+  public void shouldClearStaleCacheOnce() throws Exception {
+    final int[] clears = new int[1];
+    ScheduledCache cache = new ScheduledCache(new PerpetualCache("scheduled") {
+      @Override
+      public void clear() {
+        clears[0]++;
+        super.clear();
+      }
+    });
+    cache.setClearInterval(10);
+    cache.putObject("key", "value");
+    Thread.sleep(50);
+
+    assertNull(cache.getObject("key"));
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+    assertEquals(1, clears[0]);
+  }
+
+}
@@ -0,0 +1,70 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.impl.ConcurrentCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class CacheMetricsTest {
+
+  @Test
+  public void shouldCountEvictionsOfTheEvictionDecorator() {
+    CacheMetrics metrics = new CacheMetrics("lru");
+    Cache cache = new CacheBuilder("lru").size(2).metrics(metrics).build();
+
+    cache.putObject("a", 1);
+    cache.putObject("b", 2);
+    cache.putObject("c", 3);
+
+    assertEquals(3, metrics.getPuts());
+    assertEquals(1, metrics.getEvictions());
+    assertEquals(2, metrics.getSize());
+  }
+
+  @Test
+  public void shouldNotCountReplacedOrNullEntriesAsEvictions() {
+    CacheMetrics metrics = new CacheMetrics("replace");
+    Cache cache = new CacheBuilder("replace").size(2).metrics(metrics).build();
+
+    cache.putObject("a", 1);
+    cache.putObject("a", 2);
+    // TransactionalCache caches the misses as null values
+    cache.putObject("b", null);
+    cache.putObject("b", null);
+
+    assertEquals(4, metrics.getPuts());
+    assertEquals(0, metrics.getEvictions());
+  }
+
+  @Test
+  public void shouldCountEvictionsOfConcurrentCache() {
+    CacheMetrics metrics = new CacheMetrics("concurrent");
+    Cache cache = new CacheBuilder("concurrent").implementation(ConcurrentCache.class).size(10).metrics(metrics).build();
+
+    for (int i = 0; i < 25; i++) {
+      cache.putObject(i, i);
+    }
+    cache.putObject(24, 24);
+
+    assertEquals(10, cache.getSize());
+    assertEquals(15, metrics.getEvictions());
+  }
+
+}
@@ -0,0 +1,149 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.cache.CacheException;
+import org.junit.Test;
+
+public class BinaryCacheSerializerTest {
+
+  private final BinaryCacheSerializer serializer = new BinaryCacheSerializer();
+
+  @Test
+  public void shouldPreserveCyclesAndSharedReferences() {
+    Node parent = new Node();
+    parent.name = "parent";
+    Node child = new Node();
+    child.name = "child";
+    child.parent = parent;
+    parent.children.add(child);
+    parent.children.add(child);
+
+    Node copy = (Node) serializer.deserialize(serializer.serialize(parent));
+
+    assertNotSame(parent, copy);
+    assertEquals("parent", copy.name);
+    assertEquals(2, copy.children.size());
+    assertSame(copy.children.get(0), copy.children.get(1));
+    assertEquals("child", copy.children.get(0).name);
+    assertSame(copy, copy.children.get(0).parent);
+  }
+
+  @Test
+  public void shouldReadFieldsOfAllSuperclasses() {
+    Employee employee = new Employee();
+    employee.setId(7);
+    employee.name = "Jane";
+    employee.salary = 1234.5d;
+
+    Employee copy = (Employee) serializer.deserialize(serializer.serialize(employee));
+
+    assertEquals(7, copy.getId());
+    assertEquals("Jane", copy.name);
+    assertEquals(1234.5d, copy.salary, 0d);
+  }
+
+  @Test
+  public void shouldLeaveTransientFieldsToTheConstructor() {
+    Node node = new Node();
+    node.name = "node";
+    node.label = "changed";
+
+    Node copy = (Node) serializer.deserialize(serializer.serialize(node));
+
+    assertEquals("node", copy.name);
+    assertEquals("default", copy.label);
+  }
+
+  @Test
+  public void shouldRejectValuesWrittenWithOtherFields() {
+    OldShape shape = new OldShape();
+    shape.width = 3;
+    byte[] bytes = serializer.serialize(shape);
+    // 模拟类在写入后改变了字段：名称等长的另一个类
+    replace(bytes, OldShape.class.getName(), NewShape.class.getName());
+
+    try {
+      serializer.deserialize(bytes);
+      fail("A value of a class with other fields must not be read");
+    } catch (CacheException e) {
+      // expected
+    }
+  }
+
+  private static void replace(byte[] bytes, String from, String to) {
+    byte[] source = from.getBytes();
+    byte[] target = to.getBytes();
+    for (int i = 0; i <= bytes.length - source.length; i++) {
+      boolean matches = true;
+      for (int j = 0; j < source.length && matches; j++) {
+        matches = bytes[i + j] == source[j];
+      }
+      if (matches) {
+        System.arraycopy(target, 0, bytes, i, target.length);
+        return;
+      }
+    }
+    fail(from + " not found");
+  }
+
+  public static class Node implements Serializable {
+    private static final long serialVersionUID = 1L;
+    String name;
+    Node parent;
+    List<Node> children = new ArrayList<Node>();
+    transient String label = "default";
+  }
+
+  public static class Person implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private int id;
+    String name;
+
+    public int getId() {
+      return id;
+    }
+
+    public void setId(int id) {
+      this.id = id;
+    }
+  }
+
+  public static class Employee extends Person {
+    private static final long serialVersionUID = 1L;
+    double salary;
+  }
+
+  public static class OldShape implements Serializable {
+    private static final long serialVersionUID = 1L;
+    int width;
+  }
+
+  public static class NewShape implements Serializable {
+    private static final long serialVersionUID = 1L;
+    long width;
+  }
+
+}
@@ -0,0 +1,160 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor.defaults;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+public class CursorPublisherTest {
+
+  @Test
+  public void shouldNotSignalAnInvalidRequestWhileAnotherSignalIsInProgress() {
+    CursorPublisher<Integer> publisher = new CursorPublisher<Integer>(sessionOf(Arrays.asList(0, 1, 2)), "selectAll", null, RowBounds.DEFAULT);
+    final List<String> signals = new ArrayList<String>();
+    final boolean[] overlapping = new boolean[1];
+    publisher.subscribe(new Subscriber<Integer>() {
+      private Subscription subscription;
+      private boolean inOnNext;
+
+      @Override
+      public void onSubscribe(Subscription s) {
+        subscription = s;
+        s.request(2);
+      }
+
+      @Override
+      public void onNext(Integer row) {
+        inOnNext = true;
+        signals.add("next " + row);
+        // 在 onNext 中发出非法请求
+        subscription.request(0);
+        inOnNext = false;
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        overlapping[0] |= inOnNext;
+        signals.add(t.getClass().getSimpleName());
+      }
+
+      @Override
+      public void onComplete() {
+        signals.add("complete");
+      }
+    });
+    assertEquals(Arrays.asList("next 0", "IllegalArgumentException"), signals);
+    assertTrue("onError must not be signalled during onNext", !overlapping[0]);
+  }
+
+  @Test
+  public void shouldPassTheFailureThroughTranslateException() {
+    CursorPublisher<Integer> publisher = new CursorPublisher<Integer>(sessionOf(null), "selectAll", null, RowBounds.DEFAULT) {
+      @Override
+      protected Throwable translateException(Throwable t) {
+        return new IllegalStateException("translated", t);
+      }
+    };
+    final List<Throwable> errors = new ArrayList<Throwable>();
+    publisher.subscribe(new Subscriber<Integer>() {
+      @Override
+      public void onSubscribe(Subscription s) {
+        s.request(1);
+      }
+
+      @Override
+      public void onNext(Integer row) {
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        errors.add(t);
+      }
+
+      @Override
+      public void onComplete() {
+      }
+    });
+    assertEquals(1, errors.size());
+    assertEquals("translated", errors.get(0).getMessage());
+  }
+
+  // rows 为 null 时 selectCursor 失败
+  private static SqlSession sessionOf(final List<Integer> rows) {
+    return (SqlSession) Proxy.newProxyInstance(SqlSession.class.getClassLoader(), new Class<?>[] { SqlSession.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if (!"selectCursor".equals(method.getName())) {
+              throw new UnsupportedOperationException(method.getName());
+            }
+            if (rows == null) {
+              throw new IllegalStateException("connection lost");
+            }
+            return new ListCursor(rows);
+          }
+        });
+  }
+
+  private static class ListCursor implements Cursor<Integer> {
+    private final List<Integer> rows;
+    private boolean open = true;
+
+    ListCursor(List<Integer> rows) {
+      this.rows = rows;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public boolean isConsumed() {
+      return false;
+    }
+
+    @Override
+    public int getCurrentIndex() {
+      return -1;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+      return rows.iterator();
+    }
+
+    @Override
+    public void close() {
+      open = false;
+    }
+  }
+
+}
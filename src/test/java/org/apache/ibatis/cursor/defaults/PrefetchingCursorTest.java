@@ -0,0 +1,122 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor.defaults;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.Test;
+
+public class PrefetchingCursorTest {
+
+  @Test
+  public void shouldDeliverRowsReadBeforeAFailure() {
+    final CountDownLatch failing = new CountDownLatch(1);
+    Cursor<Integer> failingCursor = new FailingCursor(2, failing);
+    // 读取线程在队列已满时失败
+    Executor executor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        PrefetchingCursor.THREAD_PER_CURSOR.execute(command);
+        try {
+          failing.await();
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    PrefetchingCursor<Integer> cursor = new PrefetchingCursor<Integer>(failingCursor, executor, 2, RowBounds.DEFAULT);
+
+    List<Integer> rows = new ArrayList<Integer>();
+    try {
+      for (Integer row : cursor) {
+        rows.add(row);
+      }
+      fail("The failure of the reader must be thrown");
+    } catch (IllegalStateException e) {
+      assertEquals("connection lost", e.getMessage());
+    } finally {
+      cursor.close();
+    }
+    assertEquals(Arrays.asList(0, 1), rows);
+  }
+
+  private static class FailingCursor implements Cursor<Integer> {
+    private final int rows;
+    private final CountDownLatch failing;
+
+    FailingCursor(int rows, CountDownLatch failing) {
+      this.rows = rows;
+      this.failing = failing;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public boolean isConsumed() {
+      return false;
+    }
+
+    @Override
+    public int getCurrentIndex() {
+      return -1;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+      return new Iterator<Integer>() {
+        int next;
+
+        @Override
+        public boolean hasNext() {
+          if (next == rows) {
+            failing.countDown();
+            throw new IllegalStateException("connection lost");
+          }
+          return true;
+        }
+
+        @Override
+        public Integer next() {
+          return next++;
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+}
@@ -0,0 +1,266 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.datasource.ConnectionDeadline;
+import org.junit.After;
+import org.junit.Test;
+
+public class PooledDataSourceTest {
+
+  private PooledDataSource dataSource;
+
+  private PooledDataSource newDataSource(String name) {
+    dataSource = new PooledDataSource("org.h2.Driver", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+    return dataSource;
+  }
+
+  @After
+  public void closePool() {
+    if (dataSource != null) {
+      dataSource.setPoolHousekeepingInterval(0);
+      dataSource.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldHandReturnedConnectionsToTheLongestWaitingThread() throws Exception {
+    final PooledDataSource dataSource = newDataSource("handoff");
+    dataSource.setPoolMaximumActiveConnections(1);
+    Connection connection = dataSource.getConnection();
+
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 3; i++) {
+      final int index = i;
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            Connection conn = dataSource.getConnection();
+            order.add(index);
+            conn.close();
+          } catch (SQLException e) {
+            order.add(-1);
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+      // 上一个线程排队后再启动下一个
+      waitFor(dataSource.getConnectionBag(), i + 1);
+    }
+    connection.close();
+    for (Thread thread : threads) {
+      thread.join(5000);
+    }
+
+    assertEquals(Arrays.asList(0, 1, 2), order);
+    assertEquals(3, dataSource.getPoolState().getHadToWaitCount());
+  }
+
+  @Test
+  public void shouldStopWaitingAtTheDeadline() throws Exception {
+    PooledDataSource dataSource = newDataSource("deadline");
+    dataSource.setPoolMaximumActiveConnections(1);
+    dataSource.setPoolTimeToWait(20000);
+    Connection connection = dataSource.getConnection();
+
+    Long previous = ConnectionDeadline.set(100, TimeUnit.MILLISECONDS);
+    long start = System.nanoTime();
+    try {
+      dataSource.getConnection();
+      fail("The pool must give up at the deadline");
+    } catch (SQLTransientConnectionException e) {
+      long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      assertTrue("waited " + waited + "ms", waited >= 90 && waited < 5000);
+    } finally {
+      ConnectionDeadline.restore(previous);
+      connection.close();
+    }
+    assertEquals(0, dataSource.getConnectionBag().getWaiterCount());
+  }
+
+  @Test
+  public void shouldClaimOverdueConnection() throws Exception {
+    PooledDataSource dataSource = newDataSource("overdue");
+    dataSource.setPoolMaximumActiveConnections(1);
+    dataSource.setPoolMaximumCheckoutTime(50);
+    Connection overdue = dataSource.getConnection();
+    Thread.sleep(100);
+
+    Connection claimed = dataSource.getConnection();
+    try {
+      assertNotSame(overdue, claimed);
+      assertEquals(PooledDataSource.unwrapConnection(overdue), PooledDataSource.unwrapConnection(claimed));
+      assertEquals(1, dataSource.getPoolState().getClaimedOverdueConnectionCount());
+      try {
+        overdue.createStatement();
+        fail("The claimed connection must no longer be usable by its former borrower");
+      } catch (SQLException e) {
+        // expected
+      }
+      // 原借用者归还时视为无效连接，不影响新借用者
+      overdue.close();
+      assertEquals(1, dataSource.getPoolState().getBadConnectionCount());
+      assertEquals(1, dataSource.getPoolState().getActiveConnectionCount());
+    } finally {
+      claimed.close();
+    }
+  }
+
+  @Test
+  public void shouldCloseExcessIdleConnectionsInTheBackground() throws Exception {
+    PooledDataSource dataSource = newDataSource("housekeeping");
+    dataSource.setPoolMaximumIdleConnections(1);
+    dataSource.setPoolHousekeepingInterval(50);
+    List<Connection> connections = new ArrayList<Connection>();
+    for (int i = 0; i < 3; i++) {
+      connections.add(dataSource.getConnection());
+    }
+    for (Connection connection : connections) {
+      connection.close();
+    }
+    // 归还时不关闭，由维护线程处理
+    assertEquals(3, dataSource.getPoolState().getIdleConnectionCount());
+
+    for (int i = 0; i < 100 && dataSource.getPoolState().getIdleConnectionCount() > 1; i++) {
+      Thread.sleep(20);
+    }
+    assertEquals(1, dataSource.getPoolState().getIdleConnectionCount());
+    assertEquals(2, dataSource.getPoolState().getEvictedConnectionCount());
+  }
+
+  @Test
+  public void shouldCloseExpiredConnectionsInTheBackground() throws Exception {
+    PooledDataSource dataSource = newDataSource("lifetime");
+    dataSource.setPoolHousekeepingInterval(50);
+    dataSource.setPoolMaximumLifetime(200);
+    Connection connection = dataSource.getConnection();
+    Connection realConnection = PooledDataSource.unwrapConnection(connection);
+    connection.close();
+
+    for (int i = 0; i < 100 && dataSource.getPoolState().getExpiredConnectionCount() == 0; i++) {
+      Thread.sleep(20);
+    }
+    assertEquals(1, dataSource.getPoolState().getExpiredConnectionCount());
+    assertEquals(0, dataSource.getPoolState().getIdleConnectionCount());
+    assertTrue(realConnection.isClosed());
+  }
+
+  @Test
+  public void shouldResetCachedStatements() throws Exception {
+    PooledDataSource dataSource = newDataSource("statements");
+    dataSource.setPoolMaximumActiveConnections(1);
+    dataSource.setPoolPreparedStatementCacheSize(4);
+    Connection connection = dataSource.getConnection();
+    try {
+      Statement ddl = connection.createStatement();
+      ddl.execute("create table item (id int primary key)");
+      ddl.execute("insert into item values (1), (2), (3)");
+      ddl.close();
+
+      String sql = "select id from item where id >= ? order by id";
+      PreparedStatement statement = connection.prepareStatement(sql);
+      statement.setMaxRows(1);
+      statement.setInt(1, 2);
+      assertEquals(1, countRows(statement.executeQuery()));
+      statement.close();
+      assertTrue(statement.isClosed());
+
+      PreparedStatement reused = connection.prepareStatement(sql);
+      assertEquals(1, dataSource.getPoolState().getStatementCacheHitCount());
+      assertEquals(0, reused.getMaxRows());
+      try {
+        reused.executeQuery();
+        fail("The parameters of a cached statement must be cleared");
+      } catch (SQLException e) {
+        // expected
+      }
+      reused.setInt(1, 1);
+      assertEquals(3, countRows(reused.executeQuery()));
+      reused.close();
+    } finally {
+      connection.close();
+    }
+
+    // 语句缓存属于物理连接，归还后仍可复用
+    connection = dataSource.getConnection();
+    try {
+      connection.prepareStatement("select id from item where id >= ? order by id").close();
+      assertEquals(2, dataSource.getPoolState().getStatementCacheHitCount());
+    } finally {
+      connection.close();
+    }
+  }
+
+  @Test
+  public void shouldOnlyTrackTheResultSetsOfTheLastExecution() throws Exception {
+    PooledDataSource dataSource = newDataSource("resultsets");
+    dataSource.setPoolPreparedStatementCacheSize(4);
+    Connection connection = dataSource.getConnection();
+    try {
+      PreparedStatement statement = connection.prepareStatement("select 1");
+      for (int i = 0; i < 100; i++) {
+        statement.executeQuery();
+      }
+      ResultSet last = statement.executeQuery();
+      Field resultSets = CachedStatement.class.getDeclaredField("resultSets");
+      resultSets.setAccessible(true);
+      assertEquals(Collections.singletonList(last), resultSets.get(Proxy.getInvocationHandler(statement)));
+      statement.close();
+      assertTrue(last.isClosed());
+    } finally {
+      connection.close();
+    }
+  }
+
+  private static int countRows(ResultSet resultSet) throws SQLException {
+    int rows = 0;
+    while (resultSet.next()) {
+      rows++;
+    }
+    resultSet.close();
+    return rows;
+  }
+
+  private static void waitFor(ConnectionBag bag, int waiters) throws InterruptedException {
+    for (int i = 0; i < 250 && bag.getWaiterCount() < waiters; i++) {
+      Thread.sleep(20);
+    }
+    assertEquals(waiters, bag.getWaiterCount());
+  }
+
+}
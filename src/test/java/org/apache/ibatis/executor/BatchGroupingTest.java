@@ -0,0 +1,187 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchGroupingTest {
+
+  private static final String URL = "jdbc:h2:mem:batch_grouping;DB_CLOSE_DELAY=-1";
+
+  private Configuration configuration;
+  private SqlSessionFactory sqlSessionFactory;
+
+  public interface Mapper {
+    @Insert("insert into header (id, name) values (#{id}, #{name})")
+    int insertHeader(@Param("id") int id, @Param("name") String name);
+
+    @Insert("insert into line (id, header_id) values (#{id}, #{headerId})")
+    int insertLine(@Param("id") int id, @Param("headerId") int headerId);
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    Class.forName("org.h2.Driver");
+    Connection conn = DriverManager.getConnection(URL, "sa", "");
+    try {
+      Statement st = conn.createStatement();
+      st.execute("drop table line if exists");
+      st.execute("drop table header if exists");
+      st.execute("create table header (id int primary key, name varchar(20))");
+      st.execute("create table line (id int primary key, header_id int not null references header (id))");
+      st.close();
+    } finally {
+      conn.close();
+    }
+    configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(),
+        new UnpooledDataSource("org.h2.Driver", URL, "sa", "")));
+    configuration.setBatchGroupingEnabled(true);
+    configuration.addMapper(Mapper.class);
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+  }
+
+  @Test
+  public void shouldGroupInterleavedStatementsIntoOneBatchPerSql() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertHeader(1, "h1");
+      mapper.insertLine(10, 1);
+      mapper.insertLine(11, 1);
+      mapper.insertHeader(2, "h2");
+      mapper.insertLine(20, 2);
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(2, results.size());
+      assertEquals(Mapper.class.getName() + ".insertHeader", results.get(0).getMappedStatement().getId());
+      assertEquals(2, results.get(0).getUpdateCounts().length);
+      assertEquals(Mapper.class.getName() + ".insertLine", results.get(1).getMappedStatement().getId());
+      assertEquals(3, results.get(1).getUpdateCounts().length);
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+    assertEquals(2, count("header"));
+    assertEquals(3, count("line"));
+  }
+
+  @Test
+  public void shouldKeepTheFirstUseOrderOfStatementsAcrossFlushes() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertHeader(1, "h1");
+      mapper.insertLine(10, 1);
+      sqlSession.flushStatements();
+      // 明细先于主表加入批次，提交时主表仍先执行，外键约束不会失败
+      mapper.insertLine(20, 2);
+      mapper.insertHeader(2, "h2");
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(2, results.size());
+      assertEquals(Mapper.class.getName() + ".insertHeader", results.get(0).getMappedStatement().getId());
+      assertEquals(Mapper.class.getName() + ".insertLine", results.get(1).getMappedStatement().getId());
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+    assertEquals(2, count("line"));
+  }
+
+  @Test
+  public void shouldAutoFlushAtTheRowThreshold() throws Exception {
+    configuration.setBatchFlushRowThreshold(3);
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH, true);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertHeader(1, "h1");
+      mapper.insertLine(10, 1);
+      assertEquals(0, count("header"));
+      mapper.insertLine(11, 1);
+      assertEquals(1, count("header"));
+      assertEquals(2, count("line"));
+      mapper.insertLine(12, 1);
+      assertEquals(2, count("line"));
+
+      // 自动提交的结果在下次flushStatements时一并返回
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(3, results.size());
+      assertEquals(1, results.get(0).getUpdateCounts().length);
+      assertEquals(2, results.get(1).getUpdateCounts().length);
+      assertEquals(1, results.get(2).getUpdateCounts().length);
+      assertEquals(0, sqlSession.flushStatements().size());
+    } finally {
+      sqlSession.close();
+    }
+    assertEquals(3, count("line"));
+  }
+
+  @Test
+  public void shouldAutoFlushAtTheByteThreshold() throws Exception {
+    // 每行约 8 + 2 * 2 字节
+    configuration.setBatchFlushByteThreshold(30);
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH, true);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertHeader(1, "h1");
+      mapper.insertHeader(2, "h2");
+      assertEquals(0, count("header"));
+      mapper.insertHeader(3, "h3");
+      assertEquals(3, count("header"));
+      mapper.insertHeader(4, "h4");
+
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(2, results.size());
+      assertEquals(3, results.get(0).getUpdateCounts().length);
+      assertEquals(1, results.get(1).getUpdateCounts().length);
+    } finally {
+      sqlSession.close();
+    }
+    assertEquals(4, count("header"));
+  }
+
+  private static int count(String table) throws Exception {
+    Connection conn = DriverManager.getConnection(URL, "sa", "");
+    try {
+      Statement st = conn.createStatement();
+      ResultSet rs = st.executeQuery("select count(*) from " + table);
+      rs.next();
+      int count = rs.getInt(1);
+      st.close();
+      return count;
+    } finally {
+      conn.close();
+    }
+  }
+
+}
@@ -0,0 +1,180 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchInsertRewriteTest {
+
+  private static final String URL = "jdbc:h2:mem:batch_insert_rewrite;DB_CLOSE_DELAY=-1";
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  public interface Mapper {
+    @Insert("insert into person (name, age) values (#{name}, #{age})")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int insert(Person person);
+
+    @Select("select name from person where id = #{id}")
+    String selectName(int id);
+
+    @Select("select name from person order by id")
+    List<String> selectNames();
+  }
+
+  public static class Person {
+    private Integer id;
+    private String name;
+    private int age;
+
+    public Person() {
+    }
+
+    public Person(String name, int age) {
+      this.name = name;
+      this.age = age;
+    }
+
+    public Integer getId() {
+      return id;
+    }
+
+    public void setId(Integer id) {
+      this.id = id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public int getAge() {
+      return age;
+    }
+
+    public void setAge(int age) {
+      this.age = age;
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    Class.forName("org.h2.Driver");
+    Connection conn = DriverManager.getConnection(URL, "sa", "");
+    try {
+      Statement st = conn.createStatement();
+      st.execute("drop table person if exists");
+      st.execute("create table person (id int auto_increment primary key, name varchar(20), age int)");
+      st.close();
+    } finally {
+      conn.close();
+    }
+    Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(),
+        new UnpooledDataSource("org.h2.Driver", URL, "sa", "")));
+    configuration.setBatchInsertRewriteEnabled(true);
+    configuration.setBatchInsertRewriteChunkSize(3);
+    configuration.addMapper(Mapper.class);
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+  }
+
+  @Test
+  public void shouldInsertTheValuesOfEachCallWhenTheParameterIsReused() {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Person person = new Person();
+      for (int i = 0; i < 10; i++) {
+        person.setName("name" + i);
+        person.setAge(i);
+        mapper.insert(person);
+      }
+      sqlSession.flushStatements();
+      List<String> names = mapper.selectNames();
+      assertEquals(10, names.size());
+      for (int i = 0; i < 10; i++) {
+        assertEquals("name" + i, names.get(i));
+      }
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldIgnoreChangesMadeAfterTheInsert() {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Person person = new Person("before", 1);
+      mapper.insert(person);
+      person.setName("after");
+      sqlSession.flushStatements();
+      assertEquals("before", mapper.selectNames().get(0));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldAssignGeneratedKeysInOrder() {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Person> persons = new ArrayList<Person>();
+      for (int i = 0; i < 10; i++) {
+        Person person = new Person("name" + i, i);
+        persons.add(person);
+        mapper.insert(person);
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(1, results.size());
+      int[] updateCounts = results.get(0).getUpdateCounts();
+      assertEquals(10, updateCounts.length);
+      for (int i = 0; i < 10; i++) {
+        assertEquals(1, updateCounts[i]);
+        Person person = persons.get(i);
+        assertNotNull(person.getId());
+        assertEquals(person.getName(), mapper.selectName(person.getId()));
+      }
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}
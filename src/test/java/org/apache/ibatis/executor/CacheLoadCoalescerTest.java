@@ -0,0 +1,129 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.serializer.BinaryCacheSerializer;
+import org.junit.After;
+import org.junit.Test;
+
+public class CacheLoadCoalescerTest {
+
+  private final CacheLoadCoalescer coalescer = new CacheLoadCoalescer();
+  private final Cache cache = new PerpetualCache("test");
+  private final CacheKey key = new CacheKey(new Object[] { "select", 1 });
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private Future<Object> loadAsync(final long timeout, final CacheLoadCoalescer.Loader loader) {
+    return executor.submit(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return coalescer.load(cache, key, new BinaryCacheSerializer(), timeout, loader);
+      }
+    });
+  }
+
+  @Test
+  public void shouldShareTheResultOfTheRunningQuery() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger queries = new AtomicInteger();
+    final List<String> result = new ArrayList<String>(Arrays.asList("a", "b"));
+    Future<Object> leader = loadAsync(5000, new CacheLoadCoalescer.Loader() {
+      @Override
+      public Object load() throws java.sql.SQLException {
+        queries.incrementAndGet();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+        return result;
+      }
+    });
+    while (coalescer.size() == 0) {
+      Thread.sleep(10);
+    }
+    Future<Object> follower = loadAsync(5000, new CacheLoadCoalescer.Loader() {
+      @Override
+      public Object load() {
+        queries.incrementAndGet();
+        return null;
+      }
+    });
+    Thread.sleep(200);
+    release.countDown();
+    assertEquals(result, leader.get(5, TimeUnit.SECONDS));
+    Object shared = follower.get(5, TimeUnit.SECONDS);
+    assertEquals(result, shared);
+    assertNotSame(result, shared);
+    assertEquals(1, queries.get());
+    assertEquals(0, coalescer.size());
+  }
+
+  @Test
+  public void shouldRunTheQueryAfterWaitingTooLong() throws Exception {
+    final CountDownLatch followerDone = new CountDownLatch(1);
+    // the running query waits for the waiting session, like a connection or a lock it holds
+    Future<Object> leader = loadAsync(5000, new CacheLoadCoalescer.Loader() {
+      @Override
+      public Object load() {
+        try {
+          assertTrue(followerDone.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+        return "leader";
+      }
+    });
+    while (coalescer.size() == 0) {
+      Thread.sleep(10);
+    }
+    long start = System.nanoTime();
+    Object own = coalescer.load(cache, key, new BinaryCacheSerializer(), 100, new CacheLoadCoalescer.Loader() {
+      @Override
+      public Object load() {
+        return "follower";
+      }
+    });
+    followerDone.countDown();
+    assertEquals("follower", own);
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+    assertEquals("leader", leader.get(5, TimeUnit.SECONDS));
+  }
+
+}
@@ -0,0 +1,117 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import org.apache.ibatis.annotations.CacheNamespace;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheTagInvalidationTest {
+
+  private static final String URL = "jdbc:h2:mem:cache_tag_invalidation;DB_CLOSE_DELAY=-1";
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @CacheNamespace
+  public interface Mapper {
+    @Select("select name from customer where id = #{id}")
+    String selectCustomerName(int id);
+
+    @Select("select name from product where id = #{id}")
+    String selectProductName(int id);
+
+    @Update("update customer set name = #{name} where id = #{id}")
+    int updateCustomerName(@Param("id") int id, @Param("name") String name);
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    execute("drop table customer if exists",
+        "drop table product if exists",
+        "create table customer (id int primary key, name varchar(20))",
+        "create table product (id int primary key, name varchar(20))",
+        "insert into customer values (1, 'customer')",
+        "insert into product values (1, 'product')");
+    Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(),
+        new UnpooledDataSource("org.h2.Driver", URL, "sa", "")));
+    configuration.setCacheTagInvalidationEnabled(true);
+    configuration.addMapper(Mapper.class);
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+  }
+
+  @Test
+  public void shouldOnlyInvalidateTheReadsOfTheWrittenTable() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertEquals("customer", mapper.selectCustomerName(1));
+      assertEquals("product", mapper.selectProductName(1));
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+
+    // 绕过MyBatis修改product，缓存命中时仍返回旧值
+    execute("update product set name = 'changed' where id = 1");
+    sqlSession = sqlSessionFactory.openSession();
+    try {
+      sqlSession.getMapper(Mapper.class).updateCustomerName(1, "renamed");
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+
+    sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertEquals("renamed", mapper.selectCustomerName(1));
+      assertEquals("product", mapper.selectProductName(1));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private static void execute(String... sqls) throws Exception {
+    Class.forName("org.h2.Driver");
+    Connection conn = DriverManager.getConnection(URL, "sa", "");
+    try {
+      Statement st = conn.createStatement();
+      for (String sql : sqls) {
+        st.execute(sql);
+      }
+      st.close();
+    } finally {
+      conn.close();
+    }
+  }
+
+}
@@ -0,0 +1,187 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.apache.ibatis.type.StringTypeHandler;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CompiledRowMapperTest {
+
+  private static final String URL = "jdbc:h2:mem:compiled_row_mapper;DB_CLOSE_DELAY=-1";
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  public interface Mapper {
+    @Select("select id, name, score from item order by id")
+    List<Item> selectItems();
+
+    @Select("select id, name from item order by id")
+    List<HashMap<String, Object>> selectMaps();
+
+    @Select("select id, name from item order by id")
+    List<ImmutableItem> selectImmutableItems();
+  }
+
+  public static class Item {
+    private int id;
+    private String name;
+    private Double score;
+
+    public int getId() {
+      return id;
+    }
+
+    public void setId(int id) {
+      this.id = id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public Double getScore() {
+      return score;
+    }
+
+    public void setScore(Double score) {
+      this.score = score;
+    }
+  }
+
+  public static class ImmutableItem {
+    private final Integer id;
+    private final String name;
+
+    public ImmutableItem(Integer id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    public Integer getId() {
+      return id;
+    }
+
+    public String getName() {
+      return name;
+    }
+  }
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Class.forName("org.h2.Driver");
+    Connection conn = DriverManager.getConnection(URL, "sa", "");
+    try {
+      Statement st = conn.createStatement();
+      st.execute("create table item (id int primary key, name varchar(20), score double)");
+      st.execute("insert into item values (1, 'one', 1.5), (2, 'two', null)");
+      st.close();
+    } finally {
+      conn.close();
+    }
+    Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(),
+        new UnpooledDataSource("org.h2.Driver", URL, "sa", "")));
+    configuration.setCompiledRowMappersEnabled(true);
+    configuration.addMapper(Mapper.class);
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+  }
+
+  @Test
+  public void shouldMapBeans() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      // twice: the second query uses the compiled mapper
+      for (int i = 0; i < 2; i++) {
+        List<Item> items = sqlSession.getMapper(Mapper.class).selectItems();
+        sqlSession.clearCache();
+        assertEquals(2, items.size());
+        assertEquals(1, items.get(0).getId());
+        assertEquals("one", items.get(0).getName());
+        assertEquals(Double.valueOf(1.5), items.get(0).getScore());
+        assertEquals(2, items.get(1).getId());
+        assertEquals(null, items.get(1).getScore());
+      }
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldMapMaps() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<HashMap<String, Object>> maps = sqlSession.getMapper(Mapper.class).selectMaps();
+      assertEquals(2, maps.size());
+      assertEquals(1, maps.get(0).get("ID"));
+      assertEquals("two", maps.get(1).get("NAME"));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldStopCompilingPastTheMaximumNumberOfLayouts() {
+    RowMapperCompiler compiler = new RowMapperCompiler();
+    List<RowMapperCompiler.ColumnMapping> columnMappings = Collections.singletonList(
+        new RowMapperCompiler.ColumnMapping(1, "name", String.class, new StringTypeHandler()));
+    assertNotNull(compiler.compile("first", Item.class, columnMappings, false));
+
+    // 动态SQL产生的列组合无上限，每个编译结果都是一个新类
+    for (int i = 0; !compiler.isFull(); i++) {
+      compiler.markUnsupported("layout" + i);
+    }
+    assertNull(compiler.compile("last", Item.class, columnMappings, false));
+    assertNull(compiler.getRowMapper("last"));
+    assertNotNull(compiler.getRowMapper("first"));
+  }
+
+  @Test
+  public void shouldFallBackWhenTheResultTypeCannotBeCompiled() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<ImmutableItem> items = sqlSession.getMapper(Mapper.class).selectImmutableItems();
+      assertEquals(2, items.size());
+      assertEquals(Integer.valueOf(1), items.get(0).getId());
+      assertEquals("two", items.get(1).getName());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}
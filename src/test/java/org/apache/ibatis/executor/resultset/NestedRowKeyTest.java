@@ -0,0 +1,310 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.List;
+
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class NestedRowKeyTest {
+
+  private static final String URL = "jdbc:h2:mem:nested_row_key;DB_CLOSE_DELAY=-1";
+
+  private static final String MAPPER = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+      + "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">\n"
+      + "<mapper namespace=\"orders\">\n"
+      + "  <resultMap id=\"customer\" type=\"" + Customer.class.getName() + "\">\n"
+      + "    <id property=\"code\" column=\"code\"/>\n"
+      + "    <result property=\"name\" column=\"name\"/>\n"
+      + "    <collection property=\"orders\" ofType=\"" + Order.class.getName() + "\" columnPrefix=\"order_\">\n"
+      + "      <id property=\"id\" column=\"id\"/>\n"
+      + "      <result property=\"number\" column=\"number\"/>\n"
+      + "      <collection property=\"lines\" ofType=\"" + Line.class.getName() + "\" columnPrefix=\"line_\">\n"
+      + "        <id property=\"lineNo\" column=\"no\"/>\n"
+      + "        <result property=\"sku\" column=\"sku\"/>\n"
+      + "      </collection>\n"
+      + "    </collection>\n"
+      + "  </resultMap>\n"
+      + "  <select id=\"selectCustomers\" resultMap=\"customer\">\n"
+      + "    select c.code, c.name, o.id as order_id, o.number as order_number,\n"
+      + "           l.line_no as order_line_no, l.sku as order_line_sku\n"
+      + "    from customer c\n"
+      + "    left join orders o on o.customer_code = c.code\n"
+      + "    left join order_line l on l.order_id = o.id\n"
+      + "    order by c.code, o.id, l.line_no\n"
+      + "  </select>\n"
+      + "</mapper>\n";
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  public static class Customer {
+    private String code;
+    private String name;
+    private List<Order> orders;
+
+    public String getCode() {
+      return code;
+    }
+
+    public void setCode(String code) {
+      this.code = code;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public List<Order> getOrders() {
+      return orders;
+    }
+
+    public void setOrders(List<Order> orders) {
+      this.orders = orders;
+    }
+  }
+
+  public static class Order {
+    private long id;
+    private String number;
+    private List<Line> lines;
+
+    public long getId() {
+      return id;
+    }
+
+    public void setId(long id) {
+      this.id = id;
+    }
+
+    public String getNumber() {
+      return number;
+    }
+
+    public void setNumber(String number) {
+      this.number = number;
+    }
+
+    public List<Line> getLines() {
+      return lines;
+    }
+
+    public void setLines(List<Line> lines) {
+      this.lines = lines;
+    }
+  }
+
+  public static class Line {
+    private int lineNo;
+    private String sku;
+
+    public int getLineNo() {
+      return lineNo;
+    }
+
+    public void setLineNo(int lineNo) {
+      this.lineNo = lineNo;
+    }
+
+    public String getSku() {
+      return sku;
+    }
+
+    public void setSku(String sku) {
+      this.sku = sku;
+    }
+  }
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Class.forName("org.h2.Driver");
+    Connection conn = DriverManager.getConnection(URL, "sa", "");
+    try {
+      Statement st = conn.createStatement();
+      st.execute("create table customer (code varchar(10) primary key, name varchar(20))");
+      st.execute("create table orders (id bigint primary key, customer_code varchar(10), number varchar(10))");
+      st.execute("create table order_line (order_id bigint, line_no int, sku varchar(10))");
+      st.execute("insert into customer values ('A', 'alice'), ('B', 'bob'), ('C', 'carol')");
+      st.execute("insert into orders values (10, 'A', 'A-10'), (11, 'A', 'A-11'), (20, 'C', 'C-20')");
+      // 不同订单的明细行号相同，只能靠父Key区分
+      st.execute("insert into order_line values (10, 1, 'apple'), (10, 2, 'pear'), (20, 1, 'plum')");
+      st.close();
+    } finally {
+      conn.close();
+    }
+    Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(),
+        new UnpooledDataSource("org.h2.Driver", URL, "sa", "")));
+    new XMLMapperBuilder(new ByteArrayInputStream(MAPPER.getBytes("UTF-8")), configuration, "orders.xml",
+        configuration.getSqlFragments()).parse();
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+  }
+
+  @Test
+  public void shouldJoinOneToManyRowsOnNumericAndNonNumericIds() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<Customer> customers = sqlSession.selectList("orders.selectCustomers");
+      assertEquals(3, customers.size());
+
+      Customer alice = customers.get(0);
+      assertEquals("A", alice.getCode());
+      assertEquals(2, alice.getOrders().size());
+      Order first = alice.getOrders().get(0);
+      assertEquals(10L, first.getId());
+      assertEquals(2, first.getLines().size());
+      assertEquals("apple", first.getLines().get(0).getSku());
+      assertEquals("pear", first.getLines().get(1).getSku());
+      // 没有明细的订单：空id不会产生空对象
+      Order second = alice.getOrders().get(1);
+      assertEquals(11L, second.getId());
+      assertTrue(second.getLines().isEmpty());
+
+      // 没有订单的客户
+      Customer bob = customers.get(1);
+      assertEquals("B", bob.getCode());
+      assertTrue(bob.getOrders().isEmpty());
+
+      // 行号1在订单10下已出现过，但父Key不同，是另一条明细
+      Customer carol = customers.get(2);
+      assertEquals(1, carol.getOrders().size());
+      assertEquals(1, carol.getOrders().get(0).getLines().size());
+      assertEquals("plum", carol.getOrders().get(0).getLines().get(0).getSku());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldEqualACopyOfTheSameValues() {
+    NestedRowKey probe = NestedRowKey.newProbe();
+    probe.reset("order", null);
+    probe.addLong(10);
+    probe.addObject("A-10");
+    NestedRowKey copy = probe.copy();
+    assertEquals(probe, copy);
+    assertEquals(probe.hashCode(), copy.hashCode());
+
+    probe.reset("order", null);
+    probe.addLong(11);
+    probe.addObject("A-10");
+    assertNotEquals(copy, probe);
+  }
+
+  @Test
+  public void shouldDistinguishResultMapsPrefixesAndValueKinds() {
+    NestedRowKey key = key("order", null, 1L);
+    assertNotEquals(key, key("line", null, 1L));
+    assertNotEquals(key, key("order", "o_", 1L));
+    // 与旧的CacheKey一样，数值与字符串id不相等
+    assertNotEquals(key, key("order", null, "1"));
+    assertEquals(key("order", null, new byte[] { 1, 2 }), key("order", null, new byte[] { 1, 2 }));
+  }
+
+  @Test
+  public void shouldKeepThePositionOfNullIds() {
+    NestedRowKey probe = NestedRowKey.newProbe();
+    probe.reset("order", null);
+    probe.skip();
+    assertTrue(probe.isEmpty());
+    probe.addObject("x");
+    assertFalse(probe.isEmpty());
+
+    NestedRowKey other = NestedRowKey.newProbe();
+    other.reset("order", null);
+    other.addObject("x");
+    other.skip();
+    assertNotEquals(probe.copy(), other.copy());
+  }
+
+  @Test
+  public void shouldCopyTheParentWhenTheProbeOfItsLevelIsReused() {
+    NestedRowKey parent = NestedRowKey.newProbe();
+    NestedRowKey child = NestedRowKey.newProbe();
+    parent.reset("order", null);
+    parent.addLong(10);
+    child.reset("line", "line_");
+    child.addLong(1);
+    child.setParent(parent);
+    NestedRowKey stored = child.copy();
+
+    // 下一行复用两个层级的探测Key
+    parent.reset("order", null);
+    parent.addLong(20);
+    child.reset("line", "line_");
+    child.addLong(1);
+    child.setParent(parent);
+    assertNotEquals(stored, child);
+
+    NestedRowKey expectedParent = key("order", null, 10L);
+    NestedRowKey expected = NestedRowKey.newProbe();
+    expected.reset("line", "line_");
+    expected.addLong(1);
+    expected.setParent(expectedParent);
+    assertEquals(expected, stored);
+    assertEquals(expected.hashCode(), stored.hashCode());
+  }
+
+  @Test
+  public void shouldOnlyResetProbes() {
+    NestedRowKey copy = key("order", null, 1L);
+    try {
+      copy.reset("order", null);
+      fail("A stored key must not be reused");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void shouldNeverEqualTheNullKey() {
+    assertNotEquals(NestedRowKey.NULL_KEY, NestedRowKey.newProbe().copy());
+    assertFalse(NestedRowKey.NULL_KEY.equals(key("order", null, 1L)));
+  }
+
+  private static NestedRowKey key(String resultMapId, String columnPrefix, Object value) {
+    NestedRowKey probe = NestedRowKey.newProbe();
+    probe.reset(resultMapId, columnPrefix);
+    if (value instanceof Long) {
+      probe.addLong((Long) value);
+    } else {
+      probe.addObject(value);
+    }
+    return probe.copy();
+  }
+
+}
@@ -0,0 +1,149 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ParallelMappingTest {
+
+  private static final String URL = "jdbc:h2:mem:parallel_mapping;DB_CLOSE_DELAY=-1";
+  private static final int ROWS = 5000;
+
+  public interface Mapper {
+    @Select("select id, name from item order by id")
+    @Options(parallelMapping = true)
+    List<Item> selectAll();
+
+    @Select("select id, name from item order by id")
+    @Options(parallelMapping = true)
+    Cursor<Item> selectCursor();
+  }
+
+  public static class Item {
+    private int id;
+    private String name;
+
+    public int getId() {
+      return id;
+    }
+
+    public void setId(int id) {
+      this.id = id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+  }
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Class.forName("org.h2.Driver");
+    Connection conn = DriverManager.getConnection(URL, "sa", "");
+    try {
+      Statement st = conn.createStatement();
+      st.execute("create table item (id int primary key, name varchar(20))");
+      st.close();
+      PreparedStatement ps = conn.prepareStatement("insert into item values (?, ?)");
+      for (int i = 0; i < ROWS; i++) {
+        ps.setInt(1, i);
+        ps.setString(2, "item" + i);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+      ps.close();
+    } finally {
+      conn.close();
+    }
+  }
+
+  private static SqlSessionFactory buildFactory(int cursorPrefetchSize) {
+    Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(),
+        new UnpooledDataSource("org.h2.Driver", URL, "sa", "")));
+    configuration.setParallelMappingBatchSize(64);
+    configuration.setCursorPrefetchSize(cursorPrefetchSize);
+    configuration.addMapper(Mapper.class);
+    return new SqlSessionFactoryBuilder().build(configuration);
+  }
+
+  private static void assertAllRowsInOrder(List<Item> items) {
+    assertEquals(ROWS, items.size());
+    for (int i = 0; i < ROWS; i++) {
+      assertEquals(i, items.get(i).getId());
+      assertEquals("item" + i, items.get(i).getName());
+    }
+  }
+
+  private static List<Item> readCursor(SqlSessionFactory sqlSessionFactory) throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Cursor<Item> cursor = sqlSession.getMapper(Mapper.class).selectCursor();
+      List<Item> items = new ArrayList<Item>();
+      for (Item item : cursor) {
+        items.add(item);
+      }
+      cursor.close();
+      return items;
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldMapAllRowsOfList() {
+    SqlSession sqlSession = buildFactory(0).openSession();
+    try {
+      assertAllRowsInOrder(sqlSession.getMapper(Mapper.class).selectAll());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldReturnAllRowsOfCursor() throws Exception {
+    assertAllRowsInOrder(readCursor(buildFactory(0)));
+  }
+
+  @Test
+  public void shouldReturnAllRowsOfPrefetchingCursor() throws Exception {
+    assertAllRowsInOrder(readCursor(buildFactory(16)));
+  }
+
+}
@@ -0,0 +1,81 @@
+/**
+ *    Copyright ${license.git.copyrightYears} the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.HashMap;
+
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ResultSetLayoutCacheTest {
+
+  private static final String URL = "jdbc:h2:mem:result_set_layout_cache;DB_CLOSE_DELAY=-1";
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  public interface Mapper {
+    @Select("select ${column} as val from item where id = 1")
+    HashMap<String, Object> selectValue(@Param("column") String column);
+  }
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Class.forName("org.h2.Driver");
+    Connection conn = DriverManager.getConnection(URL, "sa", "");
+    try {
+      Statement st = conn.createStatement();
+      st.execute("create table item (id int primary key, name varchar(20))");
+      st.execute("insert into item values (1, 'one')");
+      st.close();
+    } finally {
+      conn.close();
+    }
+    Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(),
+        new UnpooledDataSource("org.h2.Driver", URL, "sa", "")));
+    configuration.setResultSetLayoutCacheEnabled(true);
+    configuration.addMapper(Mapper.class);
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+  }
+
+  @Test
+  public void shouldNotReuseTheLayoutOfAColumnOfAnotherType() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      // 同一语句、同一列名，但列的类型不同
+      assertEquals("one", mapper.selectValue("name").get("VAL"));
+      assertEquals(1, mapper.selectValue("id").get("VAL"));
+      assertEquals("1", mapper.selectValue("cast(id as varchar)").get("VAL"));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}